@@ -0,0 +1,61 @@
+package com.uber.okbuck;
+
+import com.uber.okbuck.extension.OkBuckExtension;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.gradle.api.Project;
+import org.gradle.api.internal.project.ProjectInternal;
+import org.gradle.testfixtures.ProjectBuilder;
+
+/** Models shared by the benchmarks, shaped like the ones of a large android build. */
+public final class Fixtures {
+
+  private Fixtures() {}
+
+  /** Returns the okbuck extension of an evaluated root project with default settings. */
+  public static OkBuckExtension okBuckExtension() {
+    Project project = ProjectBuilder.builder().build();
+    OkBuckExtension extension =
+        project.getExtensions().create(OkBuckGradlePlugin.OKBUCK, OkBuckExtension.class, project);
+    ((ProjectInternal) project).evaluate();
+    return extension;
+  }
+
+  /** Returns buck targets as written to build files, mixing project, external and local rules. */
+  public static List<String> targets(int count) {
+    List<String> targets = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      switch (i % 4) {
+        case 0:
+          targets.add("//libraries/feature" + i + ":src_release");
+          break;
+        case 1:
+          targets.add("//.okbuck/ext/com/example/g" + i + ":artifact" + i + "-1.0." + i + ".aar");
+          break;
+        case 2:
+          targets.add("//.okbuck/ext/org.example.lib" + i + ":lib-" + i + ".jar");
+          break;
+        default:
+          targets.add(":res_" + i);
+          break;
+      }
+    }
+    return targets;
+  }
+
+  /** Returns the file of an artifact in the layout of the gradle cache. */
+  public static File cacheFile(String group, String name, String version, String extension) {
+    return new File(
+        System.getProperty("user.home"),
+        String.format(
+            ".gradle/caches/modules-2/files-2.1/%s/%s/%s/%040x/%s-%s.%s",
+            group,
+            name,
+            version,
+            (group + name + version).hashCode() & 0xffffffffL,
+            name,
+            version,
+            extension));
+  }
+}
@@ -0,0 +1,118 @@
+package com.uber.okbuck.core.dependency;
+
+import com.uber.okbuck.Fixtures;
+import com.uber.okbuck.composer.base.BuckRuleComposer;
+import com.uber.okbuck.extension.ExternalDependenciesExtension;
+import com.uber.okbuck.extension.JetifierExtension;
+import com.uber.okbuck.extension.OkBuckExtension;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Creation and traversal of external dependencies, which scales with the resolved graph. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DependencyBenchmark {
+
+  @Param({"100", "1000"})
+  public int dependencies;
+
+  private ExternalDependenciesExtension externalDependenciesExtension;
+  private JetifierExtension jetifierExtension;
+
+  private List<String[]> coordinates;
+  private DependencyFactory internedFactory;
+  private OExternalDependency parent;
+  private DependencyGraph graph;
+  private Set<OExternalDependency> resolved;
+
+  @Setup
+  public void setup() {
+    OkBuckExtension okBuckExtension = Fixtures.okBuckExtension();
+    externalDependenciesExtension = okBuckExtension.getExternalDependenciesExtension();
+    jetifierExtension = okBuckExtension.getJetifierExtension();
+
+    // Two versions of each module, as left behind by conflict resolution across projects
+    coordinates = new ArrayList<>(dependencies);
+    for (int i = 0; i < dependencies; i++) {
+      String group = "com.example.group" + (i / 2 % 10);
+      coordinates.add(new String[] {group, "module" + i / 2, "1." + i % 2 + ".0"});
+    }
+
+    internedFactory = new DependencyFactory();
+    resolved = new HashSet<>(create(internedFactory));
+
+    parent = dependency(internedFactory, new String[] {"com.example.group0", "parent", "1.0.0"});
+    parent.addDeps(resolved);
+    graph = DependencyGraph.freeze(Collections.singleton(parent));
+  }
+
+  private List<OExternalDependency> create(DependencyFactory factory) {
+    List<OExternalDependency> created = new ArrayList<>(coordinates.size());
+    for (String[] coordinate : coordinates) {
+      created.add(dependency(factory, coordinate));
+    }
+    return created;
+  }
+
+  private OExternalDependency dependency(DependencyFactory factory, String[] coordinate) {
+    File file = Fixtures.cacheFile(coordinate[0], coordinate[1], coordinate[2], "jar");
+    return factory.from(
+        coordinate[0],
+        coordinate[1],
+        coordinate[2],
+        file,
+        null,
+        externalDependenciesExtension,
+        jetifierExtension);
+  }
+
+  @Benchmark
+  public List<OExternalDependency> from() {
+    return create(new DependencyFactory());
+  }
+
+  @Benchmark
+  public List<OExternalDependency> fromInterned() {
+    return create(internedFactory);
+  }
+
+  @Benchmark
+  public Set<OExternalDependency> getDeps() {
+    return parent.getDeps();
+  }
+
+  @Benchmark
+  public void graphChildren(Blackhole blackhole) {
+    for (OExternalDependency child : graph.children(parent)) {
+      blackhole.consume(child);
+    }
+  }
+
+  @Benchmark
+  public void external(Blackhole blackhole) {
+    for (OExternalDependency dependency : resolved) {
+      blackhole.consume(BuckRuleComposer.external(dependency));
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package com.uber.okbuck.core.dependency;
+
+import com.uber.okbuck.Fixtures;
+import com.uber.okbuck.extension.ExternalDependenciesExtension;
+import com.uber.okbuck.extension.JetifierExtension;
+import com.uber.okbuck.extension.OkBuckExtension;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Dependency creation from many threads sharing one factory, as done by project tasks running in
+ * parallel. Most lookups are of dependencies another project already created.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class DependencyFactoryContentionBenchmark {
+
+  @Param({"1000"})
+  public int dependencies;
+
+  private ExternalDependenciesExtension externalDependenciesExtension;
+  private JetifierExtension jetifierExtension;
+
+  private String[][] coordinates;
+  private File[] files;
+  private DependencyFactory sharedFactory;
+
+  @Setup
+  public void setup() {
+    OkBuckExtension okBuckExtension = Fixtures.okBuckExtension();
+    externalDependenciesExtension = okBuckExtension.getExternalDependenciesExtension();
+    jetifierExtension = okBuckExtension.getJetifierExtension();
+
+    coordinates = new String[dependencies][];
+    files = new File[dependencies];
+    for (int i = 0; i < dependencies; i++) {
+      String group = "com.example.group" + (i / 2 % 10);
+      coordinates[i] = new String[] {group, "module" + i / 2, "1." + i % 2 + ".0"};
+      files[i] = Fixtures.cacheFile(group, "module" + i / 2, "1." + i % 2 + ".0", "jar");
+    }
+  }
+
+  @Setup(Level.Iteration)
+  public void resetFactory() {
+    // Starts empty each iteration, so that the first lookups of the threads race to create
+    sharedFactory = new DependencyFactory();
+  }
+
+  /** Each thread walks the dependencies from its own offset, like projects with other graphs. */
+  @State(Scope.Thread)
+  public static class Cursor {
+
+    private static final AtomicInteger THREADS = new AtomicInteger();
+
+    private int next;
+
+    @Setup
+    public void setup(DependencyFactoryContentionBenchmark benchmark) {
+      next = THREADS.getAndIncrement() * 97 % benchmark.dependencies;
+    }
+  }
+
+  @Benchmark
+  public void spread(Cursor cursor, Blackhole blackhole) {
+    int i = cursor.next;
+    cursor.next = (i + 1) % dependencies;
+    blackhole.consume(from(i));
+  }
+
+  @Benchmark
+  public void sameDependency(Blackhole blackhole) {
+    blackhole.consume(from(0));
+  }
+
+  private OExternalDependency from(int i) {
+    String[] coordinate = coordinates[i];
+    return sharedFactory.from(
+        coordinate[0],
+        coordinate[1],
+        coordinate[2],
+        files[i],
+        null,
+        externalDependenciesExtension,
+        jetifierExtension);
+  }
+}
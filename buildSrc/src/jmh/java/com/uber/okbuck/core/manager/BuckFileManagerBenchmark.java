@@ -0,0 +1,70 @@
+package com.uber.okbuck.core.manager;
+
+import com.google.common.collect.Multimap;
+import com.uber.okbuck.Fixtures;
+import com.uber.okbuck.core.model.base.RuleType;
+import com.uber.okbuck.template.core.Rule;
+import com.uber.okbuck.template.jvm.JvmRule;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Load statement collection for a build file, which scales with the rules it holds. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BuckFileManagerBenchmark {
+
+  private static final RuleType[] RULE_TYPES = {
+    RuleType.ANDROID_MODULE,
+    RuleType.KOTLIN_ANDROID_MODULE,
+    RuleType.ANDROID_RESOURCE,
+    RuleType.JAVA_LIBRARY,
+    RuleType.JAVA_TEST,
+    RuleType.PREBUILT_JAR,
+  };
+
+  @Param({"10", "100"})
+  public int rules;
+
+  private BuckFileManager buckFileManager;
+  private List<Rule> buckRules;
+  private List<String> ruleTypes;
+
+  @Setup
+  public void setup() {
+    buckFileManager =
+        new BuckFileManager(Fixtures.okBuckExtension().getRuleOverridesExtension());
+
+    buckRules = new ArrayList<>(rules);
+    ruleTypes = new ArrayList<>(rules);
+    for (int i = 0; i < rules; i++) {
+      String ruleType = RULE_TYPES[i % RULE_TYPES.length].getBuckName();
+      ruleTypes.add(ruleType);
+      buckRules.add(new JvmRule().name("rule" + i));
+    }
+  }
+
+  @Benchmark
+  public Multimap<String, String> getLoadStatements() {
+    // Load statement collection renames overridden rule types, so they are reset every time.
+    for (int i = 0; i < rules; i++) {
+      buckRules.get(i).ruleType(ruleTypes.get(i));
+    }
+    return buckFileManager.getLoadStatements(buckRules);
+  }
+}
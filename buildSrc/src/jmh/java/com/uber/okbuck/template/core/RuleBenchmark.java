@@ -0,0 +1,114 @@
+package com.uber.okbuck.template.core;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.io.ByteStreams;
+import com.uber.okbuck.Fixtures;
+import com.uber.okbuck.template.android.AndroidModuleRule;
+import com.uber.okbuck.template.jvm.JvmRule;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Rendering of the rules written for every target, which scales with the number of deps. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RuleBenchmark {
+
+  private static final OutputStream NULL = ByteStreams.nullOutputStream();
+
+  @Param({"10", "100", "1000"})
+  public int deps;
+
+  private List<String> targets;
+  private List<String> half;
+
+  @Setup
+  public void setup() {
+    targets = Fixtures.targets(deps);
+    half = targets.subList(0, deps / 2);
+  }
+
+  // Rocker models are built per render, as in the rule composers.
+  private Rule jvmRule() {
+    return new JvmRule()
+        .srcs(ImmutableSet.of("src/main/java"))
+        .exts(ImmutableList.of("java"))
+        .resources(ImmutableSet.of("src/main/resources"))
+        .sourceCompatibility("8")
+        .targetCompatibility("8")
+        .mavenCoords("com.example:library:1.0.0")
+        .testTargets(ImmutableList.of(":test_src_main"))
+        .apPlugins(ImmutableSet.of("//.okbuck/workspace/processor:processor_1"))
+        .aptDeps(half)
+        .providedDeps(half)
+        .exportedDeps(half)
+        .options(ImmutableMap.of("extra_arguments", ImmutableList.of("-Xlint:all")))
+        .ruleType("java_library")
+        .defaultVisibility()
+        .deps(targets)
+        .name("src_main");
+  }
+
+  private Rule androidModuleRule() {
+    return new AndroidModuleRule()
+        .srcs(ImmutableSet.of("src/main/java", "src/release/java"))
+        .exts(ImmutableList.of("java", "kt"))
+        .resources(ImmutableSet.of())
+        .resDirs(ImmutableSet.of("src/main/res", "src/release/res"))
+        .sourceCompatibility("8")
+        .targetCompatibility("8")
+        .testTargets(ImmutableList.of(":test_src_release"))
+        .aptDeps(half)
+        .providedDeps(half)
+        .exportedDeps(half)
+        .disableLint(true)
+        .pkg("com.example.feature")
+        .manifestMainManifest("src/main/AndroidManifest.xml")
+        .manifestMinSdk("21")
+        .manifestTargetSdk("30")
+        .manifestVersionCode(1)
+        .manifestVersionName("1.0")
+        .manifestSecondaryManifests(ImmutableList.of("src/release/AndroidManifest.xml"))
+        .resRes(ImmutableSet.of("src/main/res", "src/release/res"))
+        .resProjectRes("src/main/res")
+        .resAssets(ImmutableSet.of("src/main/assets"))
+        .resExtraDeps(ImmutableSet.of())
+        .ruleType("okbuck_android_module")
+        .defaultVisibility()
+        .deps(targets)
+        .name("src_release");
+  }
+
+  @Benchmark
+  public void renderJvmRule() {
+    jvmRule().render(NULL);
+  }
+
+  @Benchmark
+  public void renderAndroidModuleRule() {
+    androidModuleRule().render(NULL);
+  }
+
+  @Benchmark
+  public ImmutableSortedSet<String> sorted() {
+    return Rule.sorted(targets);
+  }
+}
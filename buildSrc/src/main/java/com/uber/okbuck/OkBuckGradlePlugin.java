@@ -5,13 +5,19 @@ import com.google.common.collect.Sets;
 import com.uber.okbuck.core.annotation.AnnotationProcessorCache;
 import com.uber.okbuck.core.dependency.DependencyCache;
 import com.uber.okbuck.core.dependency.DependencyFactory;
+import com.uber.okbuck.core.dependency.JarMetadataIndex;
+import com.uber.okbuck.core.dependency.ResolvedConfigurationCache;
+import com.uber.okbuck.core.dependency.SourcesResolver;
 import com.uber.okbuck.core.dependency.exporter.DependencyExporter;
 import com.uber.okbuck.core.dependency.exporter.JsonDependencyExporter;
+import com.uber.okbuck.core.dependency.exporter.NdjsonDependencyExporter;
 import com.uber.okbuck.core.manager.BuckFileManager;
 import com.uber.okbuck.core.manager.BuckManager;
 import com.uber.okbuck.core.manager.D8Manager;
 import com.uber.okbuck.core.manager.DependencyManager;
+import com.uber.okbuck.core.manager.FinalizeScheduler;
 import com.uber.okbuck.core.manager.GroovyManager;
+import com.uber.okbuck.core.manager.IncrementalManager;
 import com.uber.okbuck.core.manager.JetifierManager;
 import com.uber.okbuck.core.manager.KotlinManager;
 import com.uber.okbuck.core.manager.LintManager;
@@ -19,32 +25,38 @@ import com.uber.okbuck.core.manager.ManifestMergerManager;
 import com.uber.okbuck.core.manager.RobolectricManager;
 import com.uber.okbuck.core.manager.ScalaManager;
 import com.uber.okbuck.core.manager.TransformManager;
+import com.uber.okbuck.core.model.android.VariantSelector;
 import com.uber.okbuck.core.model.base.ProjectType;
+import com.uber.okbuck.core.model.base.Scope;
+import com.uber.okbuck.core.model.base.SharedScopeCache;
 import com.uber.okbuck.core.task.OkBuckCleanTask;
 import com.uber.okbuck.core.task.OkBuckTask;
-import com.uber.okbuck.core.util.FileUtil;
+import com.uber.okbuck.core.util.FileIndex;
 import com.uber.okbuck.core.util.MoreCollectors;
 import com.uber.okbuck.core.util.ProjectCache;
 import com.uber.okbuck.core.util.ProjectUtil;
+import com.uber.okbuck.core.util.Tracer;
+import com.uber.okbuck.extension.ExportDependenciesExtension;
 import com.uber.okbuck.extension.KotlinExtension;
 import com.uber.okbuck.extension.OkBuckExtension;
 import com.uber.okbuck.extension.ScalaExtension;
 import com.uber.okbuck.extension.WrapperExtension;
 import com.uber.okbuck.generator.BuckFileGenerator;
 import com.uber.okbuck.template.common.ExportFile;
+import com.uber.okbuck.template.core.FileEmitter;
 import com.uber.okbuck.template.core.Rule;
 import com.uber.okbuck.wrapper.BuckWrapperTask;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
 import org.gradle.api.Task;
 import org.gradle.api.artifacts.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Function;
@@ -65,6 +77,9 @@ import java.util.stream.Collectors;
 //
 
 public class OkBuckGradlePlugin implements Plugin<Project> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(OkBuckGradlePlugin.class);
+
   public static final String OKBUCK = "okbuck";
   private static final String DOT_OKBUCK = "." + OKBUCK;
   public static final String WORKSPACE_PATH = DOT_OKBUCK + "/workspace";
@@ -100,6 +115,14 @@ public class OkBuckGradlePlugin implements Plugin<Project> {
 
   public static final String OKBUCK_STATE = OKBUCK_STATE_DIR + "/STATE";
   public static final String DEFAULT_OKBUCK_SHA256 = OKBUCK_STATE_DIR + "/SHA256";
+  public static final String OKBUCK_INCREMENTAL_STATE = OKBUCK_STATE_DIR + "/INCREMENTAL";
+  public static final String OKBUCK_EXTERNAL_CACHE_MANIFEST =
+      OKBUCK_STATE_DIR + "/EXTERNAL_CACHE_MANIFEST";
+  public static final String OKBUCK_RESOLVED_CONFIGURATIONS =
+      OKBUCK_STATE_DIR + "/RESOLVED_CONFIGURATIONS";
+  public static final String OKBUCK_JAR_METADATA = OKBUCK_STATE_DIR + "/JAR_METADATA";
+  public static final String OKBUCK_MISSING_SOURCES = OKBUCK_STATE_DIR + "/MISSING_SOURCES";
+  public static final String OKBUCK_TRACE = OKBUCK_STATE_DIR + "/trace.json";
 
   public final Set<String> exportedPaths = Sets.newConcurrentHashSet();
 
@@ -114,6 +137,12 @@ public class OkBuckGradlePlugin implements Plugin<Project> {
   public JetifierManager jetifierManager;
   public TransformManager transformManager;
   public D8Manager d8Manager;
+  public IncrementalManager incrementalManager;
+  public ResolvedConfigurationCache resolvedConfigurationCache;
+  public SharedScopeCache sharedScopeCache;
+  public SourcesResolver sourcesResolver;
+  public JarMetadataIndex jarMetadataIndex;
+  public VariantSelector variantSelector;
 
   ManifestMergerManager manifestMergerManager;
   RobolectricManager robolectricManager;
@@ -153,6 +182,9 @@ public class OkBuckGradlePlugin implements Plugin<Project> {
 
           dependencyFactory = new DependencyFactory();
 
+          // Create Variant Selector
+          variantSelector = new VariantSelector(okbuckExt);
+
           // Create Annotation Processor cache
           String processorBuildFile = PROCESSOR_BUILD_FOLDER + "/" + okbuckExt.buildFileName;
           annotationProcessorCache =
@@ -194,6 +226,27 @@ public class OkBuckGradlePlugin implements Plugin<Project> {
           // Create Manifest Merger Manager
           manifestMergerManager = new ManifestMergerManager(rootBuckProject, buckFileManager);
 
+          // Create Incremental Manager
+          incrementalManager =
+              new IncrementalManager(
+                  rootBuckProject, okbuckExt, buckFileManager, OKBUCK_INCREMENTAL_STATE);
+
+          // Create Resolved Configuration Cache
+          resolvedConfigurationCache =
+              new ResolvedConfigurationCache(
+                  rootBuckProject, okbuckExt, OKBUCK_RESOLVED_CONFIGURATIONS);
+
+          // Create Shared Scope Cache
+          sharedScopeCache = new SharedScopeCache(okbuckExt);
+
+          // Create Sources Resolver
+          sourcesResolver = new SourcesResolver(rootBuckProject, okbuckExt, OKBUCK_MISSING_SOURCES);
+
+          // Create Jar Metadata Index
+          jarMetadataIndex =
+              new JarMetadataIndex(
+                  rootBuckProject, dependencyManager.getSha256Cache(), OKBUCK_JAR_METADATA);
+
           KotlinExtension kotlin = okbuckExt.getKotlinExtension();
           ScalaExtension scala = okbuckExt.getScalaExtension();
 
@@ -204,21 +257,40 @@ public class OkBuckGradlePlugin implements Plugin<Project> {
           rootOkBuckTask.dependsOn(setupOkbuck);
           rootOkBuckTask.doLast(
               task -> {
-                annotationProcessorCache.finalizeProcessors();
-                dependencyManager.resolveCurrentRawDeps();
-                dependencyManager.finalizeDependencies(okbuckExt);
-                jetifierManager.finalizeDependencies(okbuckExt);
-                lintManager.finalizeDependencies();
-                kotlinManager.finalizeDependencies(okbuckExt);
-                scalaManager.finalizeDependencies(okbuckExt);
-                groovyManager.finalizeDependencies(okbuckExt);
-                robolectricManager.finalizeDependencies(okbuckExt);
-                transformManager.finalizeDependencies(okbuckExt);
-                buckManager.finalizeDependencies();
-                manifestMergerManager.finalizeDependencies(okbuckExt);
-                dependencyFactory.finalizeDependencies();
-
-                writeExportedFileRules(rootBuckProject, okbuckExt);
+                // Processors and dependencies resolve configurations of the root project and
+                // update the shared external dependencies, so they run first on this thread.
+                new FinalizeScheduler(okbuckExt.getExperimentalExtension().parallelFinalize)
+                    .addSerial("processors", annotationProcessorCache::finalizeProcessors)
+                    .addSerial(
+                        "dependencies",
+                        () -> {
+                          try (Tracer.Span ignored =
+                              Tracer.span("DependencyManager.resolveCurrentRawDeps")) {
+                            dependencyManager.resolveCurrentRawDeps();
+                          }
+                          dependencyManager.finalizeDependencies(okbuckExt);
+                        })
+                    .add("jetifier", () -> jetifierManager.finalizeDependencies(okbuckExt))
+                    .add("lint", lintManager::finalizeDependencies)
+                    .add("kotlin", () -> kotlinManager.finalizeDependencies(okbuckExt))
+                    .add("scala", () -> scalaManager.finalizeDependencies(okbuckExt))
+                    .add("groovy", () -> groovyManager.finalizeDependencies(okbuckExt))
+                    .add("robolectric", () -> robolectricManager.finalizeDependencies(okbuckExt))
+                    .add("transform", () -> transformManager.finalizeDependencies(okbuckExt))
+                    .add("buck", buckManager::finalizeDependencies)
+                    .add(
+                        "manifestMerger",
+                        () -> manifestMergerManager.finalizeDependencies(okbuckExt))
+                    // Clears the dependency interning caches the other steps may still use
+                    .addLast("dependencyFactory", dependencyFactory::finalizeDependencies)
+                    .run();
+
+                writeExportedFileRules(rootBuckProject, okbuckExt, buckFileManager);
+                incrementalManager.finalizeState();
+                resolvedConfigurationCache.finalizeState();
+                sharedScopeCache.finalizeState();
+                sourcesResolver.finalizeState();
+                jarMetadataIndex.finalizeState();
 
                 // Reset root project's scope cache at the very end
                 ProjectCache.resetScopeCache(rootProject);
@@ -228,6 +300,11 @@ public class OkBuckGradlePlugin implements Plugin<Project> {
                 // the target cache is accessed by other projects and have to
                 // be available until okbuck tasks of all the projects finishes.
                 ProjectCache.resetTargetCacheForAll(rootProject);
+                FileIndex.reset();
+
+                LOG.info("Generated {}", FileEmitter.summary());
+                LOG.info("Scopes: {}", Scope.summary());
+                Tracer.stop(rootProject.file(OKBUCK_TRACE));
               });
 
           WrapperExtension wrapper = okbuckExt.getWrapperExtension();
@@ -258,62 +335,87 @@ public class OkBuckGradlePlugin implements Plugin<Project> {
                   throw new IllegalArgumentException(
                       "Okbuck cannot be invoked without 'okbuck.wrapper' set to true. Use buckw instead");
                 }
+                FileEmitter.reset();
+                FileIndex.reset();
+                Scope.resetCounts();
+                sourcesResolver.setup();
+                jarMetadataIndex.setup();
+                if (okbuckExt.getExperimentalExtension().trace) {
+                  Tracer.start();
+                } else {
+                  Tracer.discard();
+                }
               });
 
           // Configure setup task
           setupOkbuck.doLast(
               task -> {
-                // Init all project's target cache at the very start since a project
-                // can access other project's target cache. Hence, all target cache
-                // needs to be initialized before any okbuck task starts.
-                ProjectCache.initTargetCacheForAll(rootProject);
-
-                // Init root project's scope cache.
-                ProjectCache.initScopeCache(rootProject);
-
-                depCache = new DependencyCache(rootBuckProject, dependencyManager, FORCED_OKBUCK);
-
-                // Fetch Lint deps if needed
-                if (!okbuckExt.getLintExtension().disabled
-                    && okbuckExt.getLintExtension().version != null) {
-                  lintManager.fetchLintDeps(okbuckExt.getLintExtension().version);
-                }
-
-                // Fetch transform deps if needed
-                if (!okbuckExt.getTransformExtension().transforms.isEmpty()) {
-                  transformManager.fetchTransformDeps();
+                try (Tracer.Span ignored = Tracer.span("setupOkbuck")) {
+                  // Init all project's target cache at the very start since a project
+                  // can access other project's target cache. Hence, all target cache
+                  // needs to be initialized before any okbuck task starts.
+                  ProjectCache.initTargetCacheForAll(rootProject);
+
+                  // Init root project's scope cache.
+                  ProjectCache.initScopeCache(rootProject);
+
+                  depCache = new DependencyCache(rootBuckProject, dependencyManager, FORCED_OKBUCK);
+
+                  // Fetch Lint deps if needed
+                  if (!okbuckExt.getLintExtension().disabled
+                      && okbuckExt.getLintExtension().version != null) {
+                    lintManager.fetchLintDeps(okbuckExt.getLintExtension().version);
+                  }
+
+                  // Fetch transform deps if needed
+                  if (!okbuckExt.getTransformExtension().transforms.isEmpty()) {
+                    transformManager.fetchTransformDeps();
+                  }
+
+                  // Setup d8 deps
+                  d8Manager.copyDeps(buckFileManager, okbuckExt);
+
+                  // Fetch robolectric deps if needed
+                  if (okbuckExt.getTestExtension().robolectric) {
+                    robolectricManager.download();
+                  }
+
+                  if (JetifierManager.isJetifierEnabled(rootProject)) {
+                    jetifierManager.setupJetifier(okbuckExt.getJetifierExtension().version);
+                  }
+
+                  extraConfigurations.forEach(
+                      (cacheName, extraConfiguration) ->
+                          new DependencyCache(
+                                  rootBuckProject,
+                                  dependencyManager,
+                                  okbuckExt.extraDepCachesMap.getOrDefault(cacheName, false))
+                              .build(extraConfiguration));
+
+                  buckManager.setupBuckBinary();
+
+                  manifestMergerManager.fetchManifestMergerDeps();
+
+                  // Fingerprint all projects before any project's okbuck task runs.
+                  List<Project> buckProjects =
+                      okbuckExt.buckProjects.stream()
+                          .filter(p -> p.getBuildFile().exists())
+                          .collect(Collectors.toList());
+                  incrementalManager.setup(buckProjects);
+                  resolvedConfigurationCache.setup(buckProjects);
                 }
-
-                // Setup d8 deps
-                d8Manager.copyDeps(buckFileManager, okbuckExt);
-
-                // Fetch robolectric deps if needed
-                if (okbuckExt.getTestExtension().robolectric) {
-                  robolectricManager.download();
-                }
-
-                if (JetifierManager.isJetifierEnabled(rootProject)) {
-                  jetifierManager.setupJetifier(okbuckExt.getJetifierExtension().version);
-                }
-
-                extraConfigurations.forEach(
-                    (cacheName, extraConfiguration) ->
-                        new DependencyCache(
-                                rootBuckProject,
-                                dependencyManager,
-                                okbuckExt.extraDepCachesMap.getOrDefault(cacheName, false))
-                            .build(extraConfiguration));
-
-                buckManager.setupBuckBinary();
-
-                manifestMergerManager.fetchManifestMergerDeps();
               });
 
           // Create clean task
           Task okBuckClean =
               rootBuckProject
                   .getTasks()
-                  .create(OKBUCK_CLEAN, OkBuckCleanTask.class, okbuckExt.buckProjects);
+                  .create(
+                      OKBUCK_CLEAN,
+                      OkBuckCleanTask.class,
+                      rootBuckProject.provider(
+                          () -> getProjectPaths(rootBuckProject, okbuckExt.buckProjects)),
+                      okbuckExt.buildFileName);
           rootOkBuckTask.dependsOn(okBuckClean);
 
           // Create okbuck task on each project to generate their buck file
@@ -326,9 +428,17 @@ public class OkBuckGradlePlugin implements Plugin<Project> {
                     Task okbuckProjectTask = bp.getTasks().maybeCreate(OKBUCK);
                     okbuckProjectTask.doLast(
                         task -> {
-                          ProjectCache.initScopeCache(bp);
-                          BuckFileGenerator.generate(bp, buckFileManager, okbuckExt);
-                          ProjectCache.resetScopeCache(bp);
+                          try (Tracer.Span ignored = Tracer.span("okbuck", bp.getPath())) {
+                            ProjectCache.initScopeCache(bp);
+                            if (incrementalManager.isUpToDate(bp)) {
+                              incrementalManager.replay(bp);
+                            } else {
+                              incrementalManager.record(
+                                  bp,
+                                  () -> BuckFileGenerator.generate(bp, buckFileManager, okbuckExt));
+                            }
+                            ProjectCache.resetScopeCache(bp);
+                          }
                         });
                     okbuckProjectTask.dependsOn(setupOkbuck);
                     okBuckClean.dependsOn(okbuckProjectTask);
@@ -336,47 +446,56 @@ public class OkBuckGradlePlugin implements Plugin<Project> {
         });
   }
 
-  private void writeExportedFileRules(Project rootBuckProject, OkBuckExtension okBuckExtension) {
-    Set<String> currentProjectPaths =
-        okBuckExtension.buckProjects.stream()
-            .filter(project -> ProjectUtil.getType(project) != ProjectType.UNKNOWN)
-            .map(
-                project ->
-                    rootBuckProject
-                        .getProjectDir()
-                        .toPath()
-                        .relativize(project.getProjectDir().toPath())
-                        .toString())
-            .collect(MoreCollectors.toImmutableSet());
-    Map<String, Set<Rule>> pathToRules = new HashMap<>();
+  /**
+   * Adds a path for which an export_file rule is written to the build file of its directory.
+   *
+   * @param path The path relative to the root project
+   */
+  public void addExportedPath(String path) {
+    exportedPaths.add(path);
+    incrementalManager.recordExportedPath(path);
+  }
+
+  /** Returns the root relative paths of the projects that build files are written for. */
+  private static Set<String> getProjectPaths(Project rootBuckProject, Set<Project> projects) {
+    return projects.stream()
+        .filter(project -> ProjectUtil.getType(project) != ProjectType.UNKNOWN)
+        .map(
+            project ->
+                rootBuckProject
+                    .getProjectDir()
+                    .toPath()
+                    .relativize(project.getProjectDir().toPath())
+                    .toString())
+        .collect(MoreCollectors.toImmutableSet());
+  }
+
+  private void writeExportedFileRules(
+      Project rootBuckProject, OkBuckExtension okBuckExtension, BuckFileManager buckFileManager) {
+    Map<File, List<Rule>> buckFileToRules = new HashMap<>();
     for (String exportedPath : exportedPaths) {
       File exportedFile = rootBuckProject.file(exportedPath);
-      String containingPath =
-          FileUtil.getRelativePath(rootBuckProject.getProjectDir(), exportedFile.getParentFile());
-      Set<Rule> rules = pathToRules.getOrDefault(containingPath, new HashSet<>());
-      rules.add(new ExportFile().name(exportedFile.getName()));
-      pathToRules.put(containingPath, rules);
+      File buckFile = new File(exportedFile.getParentFile(), okBuckExtension.buildFileName);
+      buckFileToRules
+          .computeIfAbsent(buckFile, file -> new ArrayList<>())
+          .add(new ExportFile().name(exportedFile.getName()));
     }
-    for (Map.Entry<String, Set<Rule>> entry : pathToRules.entrySet()) {
-      File buckFile =
-          rootBuckProject
-              .getRootDir()
-              .toPath()
-              .resolve(entry.getKey())
-              .resolve(okBuckExtension.buildFileName)
-              .toFile();
-      try (OutputStream os =
-          new FileOutputStream(buckFile, currentProjectPaths.contains(entry.getKey()))) {
-        entry.getValue().stream()
-            .sorted((rule1, rule2) -> rule1.name().compareToIgnoreCase(rule2.name()))
-            .forEach(rule -> rule.render(os));
-      } catch (IOException e) {
-        throw new IllegalStateException(e);
-      }
+    for (List<Rule> rules : buckFileToRules.values()) {
+      rules.sort((rule1, rule2) -> rule1.name().compareToIgnoreCase(rule2.name()));
     }
+    buckFileManager.appendToBuckFiles(buckFileToRules);
   }
 
   private static DependencyExporter createDependencyExporter(OkBuckExtension okbuckExt) {
-    return new JsonDependencyExporter(okbuckExt.getExportDependenciesExtension());
+    ExportDependenciesExtension extension = okbuckExt.getExportDependenciesExtension();
+    switch (extension.getFormat()) {
+      case "json":
+        return new JsonDependencyExporter(extension);
+      case "ndjson":
+        return new NdjsonDependencyExporter(extension);
+      default:
+        throw new IllegalStateException(
+            "Unknown dependency export format: " + extension.getFormat());
+    }
   }
 }
@@ -53,10 +53,10 @@ public final class AndroidBinaryRuleComposer extends AndroidBuckRuleComposer {
 
     String proguardConfig = target.getProguardConfig();
     if (proguardConfig != null) {
-      ProjectUtil.getPlugin(target.getRootProject()).exportedPaths.add(proguardConfig);
+      ProjectUtil.getPlugin(target.getRootProject()).addExportedPath(proguardConfig);
       String proguardMapping = target.getProguardMapping();
       if (proguardMapping != null) {
-        ProjectUtil.getPlugin(target.getRootProject()).exportedPaths.add(proguardMapping);
+        ProjectUtil.getPlugin(target.getRootProject()).addExportedPath(proguardMapping);
         deps.add(fileRule(proguardMapping));
       }
     }
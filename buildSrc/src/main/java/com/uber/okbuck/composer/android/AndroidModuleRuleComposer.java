@@ -84,7 +84,7 @@ public final class AndroidModuleRuleComposer extends AndroidBuckRuleComposer {
         lintConfigPath =
             FileUtil.getRelativePath(
                 target.getRootProject().getProjectDir(), target.getLintOptions().getLintConfig());
-        ProjectUtil.getPlugin(target.getRootProject()).exportedPaths.add(lintConfigPath);
+        ProjectUtil.getPlugin(target.getRootProject()).addExportedPath(lintConfigPath);
       } else {
         lintConfigPath = null;
       }
@@ -5,6 +5,7 @@ import com.uber.okbuck.core.model.base.Target;
 import com.uber.okbuck.core.model.jvm.JvmTarget;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collection;
 import java.util.Set;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
@@ -13,7 +14,7 @@ public abstract class BuckRuleComposer {
 
   protected BuckRuleComposer() {}
 
-  public static Set<String> external(Set<OExternalDependency> deps) {
+  public static Set<String> external(Collection<OExternalDependency> deps) {
     return deps.stream().map(BuckRuleComposer::external).collect(Collectors.toSet());
   }
 
@@ -6,8 +6,8 @@ import com.uber.okbuck.core.model.base.RuleType;
 import com.uber.okbuck.template.common.BazelHttpFile;
 import com.uber.okbuck.template.core.Rule;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 public class BazelHttpFileRuleComposer {
@@ -19,7 +19,7 @@ public class BazelHttpFileRuleComposer {
    * @return List of rules
    */
   public static List<Rule> compose(
-      Collection<OExternalDependency> dependencies, HashMap<String, String> shaSum256) {
+      Collection<OExternalDependency> dependencies, Map<String, String> shaSum256) {
     return dependencies
         .stream()
         .sorted(OExternalDependency.compareByName)
@@ -5,8 +5,8 @@ import com.uber.okbuck.core.dependency.OExternalDependency;
 import com.uber.okbuck.template.common.HttpFile;
 import com.uber.okbuck.template.core.Rule;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 public class HttpFileRuleComposer {
@@ -18,7 +18,7 @@ public class HttpFileRuleComposer {
    * @return List of rules
    */
   public static List<Rule> compose(
-      Collection<OExternalDependency> dependencies, HashMap<String, String> shaSum256) {
+      Collection<OExternalDependency> dependencies, Map<String, String> shaSum256) {
     return dependencies
         .stream()
         .sorted(OExternalDependency.compareByName)
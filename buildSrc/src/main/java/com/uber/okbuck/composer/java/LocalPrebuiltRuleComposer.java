@@ -4,6 +4,7 @@ import static com.uber.okbuck.core.dependency.OResolvedDependency.AAR;
 import static com.uber.okbuck.core.dependency.OResolvedDependency.JAR;
 
 import com.uber.okbuck.composer.jvm.JvmBuckRuleComposer;
+import com.uber.okbuck.core.dependency.DependencyGraph;
 import com.uber.okbuck.core.dependency.OExternalDependency;
 import com.uber.okbuck.core.model.base.RuleType;
 import com.uber.okbuck.template.core.Rule;
@@ -15,10 +16,12 @@ import java.util.stream.Collectors;
 public class LocalPrebuiltRuleComposer extends JvmBuckRuleComposer {
   /**
    * @param dependencies Local Dependencies whose rule needs to be created
+   * @param graph The frozen graph of the dependencies
    * @return List of rules
    */
   @SuppressWarnings("NullAway")
-  public static List<Rule> compose(Collection<OExternalDependency> dependencies) {
+  public static List<Rule> compose(
+      Collection<OExternalDependency> dependencies, DependencyGraph graph) {
     return dependencies
         .stream()
         .sorted(OExternalDependency.compareByName)
@@ -51,7 +54,7 @@ public class LocalPrebuiltRuleComposer extends JvmBuckRuleComposer {
                   .enableJetifier(dependency.enableJetifier())
                   .source(source)
                   .ruleType(ruleType.getBuckName())
-                  .deps(external(dependency.getDeps()))
+                  .deps(external(graph.children(dependency)))
                   .name(dependency.getTargetName());
             })
         .collect(Collectors.toList());
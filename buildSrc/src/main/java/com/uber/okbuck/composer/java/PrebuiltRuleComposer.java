@@ -6,13 +6,13 @@ import static com.uber.okbuck.core.dependency.OResolvedDependency.JAR;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableSet;
 import com.uber.okbuck.composer.jvm.JvmBuckRuleComposer;
+import com.uber.okbuck.core.dependency.DependencyGraph;
 import com.uber.okbuck.core.dependency.OExternalDependency;
 import com.uber.okbuck.core.model.base.RuleType;
 import com.uber.okbuck.template.core.Rule;
 import com.uber.okbuck.template.java.Prebuilt;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -34,16 +34,22 @@ public class PrebuiltRuleComposer extends JvmBuckRuleComposer {
 
   /**
    * @param dependencies External Dependencies whose rule needs to be created
+   * @param graph The frozen graph of the dependencies
    * @return List of rules
    */
   @SuppressWarnings("NullAway")
   public static List<Rule> compose(
-      Collection<OExternalDependency> dependencies, HashMap<String, String> shaSum256) {
-    return compose(dependencies, shaSum256, null);
+      Collection<OExternalDependency> dependencies,
+      DependencyGraph graph,
+      Map<String, String> shaSum256) {
+    return compose(dependencies, graph, shaSum256, null);
   }
 
   public static List<Rule> compose(
-      Collection<OExternalDependency> dependencies, HashMap<String, String> shaSum256, Map<String, List<String>> labelsMap) {
+      Collection<OExternalDependency> dependencies,
+      DependencyGraph graph,
+      Map<String, String> shaSum256,
+      Map<String, List<String>> labelsMap) {
     return dependencies
         .stream()
         .peek(
@@ -79,7 +85,7 @@ public class PrebuiltRuleComposer extends JvmBuckRuleComposer {
               rule.labels(getLabels(dependency, labelsMap));
 
               rule.ruleType(RuleType.PREBUILT.getBuckName())
-                  .deps(external(dependency.getDeps()))
+                  .deps(external(graph.children(dependency)))
                   .name(dependency.getTargetName());
 
               return rule;
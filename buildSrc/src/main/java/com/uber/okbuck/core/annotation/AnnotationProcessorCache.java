@@ -1,39 +1,73 @@
 package com.uber.okbuck.core.annotation;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.errorprone.annotations.Var;
 import com.uber.okbuck.composer.java.JavaAnnotationProcessorRuleComposer;
 import com.uber.okbuck.core.dependency.DependencyUtils;
+import com.uber.okbuck.core.dependency.ResolvedConfigurationCache;
 import com.uber.okbuck.core.manager.BuckFileManager;
 import com.uber.okbuck.core.model.base.Scope;
+import com.uber.okbuck.core.model.base.Scope.ConfigurationArtifacts;
+import com.uber.okbuck.core.util.FingerprintUtil;
 import com.uber.okbuck.core.util.ProjectUtil;
+import com.uber.okbuck.core.util.Tracer;
 import com.uber.okbuck.extension.ExternalDependenciesExtension;
+import com.uber.okbuck.extension.OkBuckExtension;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.Function;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 import kotlin.jvm.Synchronized;
 import org.gradle.api.Project;
 import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.artifacts.ExternalModuleDependency;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.artifacts.component.ModuleComponentSelector;
+import org.gradle.api.artifacts.result.ComponentSelectionCause;
+import org.gradle.api.artifacts.result.DependencyResult;
+import org.gradle.api.artifacts.result.ResolvedComponentResult;
+import org.gradle.api.artifacts.result.ResolvedDependencyResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /** Keeps a cache of the annotation processor dependencies and its scope. */
 public class AnnotationProcessorCache {
   public static final String AUTO_VALUE_GROUP = "com.google.auto.value";
   public static final String AUTO_VALUE_NAME = "auto-value";
 
+  private static final Logger LOG = LoggerFactory.getLogger(AnnotationProcessorCache.class);
+
+  private static final String PROCESSOR_KEY_PREFIX = "processor|";
+
   private final Project project;
   private final BuckFileManager buckFileManager;
   private final String processorBuckFile;
   private final Map<Set<Dependency>, Scope> dependencyToScopeMap;
 
+  // Processor dependencies by processor key, so that projects share a single scope for each
+  private final Map<String, Dependency> processorDependencies = new ConcurrentHashMap<>();
+
+  // Whether a processor configuration of a project has resolution rules
+  private final Map<Project, Boolean> resolutionRules = new ConcurrentHashMap<>();
+
   @Nullable private Map<Set<Dependency>, Scope> autoValueDependencyToScopeMap;
+  @Nullable private Map<String, ConfigurationArtifacts> batchedArtifacts;
 
   public AnnotationProcessorCache(
       Project project, BuckFileManager buckFileManager, String processorBuckFile) {
@@ -79,6 +113,8 @@ public class AnnotationProcessorCache {
    * @return A list of scopes generated by the configuration.
    */
   public List<Scope> getAnnotationProcessorScopes(Project project, Configuration configuration) {
+    ProjectUtil.getIncrementalManager(project).recordProcessorConfiguration(configuration);
+
     ImmutableList.Builder<Scope> scopesBuilder = ImmutableList.builder();
 
     Map<Dependency, Scope> singleDependencyToScope =
@@ -159,6 +195,8 @@ public class AnnotationProcessorCache {
    * @return A boolean whether the configuration has any empty annotation processors.
    */
   public boolean hasEmptyAnnotationProcessors(Project project, Configuration configuration) {
+    ProjectUtil.getIncrementalManager(project).recordProcessorConfiguration(configuration);
+
     Map<Dependency, Scope> depToScope =
         createProcessorScopes(project, configuration.getAllDependencies());
 
@@ -204,27 +242,231 @@ public class AnnotationProcessorCache {
       Project project, Set<Dependency> dependencies) {
 
     ImmutableMap.Builder<Dependency, Scope> currentBuilder = new ImmutableMap.Builder<>();
-
-    // Creates a scope using a detached configuration and the given dependency set.
-    Function<Set<Dependency>, Scope> computeScope =
-        depSet -> {
-          Dependency[] depArray = depSet.toArray(new Dependency[0]);
-          Configuration detached = project.getConfigurations().detachedConfiguration(depArray);
-          return Scope.builder(project).configuration(detached).build();
-        };
+    boolean batched = isBatched(project);
 
     // Creates one scope per dependency if not already
     // found and adds it to the current builder.
     dependencies.forEach(
         dependency -> {
-          ImmutableSet<Dependency> dependencySet = ImmutableSet.of(dependency);
-          Scope scope = dependencyToScopeMap.computeIfAbsent(dependencySet, computeScope);
+          @Nullable String key = null;
+          @Var Dependency processorDependency = dependency;
+          if (batched && dependency instanceof ExternalModuleDependency) {
+            key = processorKey(project, dependency);
+            processorDependency = processorDependencies.computeIfAbsent(key, k -> dependency);
+          }
+
+          String processorKey = key;
+          ImmutableSet<Dependency> dependencySet = ImmutableSet.of(processorDependency);
+          Scope scope =
+              dependencyToScopeMap.computeIfAbsent(
+                  dependencySet, depSet -> createProcessorScope(project, depSet, processorKey));
           currentBuilder.put(dependency, scope);
         });
 
     return currentBuilder.build();
   }
 
+  // Creates a scope using a detached configuration and the given dependency set.
+  private Scope createProcessorScope(
+      Project project, Set<Dependency> dependencies, @Nullable String processorKey) {
+    Dependency[] depArray = dependencies.toArray(new Dependency[0]);
+    Configuration detached = project.getConfigurations().detachedConfiguration(depArray);
+
+    Scope.Builder builder = Scope.builder(project).configuration(detached);
+    if (processorKey != null) {
+      builder
+          .resolutionKey(PROCESSOR_KEY_PREFIX + processorKey)
+          .resolvedArtifacts(getBatchedArtifacts().get(processorKey));
+    }
+    return builder.build();
+  }
+
+  private static boolean isBatched(Project project) {
+    return ProjectUtil.getOkBuckExtension(project).getExperimentalExtension().batchedProcessorScopes
+        && !ProjectUtil.getExternalDependencyExtension(project).versionedExportedDepsEnabled();
+  }
+
+  // Projects with resolution rules get processor keys of their own, so that their processors are
+  // neither shared with nor resolved together with those of other projects
+  private String processorKey(Project project, Dependency dependency) {
+    String key =
+        FingerprintUtil.describe(dependency)
+            + "@"
+            + FingerprintUtil.repositoriesFingerprint(project);
+    return hasResolutionRules(project) ? key + "@" + project.getPath() : key;
+  }
+
+  private boolean hasResolutionRules(Project project) {
+    return resolutionRules.computeIfAbsent(
+        project,
+        p ->
+            p.getConfigurations().stream()
+                .filter(configuration -> isProcessorConfiguration(configuration.getName()))
+                .anyMatch(DependencyUtils::hasResolutionRules));
+  }
+
+  private synchronized Map<String, ConfigurationArtifacts> getBatchedArtifacts() {
+    if (batchedArtifacts == null) {
+      try (Tracer.Span ignored = Tracer.span("AnnotationProcessorCache.batch")) {
+        batchedArtifacts = resolveBatches();
+      }
+    }
+    return batchedArtifacts;
+  }
+
+  /**
+   * Resolves the processor dependencies of all projects together. Dependencies are grouped by the
+   * repositories of their project, and each group is resolved in as many combined passes as it
+   * has versions of the same module. Projects with resolution rules form groups of their own. The
+   * resolved graph of a pass is split into the closure of each processor. Processors whose closure
+   * has a component selected for any reason but being requested, e.g. by a conflict with another
+   * processor of the pass, a constraint or a rule, or that are restored from the resolved
+   * configuration cache, are left out and resolved on their own.
+   */
+  private Map<String, ConfigurationArtifacts> resolveBatches() {
+    OkBuckExtension okBuckExtension = ProjectUtil.getOkBuckExtension(project);
+    ResolvedConfigurationCache resolvedConfigurationCache =
+        ProjectUtil.getResolvedConfigurationCache(project);
+
+    Map<String, Project> groupProjects = new TreeMap<>();
+    Map<String, Map<String, Dependency>> groups = new TreeMap<>();
+    for (Project buckProject : okBuckExtension.buckProjects) {
+      String group =
+          hasResolutionRules(buckProject)
+              ? buckProject.getPath()
+              : FingerprintUtil.repositoriesFingerprint(buckProject);
+      buckProject.getConfigurations().stream()
+          .filter(configuration -> isProcessorConfiguration(configuration.getName()))
+          .flatMap(configuration -> configuration.getAllDependencies().stream())
+          .filter(dependency -> dependency instanceof ExternalModuleDependency)
+          .forEach(
+              dependency -> {
+                Project groupProject = groupProjects.computeIfAbsent(group, g -> buckProject);
+                String key = processorKey(groupProject, dependency);
+                if (!resolvedConfigurationCache.contains(
+                    groupProject,
+                    groupProject.getConfigurations().detachedConfiguration(dependency),
+                    PROCESSOR_KEY_PREFIX + key)) {
+                  groups.computeIfAbsent(group, g -> new TreeMap<>()).put(key, dependency);
+                }
+              });
+    }
+
+    Map<String, ConfigurationArtifacts> artifacts = new HashMap<>();
+    @Var int passes = 0;
+    for (Map.Entry<String, Map<String, Dependency>> group : groups.entrySet()) {
+      Project groupProject = Preconditions.checkNotNull(groupProjects.get(group.getKey()));
+      for (Map<String, Dependency> pass : splitPasses(group.getValue())) {
+        resolvePass(groupProject, pass, artifacts);
+        passes++;
+      }
+    }
+
+    LOG.info(
+        "Resolved {} annotation processor scopes in {} batched passes", artifacts.size(), passes);
+    return artifacts;
+  }
+
+  // Splits dependencies into passes with a single version of each module
+  private static List<Map<String, Dependency>> splitPasses(Map<String, Dependency> dependencies) {
+    List<Map<String, Dependency>> passes = new ArrayList<>();
+    List<Set<String>> passModules = new ArrayList<>();
+    dependencies.forEach(
+        (key, dependency) -> {
+          String module = dependency.getGroup() + ":" + dependency.getName();
+          @Var int index = 0;
+          while (index < passes.size() && passModules.get(index).contains(module)) {
+            index++;
+          }
+          if (index == passes.size()) {
+            passes.add(new LinkedHashMap<>());
+            passModules.add(new HashSet<>());
+          }
+          passes.get(index).put(key, dependency);
+          passModules.get(index).add(module);
+        });
+    return passes;
+  }
+
+  private static void resolvePass(
+      Project project,
+      Map<String, Dependency> pass,
+      Map<String, ConfigurationArtifacts> artifacts) {
+    Map<String, String> keysByModule = new HashMap<>();
+    pass.forEach(
+        (key, dependency) ->
+            keysByModule.put(dependency.getGroup() + ":" + dependency.getName(), key));
+
+    ExternalDependenciesExtension extension = ProjectUtil.getExternalDependencyExtension(project);
+    Configuration combined =
+        project.getConfigurations().detachedConfiguration(pass.values().toArray(new Dependency[0]));
+    DependencyUtils.enforceChangingDeps(project, combined);
+
+    ResolvedComponentResult root;
+    ConfigurationArtifacts resolved;
+    try {
+      root = combined.getIncoming().getResolutionResult().getRoot();
+      resolved = ConfigurationArtifacts.resolve(combined);
+    } catch (RuntimeException e) {
+      // Processors of a failed pass are resolved on their own, which reports the failure
+      LOG.info("Couldn't resolve annotation processors {} together", pass.keySet(), e);
+      return;
+    }
+
+    for (DependencyResult result : root.getDependencies()) {
+      if (!(result instanceof ResolvedDependencyResult)
+          || !(result.getRequested() instanceof ModuleComponentSelector)) {
+        continue;
+      }
+      ModuleComponentSelector requested = (ModuleComponentSelector) result.getRequested();
+      String key = keysByModule.get(requested.getGroup() + ":" + requested.getModule());
+      if (key == null) {
+        continue;
+      }
+
+      ResolvedComponentResult selected = ((ResolvedDependencyResult) result).getSelected();
+      Set<ComponentIdentifier> closure = new HashSet<>();
+      if (!DependencyUtils.isChanging(result, extension)
+          && collectClosure(selected, closure, extension)) {
+        artifacts.put(key, resolved.filter(closure));
+      }
+    }
+  }
+
+  // Returns false if a component of the closure was selected for any reason but being requested,
+  // which may not happen when the processor is resolved on its own, or if the closure has changing
+  // versions, which are checked when the processor is resolved on its own
+  private static boolean collectClosure(
+      ResolvedComponentResult component,
+      Set<ComponentIdentifier> closure,
+      ExternalDependenciesExtension extension) {
+    Deque<ResolvedComponentResult> queue = new ArrayDeque<>();
+    queue.add(component);
+    while (!queue.isEmpty()) {
+      ResolvedComponentResult current = queue.poll();
+      if (!closure.add(current.getId())) {
+        continue;
+      }
+      if (!current.getSelectionReason().getDescriptions().stream()
+          .allMatch(description -> description.getCause() == ComponentSelectionCause.REQUESTED)) {
+        return false;
+      }
+      for (DependencyResult dependency : current.getDependencies()) {
+        if (DependencyUtils.isChanging(dependency, extension)) {
+          return false;
+        }
+        if (dependency instanceof ResolvedDependencyResult) {
+          queue.add(((ResolvedDependencyResult) dependency).getSelected());
+        }
+      }
+    }
+    return true;
+  }
+
+  private static boolean isProcessorConfiguration(String name) {
+    return name.toLowerCase(Locale.US).contains("annotationprocessor") || name.startsWith("kapt");
+  }
+
   private ImmutableMap<Set<Dependency>, Scope> createAutoValueProcessorScopes(
       Project project, Set<String> configurations) {
     ImmutableMap.Builder<Set<Dependency>, Scope> currentBuilder = new ImmutableMap.Builder<>();
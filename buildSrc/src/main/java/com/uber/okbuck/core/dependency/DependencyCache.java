@@ -1,24 +1,17 @@
 package com.uber.okbuck.core.dependency;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.ImmutableSet;
 import com.uber.okbuck.core.manager.DependencyManager;
 import com.uber.okbuck.core.util.ProjectUtil;
+import com.uber.okbuck.core.util.Tracer;
 import com.uber.okbuck.extension.ExternalDependenciesExtension;
 import com.uber.okbuck.extension.JetifierExtension;
 import com.uber.okbuck.extension.OkBuckExtension;
-import java.io.File;
-import java.io.IOException;
-import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
-import org.apache.commons.io.IOUtils;
 import org.gradle.api.Project;
 import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.artifacts.DependencySet;
@@ -73,6 +66,7 @@ public class DependencyCache {
     LOG.info("Picked dependency {}", dependency);
 
     dependencyManager.addDependency(dependency, skipPrebuilt);
+    ProjectUtil.getIncrementalManager(rootProject).recordDependency(dependency, skipPrebuilt);
 
     return dependency;
   }
@@ -93,20 +87,7 @@ public class DependencyCache {
    * @return The list of annotation processor classes available in the manifest
    */
   public Set<String> getAnnotationProcessors(OExternalDependency externalDependency) {
-    OExternalDependency dependency =
-        forcedDeps.getOrDefault(externalDependency.getVersionless(), externalDependency);
-
-    try {
-      String processors =
-          getJarFileContent(
-              dependency.getRealDependencyFile(),
-              "META-INF/services/javax.annotation.processing.Processor");
-
-      return ImmutableSet.copyOf(processors.split(","));
-
-    } catch (IOException e) {
-      throw new IllegalStateException(e);
-    }
+    return getJarMetadata(externalDependency).getAnnotationProcessors();
   }
 
   /**
@@ -116,40 +97,13 @@ public class DependencyCache {
    * @return Whether the dependency has auto value extension.
    */
   public boolean hasAutoValueExtension(OExternalDependency externalDependency) {
-    OExternalDependency dependency =
-        forcedDeps.getOrDefault(externalDependency.getVersionless(), externalDependency);
-    try {
-      String extensions =
-          getJarFileContent(
-              dependency.getRealDependencyFile(),
-              "META-INF/services/com.google.auto.value.extension.AutoValueExtension");
-      return !extensions.isEmpty();
-    } catch (IOException e) {
-      throw new IllegalStateException(e);
-    }
+    return getJarMetadata(externalDependency).hasAutoValueExtension();
   }
 
-  private static String getJarFileContent(File dependencyFile, String filePathString)
-      throws IOException {
-    String content;
-
-    JarFile jarFile = new JarFile(dependencyFile);
-    JarEntry jarEntry = (JarEntry) jarFile.getEntry(filePathString);
-    if (jarEntry != null) {
-      List<String> entries =
-          Arrays.stream(
-                  IOUtils.toString(jarFile.getInputStream(jarEntry), "UTF-8").trim().split("\\n"))
-              .filter(
-                  entry -> {
-                    return !entry.startsWith("#")
-                        && !entry.trim().isEmpty(); // filter out comments and empty lines
-                  })
-              .collect(Collectors.toList());
-      content = String.join(",", entries);
-    } else {
-      content = "";
-    }
-    return content;
+  private JarMetadataIndex.Metadata getJarMetadata(OExternalDependency externalDependency) {
+    OExternalDependency dependency =
+        forcedDeps.getOrDefault(externalDependency.getVersionless(), externalDependency);
+    return ProjectUtil.getJarMetadataIndex(rootProject).get(dependency.getRealDependencyFile());
   }
 
   /**
@@ -160,20 +114,22 @@ public class DependencyCache {
    * @param configuration The configuration to materialize into the dependency cache
    */
   public Set<OExternalDependency> build(Configuration configuration) {
-    OkBuckExtension okBuckExtension = ProjectUtil.getOkBuckExtension(rootProject);
+    try (Tracer.Span ignored = Tracer.span("DependencyCache.build", configuration.getName())) {
+      OkBuckExtension okBuckExtension = ProjectUtil.getOkBuckExtension(rootProject);
 
-    ExternalDependenciesExtension externalDependenciesExtension =
-        okBuckExtension.getExternalDependenciesExtension();
-    JetifierExtension jetifierExtension = okBuckExtension.getJetifierExtension();
+      ExternalDependenciesExtension externalDependenciesExtension =
+          okBuckExtension.getExternalDependenciesExtension();
+      JetifierExtension jetifierExtension = okBuckExtension.getJetifierExtension();
 
-    addDependencies(configuration.getAllDependencies());
+      addDependencies(configuration.getAllDependencies());
 
-    return DependencyUtils.resolveExternal(
-            rootProject, configuration, externalDependenciesExtension, jetifierExtension)
-        .stream()
-        .map(this::get)
-        .peek(externalDependency -> externalDependency.updateFirstLevel(true))
-        .collect(Collectors.toSet());
+      return DependencyUtils.resolveExternal(
+              rootProject, configuration, externalDependenciesExtension, jetifierExtension)
+          .stream()
+          .map(this::get)
+          .peek(externalDependency -> externalDependency.updateFirstLevel(true))
+          .collect(Collectors.toSet());
+    }
   }
 
   private Set<OExternalDependency> build(String configuration) {
@@ -5,12 +5,12 @@ import com.uber.okbuck.extension.ExternalDependenciesExtension;
 import com.uber.okbuck.extension.JetifierExtension;
 import java.io.File;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 import org.apache.commons.io.FilenameUtils;
@@ -19,6 +19,11 @@ import org.gradle.api.artifacts.ResolvedArtifact;
 import org.gradle.api.artifacts.ResolvedDependency;
 import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
 
+/**
+ * Creates the external dependencies of all projects. Dependencies are interned by their
+ * coordinates and files, so that project tasks running in parallel share a single instance of each
+ * dependency without contending on a lock when it already exists.
+ */
 public final class DependencyFactory {
 
   public static final String LOCAL_GROUP = "local";
@@ -26,10 +31,12 @@ public final class DependencyFactory {
   private static final String LOCAL_DEP_VERSION = "1.0.0-LOCAL";
 
   private final Map<ExternalDependency, Set<VersionlessDependency>> unresolvedToVersionless =
-      new HashMap<>();
+      new ConcurrentHashMap<>();
 
-  private final Map<OResolvedDependency, OExternalDependency> externalDependencyCache =
-      new HashMap<>();
+  // All inputs of a resolved dependency are part of its key, so a key maps to the same dependency
+  // the resolved dependency itself would, without building it first.
+  private final Map<InternKey, OExternalDependency> externalDependencyCache =
+      new ConcurrentHashMap<>();
 
   public DependencyFactory() {}
 
@@ -44,7 +51,36 @@ public final class DependencyFactory {
    * @param jetifierExtension Jetifier Extension
    * @return External Dependency
    */
-  public synchronized OExternalDependency from(
+  public OExternalDependency from(
+      String group,
+      String name,
+      String version,
+      File dependencyFile,
+      @Nullable File dependencySourceFile,
+      ExternalDependenciesExtension externalDependenciesExtension,
+      JetifierExtension jetifierExtension) {
+    InternKey key = new InternKey(group, name, version, dependencyFile, dependencySourceFile);
+    OExternalDependency interned = externalDependencyCache.get(key);
+    if (interned != null) {
+      return interned;
+    }
+
+    OExternalDependency created =
+        create(
+            group,
+            name,
+            version,
+            dependencyFile,
+            dependencySourceFile,
+            externalDependenciesExtension,
+            jetifierExtension);
+
+    // Another thread may have created the same dependency meanwhile, keep the first one
+    OExternalDependency existing = externalDependencyCache.putIfAbsent(key, created);
+    return existing != null ? existing : created;
+  }
+
+  private static OExternalDependency create(
       String group,
       String name,
       String version,
@@ -70,24 +106,12 @@ public final class DependencyFactory {
             .setRealDependencySourceFile(Optional.ofNullable(dependencySourceFile))
             .build();
 
-    if (externalDependencyCache.containsKey(resolvedDependency)) {
-      return externalDependencyCache.get(resolvedDependency);
-    }
-
-    OExternalDependency externalDependency;
-
     if (group.equals(LOCAL_GROUP) || isLocalDependency(dependencyFile.getAbsolutePath())) {
-      externalDependency =
-          new LocalOExternalDependency(
-              resolvedDependency, externalDependenciesExtension, jetifierExtension);
-    } else {
-      externalDependency =
-          new OExternalDependency(
-              resolvedDependency, externalDependenciesExtension, jetifierExtension);
+      return new LocalOExternalDependency(
+          resolvedDependency, externalDependenciesExtension, jetifierExtension);
     }
-
-    externalDependencyCache.put(resolvedDependency, externalDependency);
-    return externalDependency;
+    return new OExternalDependency(
+        resolvedDependency, externalDependenciesExtension, jetifierExtension);
   }
 
   /**
@@ -116,40 +140,40 @@ public final class DependencyFactory {
             jetifierExtension);
   }
 
-  public synchronized Set<VersionlessDependency> fromDependency(ExternalDependency dependency) {
-    if (unresolvedToVersionless.containsKey(dependency)) {
-      return unresolvedToVersionless.get(dependency);
+  public Set<VersionlessDependency> fromDependency(ExternalDependency dependency) {
+    return unresolvedToVersionless.computeIfAbsent(
+        dependency, DependencyFactory::versionlessFromDependency);
+  }
+
+  private static Set<VersionlessDependency> versionlessFromDependency(
+      ExternalDependency dependency) {
+    VersionlessDependency.Builder vDependencyBuilder =
+        VersionlessDependency.builder().setName(dependency.getName());
+    String group = dependency.getGroup();
+
+    if (group == null) {
+      vDependencyBuilder.setGroup(LOCAL_GROUP);
     } else {
-      VersionlessDependency.Builder vDependencyBuilder =
-          VersionlessDependency.builder().setName(dependency.getName());
-      String group = dependency.getGroup();
-
-      if (group == null) {
-        vDependencyBuilder.setGroup(LOCAL_GROUP);
-      } else {
-        vDependencyBuilder.setGroup(group);
-      }
+      vDependencyBuilder.setGroup(group);
+    }
 
-      Set<VersionlessDependency> vDeps = new HashSet<>();
-
-      if (dependency.getArtifacts().size() > 0) {
-        vDeps.addAll(
-            dependency
-                .getArtifacts()
-                .stream()
-                .map(
-                    dependencyArtifact ->
-                        vDependencyBuilder
-                            .setClassifier(Optional.ofNullable(dependencyArtifact.getClassifier()))
-                            .build())
-                .collect(Collectors.toSet()));
-      } else {
-        vDeps.add(vDependencyBuilder.build());
-      }
+    Set<VersionlessDependency> vDeps = new HashSet<>();
 
-      unresolvedToVersionless.put(dependency, vDeps);
-      return vDeps;
+    if (dependency.getArtifacts().size() > 0) {
+      vDeps.addAll(
+          dependency
+              .getArtifacts()
+              .stream()
+              .map(
+                  dependencyArtifact ->
+                      vDependencyBuilder
+                          .setClassifier(Optional.ofNullable(dependencyArtifact.getClassifier()))
+                          .build())
+              .collect(Collectors.toSet()));
+    } else {
+      vDeps.add(vDependencyBuilder.build());
     }
+    return vDeps;
   }
 
   /**
@@ -223,4 +247,51 @@ public final class DependencyFactory {
   private static boolean isLocalDependency(String dependencyFilePath) {
     return dependencyFilePath.contains("-SNAPSHOT") || dependencyFilePath.contains("-LOCAL");
   }
+
+  /** The coordinates and files a dependency is interned by, cheap to build and compare. */
+  private static final class InternKey {
+
+    private final String group;
+    private final String name;
+    private final String version;
+    private final String path;
+    @Nullable private final String sourcePath;
+    private final int hash;
+
+    private InternKey(
+        String group,
+        String name,
+        String version,
+        File dependencyFile,
+        @Nullable File dependencySourceFile) {
+      this.group = group;
+      this.name = name;
+      this.version = version;
+      this.path = dependencyFile.getPath();
+      this.sourcePath = dependencySourceFile != null ? dependencySourceFile.getPath() : null;
+      this.hash = Objects.hash(group, name, version, path, sourcePath);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof InternKey)) {
+        return false;
+      }
+      InternKey that = (InternKey) o;
+      return hash == that.hash
+          && path.equals(that.path)
+          && version.equals(that.version)
+          && name.equals(that.name)
+          && group.equals(that.group)
+          && Objects.equals(sourcePath, that.sourcePath);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
 }
@@ -0,0 +1,144 @@
+package com.uber.okbuck.core.dependency;
+
+import com.google.common.base.Preconditions;
+import com.google.errorprone.annotations.Var;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable graph of external dependencies and their children, frozen once all dependencies are
+ * resolved. The children of each dependency are selected and filtered by its exclude rules once
+ * when the graph is frozen, and stored as indexes into the nodes of the graph, so that reading
+ * them does not build any collections.
+ */
+public final class DependencyGraph {
+
+  private static final int[] NO_CHILDREN = new int[0];
+
+  private final OExternalDependency[] nodes;
+  private final int[][] children;
+  private final Map<OExternalDependency, Integer> indexes;
+
+  private DependencyGraph(
+      OExternalDependency[] nodes, int[][] children, Map<OExternalDependency, Integer> indexes) {
+    this.nodes = nodes;
+    this.children = children;
+    this.indexes = indexes;
+  }
+
+  /**
+   * Freezes the graph reachable from the given dependencies. Children need to be added to the
+   * dependencies before, as later changes are not reflected in the graph.
+   *
+   * @param dependencies The dependencies to start from
+   * @return The frozen graph
+   */
+  public static DependencyGraph freeze(Collection<OExternalDependency> dependencies) {
+    Map<OExternalDependency, Integer> indexes = new HashMap<>();
+    List<OExternalDependency> nodes = new ArrayList<>();
+    List<Set<OExternalDependency>> deps = new ArrayList<>();
+
+    Deque<OExternalDependency> queue = new ArrayDeque<>();
+    dependencies.forEach(dependency -> enqueue(dependency, indexes, nodes, queue));
+    while (!queue.isEmpty()) {
+      Set<OExternalDependency> childDeps = queue.poll().getDeps();
+      deps.add(childDeps);
+      childDeps.forEach(child -> enqueue(child, indexes, nodes, queue));
+    }
+
+    int[][] children = new int[nodes.size()][];
+    for (int i = 0; i < children.length; i++) {
+      Set<OExternalDependency> childDeps = deps.get(i);
+      if (childDeps.isEmpty()) {
+        children[i] = NO_CHILDREN;
+        continue;
+      }
+      int[] childIndexes = new int[childDeps.size()];
+      @Var int j = 0;
+      for (OExternalDependency child : childDeps) {
+        // Every child was enqueued when its parent was visited
+        childIndexes[j++] = Preconditions.checkNotNull(indexes.get(child));
+      }
+      children[i] = childIndexes;
+    }
+
+    return new DependencyGraph(nodes.toArray(new OExternalDependency[0]), children, indexes);
+  }
+
+  private static void enqueue(
+      OExternalDependency dependency,
+      Map<OExternalDependency, Integer> indexes,
+      List<OExternalDependency> nodes,
+      Deque<OExternalDependency> queue) {
+    if (indexes.putIfAbsent(dependency, nodes.size()) == null) {
+      nodes.add(dependency);
+      queue.add(dependency);
+    }
+  }
+
+  /** Returns the number of dependencies in the graph. */
+  public int size() {
+    return nodes.length;
+  }
+
+  /**
+   * Returns the children of a dependency, as selected by {@link OExternalDependency#getDeps()}.
+   *
+   * @param dependency A dependency of the graph
+   * @return An immutable view of the children
+   */
+  public List<OExternalDependency> children(OExternalDependency dependency) {
+    int[] childIndexes = children[index(dependency)];
+    return new AbstractList<OExternalDependency>() {
+      @Override
+      public OExternalDependency get(int i) {
+        return nodes[childIndexes[i]];
+      }
+
+      @Override
+      public int size() {
+        return childIndexes.length;
+      }
+    };
+  }
+
+  /**
+   * Returns the transitive children of a dependency, excluding the dependency itself unless it is
+   * part of a cycle.
+   *
+   * @param dependency A dependency of the graph
+   * @return The transitive children in breadth first order
+   */
+  public List<OExternalDependency> transitiveChildren(OExternalDependency dependency) {
+    BitSet visited = new BitSet(nodes.length);
+    List<OExternalDependency> transitive = new ArrayList<>();
+    Deque<Integer> queue = new ArrayDeque<>();
+    queue.add(index(dependency));
+    while (!queue.isEmpty()) {
+      for (int child : children[queue.poll()]) {
+        if (!visited.get(child)) {
+          visited.set(child);
+          transitive.add(nodes[child]);
+          queue.add(child);
+        }
+      }
+    }
+    return transitive;
+  }
+
+  private int index(OExternalDependency dependency) {
+    Integer index = indexes.get(dependency);
+    if (index == null) {
+      throw new IllegalStateException("Dependency not in the frozen graph: " + dependency);
+    }
+    return index;
+  }
+}
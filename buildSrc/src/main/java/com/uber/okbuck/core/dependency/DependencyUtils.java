@@ -1,32 +1,47 @@
 package com.uber.okbuck.core.dependency;
 
+import com.google.common.base.CharMatcher;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 import com.google.common.io.Files;
 import com.uber.okbuck.core.util.ProjectUtil;
+import com.uber.okbuck.core.util.Tracer;
 import com.uber.okbuck.extension.ExternalDependenciesExtension;
 import com.uber.okbuck.extension.JetifierExtension;
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.maven.artifact.versioning.ComparableVersion;
+import org.gradle.api.Action;
 import org.gradle.api.Project;
 import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.ExternalModuleDependency;
 import org.gradle.api.artifacts.ResolvedDependency;
 import org.gradle.api.artifacts.UnknownConfigurationException;
+import org.gradle.api.artifacts.VersionConstraint;
 import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.artifacts.component.ComponentSelector;
 import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.artifacts.component.ModuleComponentSelector;
 import org.gradle.api.artifacts.component.ProjectComponentIdentifier;
+import org.gradle.api.artifacts.result.DependencyResult;
 import org.gradle.api.artifacts.result.ResolvedArtifactResult;
+import org.gradle.api.artifacts.result.ResolvedDependencyResult;
+import org.gradle.api.internal.artifacts.configurations.ResolutionStrategyInternal;
 import org.gradle.api.internal.artifacts.ivyservice.DefaultLenientConfiguration;
+import org.gradle.internal.ImmutableActionSet;
 
 public final class DependencyUtils {
 
@@ -35,6 +50,13 @@ public final class DependencyUtils {
   private static final ImmutableSet<String> WHITELIST_LOCAL_PATTERNS =
       ImmutableSet.of("generated-gradle-jars/gradle-api-", "wrapper/dists");
 
+  private static final long MAPPED_HASH_THRESHOLD = 1L << 20;
+  private static final long MAPPED_HASH_CHUNK = 64L << 20;
+
+  // Whether configurations had resolution rules before enforceChangingDeps added its own
+  private static final Map<Configuration, Boolean> RESOLUTION_RULES =
+      Collections.synchronizedMap(new WeakHashMap<>());
+
   private DependencyUtils() {}
 
   @Nullable
@@ -80,8 +102,24 @@ public final class DependencyUtils {
   }
 
   public static String shaSum256(File file) {
-    try {
-      return Files.asByteSource(file).hash(Hashing.sha256()).toString();
+    try (Tracer.Span ignored = Tracer.span("sha256", file.getName())) {
+      long size = file.length();
+      if (size < MAPPED_HASH_THRESHOLD) {
+        return Files.asByteSource(file).hash(Hashing.sha256()).toString();
+      }
+
+      // Large files are hashed straight from the page cache instead of through a copy buffer
+      Hasher hasher = Hashing.sha256().newHasher();
+      try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+        for (long position = 0; position < size; position += MAPPED_HASH_CHUNK) {
+          hasher.putBytes(
+              channel.map(
+                  FileChannel.MapMode.READ_ONLY,
+                  position,
+                  Math.min(MAPPED_HASH_CHUNK, size - position)));
+        }
+      }
+      return hasher.hash().toString();
     } catch (IOException e) {
       throw new IllegalStateException(
           String.format("Failed to calculate shaSum256 of %s", file), e);
@@ -136,7 +174,7 @@ public final class DependencyUtils {
               .filter(artifact -> DependencyUtils.isConsumable(artifact.getFile()))
               .collect(Collectors.toSet());
 
-      Map<ComponentIdentifier, ResolvedArtifactResult> componentIdToSourcesArtifactMap =
+      Map<ComponentIdentifier, File> componentIdToSourcesFileMap =
           new HashMap<>(ProjectUtil.downloadSources(project, consumableArtifacts));
 
       return consumableArtifacts
@@ -144,8 +182,7 @@ public final class DependencyUtils {
           .map(
               artifact -> {
                 ComponentIdentifier identifier = artifact.getId().getComponentIdentifier();
-                ResolvedArtifactResult sourcesArtifact =
-                    componentIdToSourcesArtifactMap.get(identifier);
+                File sourcesFile = componentIdToSourcesFileMap.get(identifier);
 
                 if (identifier instanceof ModuleComponentIdentifier
                     && ((ModuleComponentIdentifier) identifier).getVersion().length() > 0) {
@@ -157,14 +194,14 @@ public final class DependencyUtils {
                           moduleIdentifier.getModule(),
                           moduleIdentifier.getVersion(),
                           artifact.getFile(),
-                          sourcesArtifact != null ? sourcesArtifact.getFile() : null,
+                          sourcesFile,
                           externalDependenciesExtension,
                           jetifierExtension);
                 } else {
                   return ProjectUtil.getDependencyFactory(project)
                       .fromLocal(
                           artifact.getFile(),
-                          sourcesArtifact != null ? sourcesArtifact.getFile() : null,
+                          sourcesFile,
                           externalDependenciesExtension,
                           jetifierExtension);
                 }
@@ -178,6 +215,7 @@ public final class DependencyUtils {
   public static void enforceChangingDeps(Project project, Configuration configuration) {
     ExternalDependenciesExtension externalDependenciesExtension =
         ProjectUtil.getOkBuckExtension(project).getExternalDependenciesExtension();
+    RESOLUTION_RULES.computeIfAbsent(configuration, DependencyUtils::findResolutionRules);
     configuration.resolutionStrategy(
         strategy -> {
           strategy.eachDependency(
@@ -212,6 +250,102 @@ public final class DependencyUtils {
         });
   }
 
+  /**
+   * Returns whether the resolution of a configuration is changed by rules of its build rather than
+   * only by what it declares, i.e. by dependency substitution, eachDependency or component
+   * selection rules, or by dependency locking. Rules are code and can't be fingerprinted. The rule
+   * added by {@link #enforceChangingDeps} is not counted.
+   *
+   * @param configuration The configuration
+   */
+  public static boolean hasResolutionRules(Configuration configuration) {
+    Boolean rules = RESOLUTION_RULES.get(configuration);
+    return rules != null ? rules : findResolutionRules(configuration);
+  }
+
+  private static boolean findResolutionRules(Configuration configuration) {
+    if (!(configuration.getResolutionStrategy() instanceof ResolutionStrategyInternal)) {
+      return true;
+    }
+    ResolutionStrategyInternal strategy =
+        (ResolutionStrategyInternal) configuration.getResolutionStrategy();
+    Action<?> substitutionRule = strategy.getDependencySubstitutionRule();
+    return !(substitutionRule instanceof ImmutableActionSet
+            && ((ImmutableActionSet<?>) substitutionRule).isEmpty())
+        || !strategy.getComponentSelection().getRules().isEmpty()
+        || strategy.isDependencyLockingEnabled();
+  }
+
+  /**
+   * Returns whether the resolution of a configuration depends on the current state of its
+   * repositories rather than only on what it declares, i.e. whether it requested a dynamic,
+   * changing or snapshot version, directly or transitively. Such versions pass {@link
+   * #enforceChangingDeps} when they are ignored, and need to be resolved again on every run.
+   * Resolves the dependency graph of the configuration if it wasn't already.
+   *
+   * @param configuration The configuration
+   * @param extension The extension holding the dynamic versions to ignore or map
+   */
+  public static boolean hasChangingVersions(
+      Configuration configuration, ExternalDependenciesExtension extension) {
+    if (configuration.getAllDependencies().withType(ExternalModuleDependency.class).stream()
+        .anyMatch(ExternalModuleDependency::isChanging)) {
+      return true;
+    }
+
+    for (DependencyResult result :
+        configuration.getIncoming().getResolutionResult().getAllDependencies()) {
+      if (isChanging(result, extension)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns whether a dependency of a resolved graph requested a dynamic or changing version that
+   * is not mapped to a fixed one, or was resolved to a snapshot.
+   *
+   * @param result The dependency
+   * @param extension The extension holding the dynamic versions to ignore or map
+   */
+  public static boolean isChanging(
+      DependencyResult result, ExternalDependenciesExtension extension) {
+    ComponentSelector requested = result.getRequested();
+    if (requested instanceof ModuleComponentSelector) {
+      ModuleComponentSelector selector = (ModuleComponentSelector) requested;
+      VersionConstraint constraint = selector.getVersionConstraint();
+      String coordinates =
+          selector.getGroup() + ":" + selector.getModule() + ":" + selector.getVersion();
+      if (!extension.getDynamicDependencyVersionMap().containsKey(coordinates)
+          && (isChangingVersion(constraint.getRequiredVersion())
+              || isChangingVersion(constraint.getStrictVersion())
+              || isChangingVersion(constraint.getPreferredVersion()))) {
+        return true;
+      }
+    }
+    if (result instanceof ResolvedDependencyResult) {
+      ComponentIdentifier selected = ((ResolvedDependencyResult) result).getSelected().getId();
+      return selected instanceof ModuleComponentIdentifier
+          && ((ModuleComponentIdentifier) selected).getVersion().endsWith("-SNAPSHOT");
+    }
+    return false;
+  }
+
+  /**
+   * Returns whether a version is a dynamic version, like {@code 1.+}, {@code latest.release} or a
+   * range, or a snapshot.
+   *
+   * @param version The version, empty or null if none
+   */
+  public static boolean isChangingVersion(@Nullable String version) {
+    return !Strings.isNullOrEmpty(version)
+        && (version.endsWith("+")
+            || version.startsWith("latest.")
+            || version.endsWith("-SNAPSHOT")
+            || CharMatcher.anyOf("[](),").matchesAnyOf(version));
+  }
+
   private static IllegalStateException artifactResolveException(Exception e) {
     return new IllegalStateException(
         "Failed to resolve an artifact. Make sure you have a repositories block defined. "
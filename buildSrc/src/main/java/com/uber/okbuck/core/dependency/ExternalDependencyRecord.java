@@ -0,0 +1,86 @@
+package com.uber.okbuck.core.dependency;
+
+import com.uber.okbuck.extension.ExternalDependenciesExtension;
+import com.uber.okbuck.extension.JetifierExtension;
+import java.io.File;
+import javax.annotation.Nullable;
+
+/**
+ * A serializable snapshot of an external dependency registered with the dependency manager, used
+ * to restore the dependency without resolving its configuration again.
+ */
+public final class ExternalDependencyRecord {
+
+  private final String group;
+  private final String name;
+  private final String version;
+  private final String file;
+  @Nullable private final String sourceFile;
+  private final boolean skipPrebuilt;
+  private final boolean firstLevel;
+
+  private ExternalDependencyRecord(
+      String group,
+      String name,
+      String version,
+      String file,
+      @Nullable String sourceFile,
+      boolean skipPrebuilt,
+      boolean firstLevel) {
+    this.group = group;
+    this.name = name;
+    this.version = version;
+    this.file = file;
+    this.sourceFile = sourceFile;
+    this.skipPrebuilt = skipPrebuilt;
+    this.firstLevel = firstLevel;
+  }
+
+  public static ExternalDependencyRecord of(
+      OExternalDependency dependency, boolean skipPrebuilt, boolean firstLevel) {
+    return new ExternalDependencyRecord(
+        dependency.getGroup(),
+        dependency.getName(),
+        dependency.getVersion(),
+        dependency.getRealDependencyFile().getAbsolutePath(),
+        dependency.getResolvedSourceFile().map(File::getAbsolutePath).orElse(null),
+        skipPrebuilt,
+        firstLevel);
+  }
+
+  public boolean isSkipPrebuilt() {
+    return skipPrebuilt;
+  }
+
+  public boolean isFirstLevel() {
+    return firstLevel;
+  }
+
+  /** Whether the files backing this dependency are still present, e.g. in the gradle cache. */
+  public boolean isAvailable() {
+    return new File(file).isFile() && (sourceFile == null || new File(sourceFile).isFile());
+  }
+
+  /**
+   * Recreates the dependency through the dependency factory so that it is shared with the
+   * dependencies created during resolution.
+   *
+   * @param factory The dependency factory
+   * @param externalDependenciesExtension External Dependency Extension
+   * @param jetifierExtension Jetifier Extension
+   * @return External Dependency
+   */
+  public OExternalDependency toDependency(
+      DependencyFactory factory,
+      ExternalDependenciesExtension externalDependenciesExtension,
+      JetifierExtension jetifierExtension) {
+    return factory.from(
+        group,
+        name,
+        version,
+        new File(file),
+        sourceFile != null ? new File(sourceFile) : null,
+        externalDependenciesExtension,
+        jetifierExtension);
+  }
+}
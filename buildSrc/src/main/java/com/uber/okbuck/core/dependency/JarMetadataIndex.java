@@ -0,0 +1,164 @@
+package com.uber.okbuck.core.dependency;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.reflect.TypeToken;
+import com.uber.okbuck.core.util.StateFile;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.annotation.Nullable;
+import org.apache.commons.io.IOUtils;
+import org.gradle.api.Project;
+
+/**
+ * Index of the service registrations in {@code META-INF/services} of dependency jars. Each jar is
+ * scanned at most once per build, with a single pass over its central directory, and its metadata
+ * is persisted keyed by the sha256 digest of the jar so that later runs do not open it at all.
+ */
+public final class JarMetadataIndex {
+
+  public static final String PROCESSOR_SERVICE = "javax.annotation.processing.Processor";
+  public static final String AUTO_VALUE_EXTENSION_SERVICE =
+      "com.google.auto.value.extension.AutoValueExtension";
+
+  private static final String SERVICES_DIR = "META-INF/services/";
+
+  // Bump whenever the persisted metadata changes.
+  private static final int FORMAT_VERSION = 1;
+
+  private final StateFile<Map<String, Metadata>> stateFile;
+  private final Sha256Cache sha256Cache;
+
+  private final Map<File, Metadata> byFile = new ConcurrentHashMap<>();
+  private final Map<String, Metadata> used = new ConcurrentHashMap<>();
+
+  private Map<String, Metadata> persisted = new HashMap<>();
+
+  public JarMetadataIndex(Project rootProject, Sha256Cache sha256Cache, String stateFile) {
+    this.stateFile =
+        new StateFile<>(
+            rootProject.file(stateFile),
+            FORMAT_VERSION,
+            new TypeToken<Map<String, Metadata>>() {}.getType(),
+            "jar metadata index");
+    this.sha256Cache = sha256Cache;
+  }
+
+  /** Loads the metadata of previous runs. Needs to be called before any jar is looked up. */
+  public void setup() {
+    byFile.clear();
+    used.clear();
+    Map<String, Metadata> entries = stateFile.read();
+    persisted = entries != null ? entries : new HashMap<>();
+  }
+
+  /**
+   * Returns the service registrations of a jar.
+   *
+   * @param jar The jar
+   * @return The metadata of the jar
+   */
+  public Metadata get(File jar) {
+    return byFile.computeIfAbsent(jar, this::load);
+  }
+
+  /** Persists the metadata of the jars looked up in this run. */
+  public void finalizeState() {
+    if (used.isEmpty()) {
+      return;
+    }
+
+    stateFile.write(new TreeMap<>(used));
+  }
+
+  private Metadata load(File jar) {
+    String digest = sha256Cache.get(jar);
+    Metadata previous = persisted.get(digest);
+    if (previous != null) {
+      used.putIfAbsent(digest, previous);
+      return previous;
+    }
+    return used.computeIfAbsent(digest, key -> scan(jar));
+  }
+
+  private static Metadata scan(File jar) {
+    Map<String, List<String>> services = new TreeMap<>();
+    try (ZipFile zipFile = new ZipFile(jar)) {
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        String name = entry.getName();
+        if (entry.isDirectory()
+            || !name.startsWith(SERVICES_DIR)
+            || name.indexOf('/', SERVICES_DIR.length()) >= 0) {
+          continue;
+        }
+
+        try (InputStream is = zipFile.getInputStream(entry)) {
+          List<String> providers =
+              Arrays.stream(IOUtils.toString(is, UTF_8).split("\\n"))
+                  .map(String::trim)
+                  // filter out comments and empty lines
+                  .filter(line -> !line.startsWith("#") && !line.isEmpty())
+                  .collect(Collectors.toList());
+          if (!providers.isEmpty()) {
+            services.put(name.substring(SERVICES_DIR.length()), providers);
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Couldn't read services of " + jar, e);
+    }
+    return new Metadata(services);
+  }
+
+  /** The service registrations of a jar. */
+  public static final class Metadata {
+
+    // Null when read from a state entry without services
+    @Nullable private final Map<String, List<String>> services;
+
+    private Metadata(@Nullable Map<String, List<String>> services) {
+      this.services = services;
+    }
+
+    /** Returns the providers registered for each service, keyed by service name. */
+    public Map<String, List<String>> getServices() {
+      return services != null ? ImmutableMap.copyOf(services) : ImmutableMap.of();
+    }
+
+    /**
+     * Returns the providers registered for a service.
+     *
+     * @param service The fully qualified name of the service
+     * @return The providers in registration order
+     */
+    public List<String> getProviders(String service) {
+      List<String> providers = services != null ? services.get(service) : null;
+      return providers != null ? ImmutableList.copyOf(providers) : ImmutableList.of();
+    }
+
+    public Set<String> getAnnotationProcessors() {
+      return ImmutableSet.copyOf(getProviders(PROCESSOR_SERVICE));
+    }
+
+    public boolean hasAutoValueExtension() {
+      return !getProviders(AUTO_VALUE_EXTENSION_SERVICE).isEmpty();
+    }
+  }
+}
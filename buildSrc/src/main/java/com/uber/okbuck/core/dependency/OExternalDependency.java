@@ -113,6 +113,11 @@ public class OExternalDependency {
     }
   }
 
+  /** Returns the sources jar file the dependency was resolved with. */
+  Optional<File> getResolvedSourceFile() {
+    return this.base.realDependencySourceFile();
+  }
+
   public static String getGradleSha(File file) {
     return file.getParentFile().getName();
   }
@@ -0,0 +1,391 @@
+package com.uber.okbuck.core.dependency;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.gson.reflect.TypeToken;
+import com.uber.okbuck.core.util.FingerprintUtil;
+import com.uber.okbuck.core.util.StateFile;
+import com.uber.okbuck.extension.OkBuckExtension;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.ProjectDependency;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persists the resolved dependencies of scope configurations across runs, so that a configuration
+ * whose resolution inputs did not change is rebuilt without resolving it through gradle.
+ *
+ * <p>A configuration is keyed by a fingerprint of its declared dependencies, constraints, forced
+ * modules and attributes, the repositories of its project, every gradle script of the build, and
+ * the declarations of all projects it transitively depends on. Configurations with resolution
+ * rules, like dependency substitutions, are never cached. Entries are only used while all their
+ * files are still present.
+ */
+public final class ResolvedConfigurationCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ResolvedConfigurationCache.class);
+
+  // Bump whenever the fingerprint inputs or the recorded entries change.
+  private static final int FORMAT_VERSION = 3;
+
+  private final Project rootProject;
+  private final OkBuckExtension okBuckExtension;
+  private final StateFile<Map<String, Entry>> stateFile;
+
+  private final Map<String, Entry> currentEntries = new ConcurrentHashMap<>();
+  private final Map<String, String> fingerprints = new ConcurrentHashMap<>();
+  private final AtomicInteger hits = new AtomicInteger();
+
+  private Map<String, Entry> previousEntries = new HashMap<>();
+  private Map<String, String> projectFingerprints = new HashMap<>();
+  private Map<String, Set<String>> upstreamProjects = new HashMap<>();
+  private String globalFingerprint = "";
+  private String rootFingerprint = "";
+  private boolean enabled;
+
+  public ResolvedConfigurationCache(
+      Project rootProject, OkBuckExtension okBuckExtension, String stateFile) {
+    this.rootProject = rootProject;
+    this.okBuckExtension = okBuckExtension;
+    this.stateFile =
+        new StateFile<>(
+            rootProject.file(stateFile),
+            FORMAT_VERSION,
+            new TypeToken<Map<String, Entry>>() {}.getType(),
+            "resolved configuration cache");
+  }
+
+  /**
+   * Loads the entries of the last run and fingerprints the declarations of the given projects.
+   * Needs to be called before any project okbuck task runs.
+   *
+   * @param projects The projects for which build files are generated
+   */
+  public void setup(Collection<Project> projects) {
+    enabled = okBuckExtension.getExperimentalExtension().resolutionCache;
+    if (!enabled) {
+      return;
+    }
+
+    Map<String, Entry> entries = stateFile.read();
+    previousEntries = entries != null ? entries : new HashMap<>();
+    globalFingerprint = globalFingerprint();
+    rootFingerprint = projectFingerprint(rootProject);
+    for (Project project : projects) {
+      projectFingerprints.put(project.getPath(), projectFingerprint(project));
+      upstreamProjects.put(
+          project.getPath(),
+          project.getConfigurations().stream()
+              .flatMap(configuration -> configuration.getDependencies().stream())
+              .filter(dependency -> dependency instanceof ProjectDependency)
+              .map(dependency -> ((ProjectDependency) dependency).getDependencyProject().getPath())
+              .collect(Collectors.toSet()));
+    }
+  }
+
+  /**
+   * Returns the entry recorded for the configuration in the last run if it is still valid.
+   *
+   * @param project The project of the configuration
+   * @param configuration The configuration
+   * @param key The key of the configuration, see {@link #key(Project, Configuration)}
+   * @return The entry or null if the configuration needs to be resolved
+   */
+  @Nullable
+  public Entry get(Project project, Configuration configuration, String key) {
+    Entry entry = validEntry(project, configuration, key);
+    if (entry == null) {
+      return null;
+    }
+
+    currentEntries.put(key, entry);
+    hits.incrementAndGet();
+    return entry;
+  }
+
+  /**
+   * Returns whether the entry recorded for the configuration in the last run is still valid,
+   * without using it.
+   *
+   * @param project The project of the configuration
+   * @param configuration The configuration
+   * @param key The key of the configuration, see {@link #key(Project, Configuration)}
+   */
+  public boolean contains(Project project, Configuration configuration, String key) {
+    return validEntry(project, configuration, key) != null;
+  }
+
+  @Nullable
+  private Entry validEntry(Project project, Configuration configuration, String key) {
+    String fingerprint = fingerprint(project, configuration, key);
+    if (fingerprint == null) {
+      return null;
+    }
+
+    Entry entry = previousEntries.get(key);
+    if (entry == null
+        || !fingerprint.equals(entry.fingerprint)
+        || !entry.externals.stream().allMatch(ExternalDependencyRecord::isAvailable)
+        || !entry.targets.stream().allMatch(target -> target.isAvailable(rootProject))) {
+      return null;
+    }
+    return entry;
+  }
+
+  /**
+   * Records the resolved dependencies of a configuration.
+   *
+   * @param project The project of the configuration
+   * @param configuration The configuration
+   * @param key The key of the configuration, see {@link #key(Project, Configuration)}
+   * @param targets The project dependencies
+   * @param externals The external dependencies
+   * @param firstLevel The first level external dependencies
+   * @param children The child dependencies of each external dependency
+   */
+  public void put(
+      Project project,
+      Configuration configuration,
+      String key,
+      List<TargetRecord> targets,
+      Collection<OExternalDependency> externals,
+      Set<OExternalDependency> firstLevel,
+      Map<OExternalDependency, Set<OExternalDependency>> children) {
+    String fingerprint = fingerprint(project, configuration, key);
+    if (fingerprint == null) {
+      return;
+    }
+
+    List<OExternalDependency> dependencies = new ArrayList<>(externals);
+    Map<OExternalDependency, Integer> indexes = new HashMap<>();
+    dependencies.forEach(dependency -> indexes.put(dependency, indexes.size()));
+
+    Entry entry = new Entry();
+    entry.fingerprint = fingerprint;
+    entry.targets = targets;
+    entry.externals =
+        dependencies.stream()
+            .map(
+                dependency ->
+                    ExternalDependencyRecord.of(
+                        dependency, false, firstLevel.contains(dependency)))
+            .collect(Collectors.toList());
+    entry.children =
+        dependencies.stream()
+            .map(
+                dependency ->
+                    children.getOrDefault(dependency, ImmutableSet.of()).stream()
+                        .map(indexes::get)
+                        .filter(Objects::nonNull)
+                        .sorted()
+                        .collect(Collectors.toList()))
+            .collect(Collectors.toList());
+    currentEntries.put(key, entry);
+  }
+
+  /** Persists the entries used or recorded in this run along with unused ones of known projects. */
+  public void finalizeState() {
+    if (!enabled) {
+      return;
+    }
+
+    LOG.info(
+        "Resolved configuration cache: {} configurations restored, {} resolved",
+        hits.get(),
+        currentEntries.size() - hits.get());
+
+    Map<String, Entry> entries = new TreeMap<>();
+    previousEntries.forEach(
+        (key, entry) -> {
+          if (projectFingerprints.containsKey(key.substring(0, key.lastIndexOf('|')))) {
+            entries.put(key, entry);
+          }
+        });
+    entries.putAll(currentEntries);
+
+    stateFile.write(entries);
+  }
+
+  /**
+   * Returns the key a configuration of a project is stored with. Configurations whose name is not
+   * stable across runs, like detached configurations, can be stored with a stable key of their own
+   * instead, used with a single project per run. Entries of keys that don't start with a project
+   * path are only kept while they are used.
+   *
+   * @param project The project of the configuration
+   * @param configuration The configuration
+   */
+  public static String key(Project project, Configuration configuration) {
+    return project.getPath() + "|" + configuration.getName();
+  }
+
+  @Nullable
+  private String fingerprint(Project project, Configuration configuration, String key) {
+    if (!enabled || DependencyUtils.hasResolutionRules(configuration)) {
+      return null;
+    }
+
+    String cached = fingerprints.get(key);
+    if (cached != null) {
+      return cached;
+    }
+
+    Hasher hasher = Hashing.sha256().newHasher();
+    FingerprintUtil.putString(hasher, globalFingerprint);
+
+    // Keys not scoped to a project, like those of batched annotation processors, are shared by all
+    // projects declaring them, so they are fingerprinted with the root project whichever uses them
+    String projectFingerprint =
+        key.startsWith(project.getPath() + "|")
+            ? projectFingerprints.get(project.getPath())
+            : rootFingerprint;
+    if (projectFingerprint == null) {
+      return null;
+    }
+    FingerprintUtil.putString(hasher, projectFingerprint);
+
+    FingerprintUtil.putString(hasher, configuration.getName());
+    FingerprintUtil.putConfiguration(hasher, configuration);
+
+    // Project dependencies bring in the declarations of their own upstream projects
+    Set<String> closure = new TreeSet<>();
+    Deque<String> queue =
+        configuration.getAllDependencies().withType(ProjectDependency.class).stream()
+            .map(dependency -> dependency.getDependencyProject().getPath())
+            .collect(Collectors.toCollection(ArrayDeque::new));
+    while (!queue.isEmpty()) {
+      String path = queue.poll();
+      if (closure.add(path)) {
+        Set<String> upstream = upstreamProjects.get(path);
+        if (upstream == null) {
+          return null;
+        }
+        queue.addAll(upstream);
+      }
+    }
+    for (String path : closure) {
+      FingerprintUtil.putString(hasher, path);
+      FingerprintUtil.putString(hasher, projectFingerprints.getOrDefault(path, ""));
+    }
+
+    String fingerprint = hasher.hash().toString();
+    fingerprints.put(key, fingerprint);
+    return fingerprint;
+  }
+
+  private String globalFingerprint() {
+    Hasher hasher = Hashing.sha256().newHasher();
+    hasher.putInt(FORMAT_VERSION);
+
+    FingerprintUtil.putPluginVersion(hasher);
+
+    // Scripts applied from anywhere, e.g. a shared dependencies.gradle, may change any resolution
+    FingerprintUtil.putScripts(hasher, rootProject);
+    FingerprintUtil.putFile(hasher, rootProject.file("gradle.properties"));
+
+    FingerprintUtil.putJson(hasher, okBuckExtension.getExternalDependenciesExtension());
+    FingerprintUtil.putJson(hasher, okBuckExtension.getIntellijExtension());
+
+    return hasher.hash().toString();
+  }
+
+  private static String projectFingerprint(Project project) {
+    Hasher hasher = Hashing.sha256().newHasher();
+
+    FingerprintUtil.putFile(hasher, project.getBuildFile());
+    FingerprintUtil.putFile(hasher, project.file("gradle.properties"));
+
+    project
+        .getRepositories()
+        .forEach(repository -> FingerprintUtil.putRepository(hasher, repository));
+
+    project.getConfigurations().stream()
+        .sorted(Comparator.comparing(Configuration::getName))
+        .forEach(
+            configuration -> {
+              FingerprintUtil.putString(hasher, configuration.getName());
+              configuration.getDependencies().stream()
+                  .map(FingerprintUtil::describe)
+                  .sorted()
+                  .forEach(description -> FingerprintUtil.putString(hasher, description));
+              configuration.getDependencyConstraints().stream()
+                  .map(FingerprintUtil::describe)
+                  .sorted()
+                  .forEach(description -> FingerprintUtil.putString(hasher, description));
+            });
+
+    return hasher.hash().toString();
+  }
+
+  /** A project dependency of a resolved configuration. */
+  public static final class TargetRecord {
+
+    private final String projectPath;
+    @Nullable private final String variant;
+    private final boolean firstLevel;
+
+    public TargetRecord(String projectPath, @Nullable String variant, boolean firstLevel) {
+      this.projectPath = projectPath;
+      this.variant = variant;
+      this.firstLevel = firstLevel;
+    }
+
+    public String getProjectPath() {
+      return projectPath;
+    }
+
+    @Nullable
+    public String getVariant() {
+      return variant;
+    }
+
+    public boolean isFirstLevel() {
+      return firstLevel;
+    }
+
+    private boolean isAvailable(Project rootProject) {
+      return rootProject.findProject(projectPath) != null;
+    }
+  }
+
+  /** The resolved dependencies of a configuration. */
+  public static final class Entry {
+
+    private String fingerprint = "";
+    private List<TargetRecord> targets = ImmutableList.of();
+    private List<ExternalDependencyRecord> externals = ImmutableList.of();
+    private List<List<Integer>> children = ImmutableList.of();
+
+    public List<TargetRecord> getTargets() {
+      return targets;
+    }
+
+    public List<ExternalDependencyRecord> getExternals() {
+      return externals;
+    }
+
+    /** Returns the indexes of the child dependencies of each external dependency. */
+    public List<List<Integer>> getChildren() {
+      return children;
+    }
+  }
+}
@@ -0,0 +1,282 @@
+package com.uber.okbuck.core.dependency;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.errorprone.annotations.Var;
+import com.uber.okbuck.core.util.Tracer;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sha256 digests of dependency files. Missing digests are computed together on a bounded thread
+ * pool before any rule that needs them is composed.
+ *
+ * <p>Digests are persisted in a binary index of records holding the path, size, modification time
+ * and digest of a file. A record is only used while its file still has the same size and
+ * modification time. New digests are appended to the index, and the index is only rewritten once
+ * stale records make up more than half of it.
+ */
+public final class Sha256Cache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(Sha256Cache.class);
+
+  private static final int MAGIC = 0x4f4b5348; // OKSH
+  // Bump whenever the record layout changes.
+  private static final int FORMAT_VERSION = 1;
+  private static final int HEADER_SIZE = 8;
+  private static final int DIGEST_SIZE = 32;
+
+  private final File cacheFile;
+
+  // Records read from the index, keyed by path. Later records of a path replace earlier ones.
+  private final Map<String, Record> persisted = new ConcurrentHashMap<>();
+  // Records of this run that are not in the index yet
+  private final Map<String, Record> added = new ConcurrentHashMap<>();
+  // Digests of the files of this run, keyed by OExternalDependency#getGradleSha
+  private final Map<String, String> digests = new ConcurrentHashMap<>();
+
+  private int persistedRecords;
+  private boolean rewrite;
+
+  public Sha256Cache(File cacheFile) {
+    this.cacheFile = cacheFile;
+    read();
+  }
+
+  /**
+   * Returns the digests of the files passed to {@link #computeAll}, keyed by {@link
+   * OExternalDependency#getGradleSha}.
+   */
+  public Map<String, String> asMap() {
+    return digests;
+  }
+
+  /**
+   * Returns the digest of a file, computing it if it is missing or stale. Unlike {@link
+   * #computeAll}, the digest is keyed by the path of the file, so this also works for files
+   * outside the gradle cache. Can be called from multiple threads.
+   *
+   * @param file The file
+   * @return The sha256 digest of the file
+   */
+  public String get(File file) {
+    String path = file.getAbsolutePath();
+    @Var Record record = added.get(path);
+    if (record == null) {
+      record = persisted.get(path);
+    }
+    if (record != null && record.matches(file)) {
+      return record.digest;
+    }
+    return compute(file);
+  }
+
+  /**
+   * Looks up the digests of the given files, computing the ones that are missing or stale.
+   *
+   * @param files The files whose digests are needed
+   */
+  public void computeAll(Collection<File> files) {
+    Map<String, File> pending = new HashMap<>();
+    files.forEach(
+        file -> {
+          String key = OExternalDependency.getGradleSha(file);
+          if (digests.containsKey(key)) {
+            return;
+          }
+          Record record = persisted.get(file.getAbsolutePath());
+          if (record != null && record.matches(file)) {
+            digests.put(key, record.digest);
+          } else {
+            pending.putIfAbsent(key, file);
+          }
+        });
+    if (pending.isEmpty()) {
+      return;
+    }
+
+    int threads =
+        Math.max(1, Math.min(pending.size(), Runtime.getRuntime().availableProcessors()));
+    ExecutorService executor =
+        Executors.newFixedThreadPool(
+            threads, new ThreadFactoryBuilder().setNameFormat("okbuck-sha256-%d").build());
+    try (Tracer.Span ignored = Tracer.span("Sha256Cache.computeAll", pending.size() + " files")) {
+      List<CompletableFuture<Void>> futures =
+          pending
+              .entrySet()
+              .stream()
+              .map(
+                  entry ->
+                      CompletableFuture.runAsync(
+                          () -> digests.put(entry.getKey(), compute(entry.getValue())),
+                          executor))
+              .collect(Collectors.toList());
+      CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause() != null ? e.getCause() : e;
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IllegalStateException(cause);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Appends the digests computed in this run to the index, or rewrites the index without its
+   * stale records once they make up more than half of it.
+   */
+  public void persist() {
+    Map<String, Record> live = new HashMap<>();
+    persisted.forEach(
+        (path, record) -> {
+          if (!added.containsKey(path) && record.matches(new File(path))) {
+            live.put(path, record);
+          }
+        });
+    int stale = persistedRecords - live.size();
+
+    try {
+      Files.createDirectories(cacheFile.getAbsoluteFile().getParentFile().toPath());
+      if (rewrite || stale > live.size()) {
+        live.putAll(added);
+        write(live.entrySet(), false);
+        LOG.info("Rewrote sha256 index with {} records, {} evicted", live.size(), stale);
+
+        persisted.clear();
+        persisted.putAll(live);
+        persistedRecords = live.size();
+      } else if (!added.isEmpty()) {
+        write(added.entrySet(), true);
+        LOG.info("Appended {} records to sha256 index", added.size());
+
+        // The index still holds the records the appended ones replace
+        persisted.putAll(added);
+        persistedRecords += added.size();
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Couldn't write " + cacheFile, e);
+    }
+
+    added.clear();
+    rewrite = false;
+  }
+
+  private String compute(File file) {
+    // Stat before hashing so that a file modified meanwhile does not match its record
+    long size = file.length();
+    long lastModified = file.lastModified();
+    String digest = DependencyUtils.shaSum256(file);
+    added.put(file.getAbsolutePath(), new Record(size, lastModified, digest));
+    return digest;
+  }
+
+  private void read() {
+    if (!cacheFile.isFile()) {
+      rewrite = true;
+      return;
+    }
+
+    try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.remaining() < HEADER_SIZE
+          || buffer.getInt() != MAGIC
+          || buffer.getInt() != FORMAT_VERSION) {
+        // An index of an older version, or the json map of older okbuck versions
+        rewrite = true;
+        return;
+      }
+
+      while (buffer.hasRemaining()) {
+        int start = buffer.position();
+        try {
+          int pathLength = buffer.getInt();
+          if (pathLength < 0 || pathLength > buffer.remaining()) {
+            throw new BufferUnderflowException();
+          }
+          byte[] path = new byte[pathLength];
+          buffer.get(path);
+          long size = buffer.getLong();
+          long lastModified = buffer.getLong();
+          byte[] digest = new byte[DIGEST_SIZE];
+          buffer.get(digest);
+          persisted.put(
+              new String(path, UTF_8),
+              new Record(size, lastModified, HashCode.fromBytes(digest).toString()));
+          persistedRecords++;
+        } catch (BufferUnderflowException e) {
+          // A record cut short by an interrupted append
+          LOG.warn("Ignoring truncated sha256 index record at {} in {}", start, cacheFile);
+          rewrite = true;
+          return;
+        }
+      }
+    } catch (IOException e) {
+      LOG.warn("Ignoring unreadable sha256 index {}", cacheFile, e);
+      persisted.clear();
+      persistedRecords = 0;
+      rewrite = true;
+    }
+  }
+
+  private void write(Set<Map.Entry<String, Record>> records, boolean append)
+      throws IOException {
+    try (DataOutputStream os =
+        new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(cacheFile, append)))) {
+      if (!append) {
+        os.writeInt(MAGIC);
+        os.writeInt(FORMAT_VERSION);
+      }
+      for (Map.Entry<String, Record> entry : records) {
+        byte[] path = entry.getKey().getBytes(UTF_8);
+        os.writeInt(path.length);
+        os.write(path);
+        os.writeLong(entry.getValue().size);
+        os.writeLong(entry.getValue().lastModified);
+        os.write(HashCode.fromString(entry.getValue().digest).asBytes());
+      }
+    }
+  }
+
+  private static final class Record {
+
+    private final long size;
+    private final long lastModified;
+    private final String digest;
+
+    private Record(long size, long lastModified, String digest) {
+      this.size = size;
+      this.lastModified = lastModified;
+      this.digest = digest;
+    }
+
+    private boolean matches(File file) {
+      return file.lastModified() == lastModified && file.length() == size;
+    }
+  }
+}
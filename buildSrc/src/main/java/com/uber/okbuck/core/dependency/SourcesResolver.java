@@ -0,0 +1,235 @@
+package com.uber.okbuck.core.dependency;
+
+import com.google.gson.reflect.TypeToken;
+import com.uber.okbuck.core.util.FileUtil;
+import com.uber.okbuck.core.util.ProjectUtil;
+import com.uber.okbuck.core.util.StateFile;
+import com.uber.okbuck.extension.OkBuckExtension;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.component.ComponentIdentifier;
+import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
+import org.gradle.api.artifacts.result.ArtifactResult;
+import org.gradle.api.artifacts.result.ComponentArtifactsResult;
+import org.gradle.api.artifacts.result.ResolvedArtifactResult;
+import org.gradle.api.artifacts.result.UnresolvedArtifactResult;
+import org.gradle.api.component.Artifact;
+import org.gradle.jvm.JvmLibrary;
+import org.gradle.language.base.artifact.SourcesArtifact;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves the sources jars of external components once per build. Each component is queried at
+ * most once across all scopes and projects: a scope only queries the components no other scope
+ * queried before it, in a single batched query, and waits for the components that are being
+ * queried by other scopes. Components that were resolved without a failure and have no sources are
+ * persisted, so they are not queried again on later runs.
+ */
+public final class SourcesResolver {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SourcesResolver.class);
+
+  // Bump whenever the persisted state changes.
+  private static final int FORMAT_VERSION = 2;
+
+  @SuppressWarnings("unchecked")
+  private static final Class<? extends Artifact>[] SOURCES_ARTIFACT =
+      (Class<? extends Artifact>[]) new Class<?>[] {SourcesArtifact.class};
+
+  private final OkBuckExtension okBuckExtension;
+  private final StateFile<List<String>> stateFile;
+
+  private final Map<ComponentIdentifier, CompletableFuture<Optional<File>>> results =
+      new ConcurrentHashMap<>();
+  private final Set<String> missing = ConcurrentHashMap.newKeySet();
+  private final AtomicInteger queries = new AtomicInteger();
+  private final AtomicInteger skipped = new AtomicInteger();
+
+  private Set<String> previouslyMissing = new HashSet<>();
+
+  public SourcesResolver(Project rootProject, OkBuckExtension okBuckExtension, String stateFile) {
+    this.okBuckExtension = okBuckExtension;
+    this.stateFile =
+        new StateFile<>(
+            rootProject.file(stateFile),
+            FORMAT_VERSION,
+            new TypeToken<List<String>>() {}.getType(),
+            "sources state");
+  }
+
+  /**
+   * Loads the components known to have no sources. Needs to be called before any scope is built.
+   */
+  public void setup() {
+    results.clear();
+    missing.clear();
+    queries.set(0);
+    skipped.set(0);
+    List<String> entries =
+        okBuckExtension.getIntellijExtension().downloadSources() ? stateFile.read() : null;
+    previouslyMissing = entries != null ? new HashSet<>(entries) : new HashSet<>();
+  }
+
+  /**
+   * Returns the sources jars of the components of the given artifacts that have one.
+   *
+   * @param project The project whose repositories are used to query new components
+   * @param artifacts The resolved artifacts
+   * @return The sources jar of each component that has one
+   */
+  public Map<ComponentIdentifier, File> resolve(
+      Project project, Set<ResolvedArtifactResult> artifacts) {
+    if (!okBuckExtension.getIntellijExtension().downloadSources()) {
+      return new HashMap<>();
+    }
+
+    Set<ComponentIdentifier> identifiers =
+        artifacts
+            .stream()
+            .filter(artifact -> ProjectUtil.canHaveSources(artifact.getFile()))
+            .map(artifact -> artifact.getId().getComponentIdentifier())
+            .collect(Collectors.toSet());
+
+    // Claim the components no other scope is resolving yet
+    Map<ComponentIdentifier, CompletableFuture<Optional<File>>> futures = new HashMap<>();
+    Map<ComponentIdentifier, CompletableFuture<Optional<File>>> claimed = new HashMap<>();
+    for (ComponentIdentifier identifier : identifiers) {
+      CompletableFuture<Optional<File>> future = new CompletableFuture<>();
+      CompletableFuture<Optional<File>> existing = results.putIfAbsent(identifier, future);
+      if (existing == null) {
+        claimed.put(identifier, future);
+        futures.put(identifier, future);
+      } else {
+        futures.put(identifier, existing);
+      }
+    }
+    if (!claimed.isEmpty()) {
+      query(project, claimed);
+    }
+
+    Map<ComponentIdentifier, File> sources = new HashMap<>();
+    futures.forEach(
+        (identifier, future) -> future.join().ifPresent(file -> sources.put(identifier, file)));
+    return sources;
+  }
+
+  /** Persists the components found to have no sources in this run. */
+  public void finalizeState() {
+    if (!okBuckExtension.getIntellijExtension().downloadSources()) {
+      return;
+    }
+
+    LOG.info(
+        "Sources: {} components queried in {} queries, {} known to have no sources",
+        results.size() - skipped.get(),
+        queries.get(),
+        skipped.get());
+
+    stateFile.write(new ArrayList<>(new TreeSet<>(missing)));
+  }
+
+  /*
+   * Copyright (C) 2017 The Android Open Source Project
+   *
+   * Licensed under the Apache License, Version 2.0 (the "License");
+   * you may not use this file except in compliance with the License.
+   * You may obtain a copy of the License at
+   *
+   *      http://www.apache.org/licenses/LICENSE-2.0
+   *
+   * Unless required by applicable law or agreed to in writing, software
+   * distributed under the License is distributed on an "AS IS" BASIS,
+   * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   * See the License for the specific language governing permissions and
+   * limitations under the License.
+   */
+  // Adapted from AGP 3.1.0 ArtifactDependencyGraph
+  private void query(
+      Project project, Map<ComponentIdentifier, CompletableFuture<Optional<File>>> claimed) {
+    Map<ComponentIdentifier, File> found = new HashMap<>();
+    // Components whose sources query completed without a failure
+    Set<ComponentIdentifier> complete = new HashSet<>();
+    List<ComponentIdentifier> toQuery = new ArrayList<>();
+    claimed
+        .keySet()
+        .forEach(
+            identifier -> {
+              if (previouslyMissing.contains(identifier.getDisplayName())) {
+                missing.add(identifier.getDisplayName());
+                skipped.incrementAndGet();
+              } else {
+                toQuery.add(identifier);
+              }
+            });
+
+    try {
+      if (!toQuery.isEmpty()) {
+        queries.incrementAndGet();
+        Set<ComponentArtifactsResult> components =
+            project
+                .getDependencies()
+                .createArtifactResolutionQuery()
+                .forComponents(toQuery)
+                .withArtifacts(JvmLibrary.class, SOURCES_ARTIFACT)
+                .execute()
+                .getResolvedComponents();
+
+        components.forEach(
+            component -> {
+              Set<ArtifactResult> sourcesResults = component.getArtifacts(SOURCES_ARTIFACT[0]);
+              if (sourcesResults.stream().noneMatch(r -> r instanceof UnresolvedArtifactResult)) {
+                complete.add(component.getId());
+              }
+            });
+
+        components
+            .stream()
+            .map(component -> component.getArtifacts(SOURCES_ARTIFACT[0]))
+            .flatMap(Set::stream)
+            .filter(artifactResult -> artifactResult instanceof ResolvedArtifactResult)
+            .map(artifactResult -> (ResolvedArtifactResult) artifactResult)
+            .filter(artifactResult -> FileUtil.isZipFile(artifactResult.getFile()))
+            .forEach(
+                artifactResult ->
+                    found.put(
+                        artifactResult.getId().getComponentIdentifier(),
+                        artifactResult.getFile()));
+
+        toQuery
+            .stream()
+            .filter(
+                identifier ->
+                    complete.contains(identifier)
+                        && !found.containsKey(identifier)
+                        && !isChanging(identifier))
+            .forEach(identifier -> missing.add(identifier.getDisplayName()));
+      }
+    } catch (Throwable t) {
+      LOG.warn("Unable to download sources for project {} with error {}", project, t.toString());
+
+      // Let a later scope query these components again
+      toQuery.forEach(results::remove);
+    } finally {
+      claimed.forEach(
+          (identifier, future) -> future.complete(Optional.ofNullable(found.get(identifier))));
+    }
+  }
+
+  private static boolean isChanging(ComponentIdentifier identifier) {
+    return identifier instanceof ModuleComponentIdentifier
+        && ((ModuleComponentIdentifier) identifier).getVersion().endsWith("-SNAPSHOT");
+  }
+}
@@ -0,0 +1,72 @@
+package com.uber.okbuck.core.dependency.exporter;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.uber.okbuck.core.dependency.DependencyGraph;
+import com.uber.okbuck.core.dependency.OExternalDependency;
+import org.gradle.api.artifacts.ExternalDependency;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * The dependencies of a build as exported: the raw dependencies declared by all projects, and once
+ * they are validated, the external dependencies they resolved to along with the graph of their
+ * children.
+ */
+public class DependencyExport {
+
+  private static final Comparator<ExternalDependency> RAW_ORDER =
+      Comparator.comparing((ExternalDependency dependency) -> String.valueOf(dependency.getGroup()))
+          .thenComparing(ExternalDependency::getName)
+          .thenComparing(dependency -> String.valueOf(dependency.getVersion()));
+
+  private final Set<ExternalDependency> rawDependencies;
+  private final Collection<OExternalDependency> resolvedDependencies;
+  @Nullable private final DependencyGraph graph;
+
+  public DependencyExport(Set<ExternalDependency> rawDependencies) {
+    this(rawDependencies, ImmutableList.of(), null);
+  }
+
+  private DependencyExport(
+      Set<ExternalDependency> rawDependencies,
+      Collection<OExternalDependency> resolvedDependencies,
+      @Nullable DependencyGraph graph) {
+    this.rawDependencies = rawDependencies;
+    this.resolvedDependencies = resolvedDependencies;
+    this.graph = graph;
+  }
+
+  /**
+   * Returns an export of the same raw dependencies along with the resolved ones.
+   *
+   * @param resolvedDependencies The validated external dependencies
+   * @param graph The graph of the external dependencies and their children
+   */
+  public DependencyExport withResolved(
+      Collection<OExternalDependency> resolvedDependencies, DependencyGraph graph) {
+    return new DependencyExport(rawDependencies, resolvedDependencies, graph);
+  }
+
+  /** Returns the raw dependencies ordered by their coordinates. */
+  public List<ExternalDependency> getRawDependencies() {
+    return rawDependencies.stream().sorted(RAW_ORDER).collect(ImmutableList.toImmutableList());
+  }
+
+  /** Returns the resolved dependencies ordered by their coordinates, if they were added. */
+  public List<OExternalDependency> getResolvedDependencies() {
+    return resolvedDependencies
+        .stream()
+        .sorted(Comparator.comparing(OExternalDependency::getMavenCoords))
+        .collect(ImmutableList.toImmutableList());
+  }
+
+  /** Returns the graph of the resolved dependencies and their children. */
+  public DependencyGraph getGraph() {
+    return Preconditions.checkNotNull(graph, "Resolved dependencies were not added to the export");
+  }
+}
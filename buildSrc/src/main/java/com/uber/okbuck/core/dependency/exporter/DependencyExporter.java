@@ -1,10 +1,13 @@
 package com.uber.okbuck.core.dependency.exporter;
 
-import org.gradle.api.artifacts.ExternalDependency;
-
-import java.util.Set;
-
 public interface DependencyExporter {
 
-  void export(Set<ExternalDependency> dependencies);
+  /**
+   * Exports the raw dependencies. Runs before the dependencies are validated, so that builds
+   * failing validation are exported as well.
+   */
+  void export(DependencyExport export);
+
+  /** Adds the resolved dependencies to the export, once they are validated. */
+  default void exportResolved(DependencyExport export) {}
 }
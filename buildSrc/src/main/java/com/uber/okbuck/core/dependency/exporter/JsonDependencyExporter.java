@@ -1,59 +1,63 @@
 package com.uber.okbuck.core.dependency.exporter;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
 import com.uber.okbuck.extension.ExportDependenciesExtension;
 import org.gradle.api.artifacts.ExternalDependency;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Set;
-import java.util.stream.Collectors;
 
+/**
+ * Exports the raw dependencies as a pretty printed json array. Records are written one at a time,
+ * so the export does not hold the models of all dependencies in memory.
+ */
 public class JsonDependencyExporter implements DependencyExporter {
 
   private static final Logger LOG = LoggerFactory.getLogger(JsonDependencyExporter.class);
 
+  private static final Gson GSON = new Gson();
+
   private final ExportDependenciesExtension exportDependenciesExtension;
 
   public JsonDependencyExporter(ExportDependenciesExtension exportDependenciesExtension) {
     this.exportDependenciesExtension = exportDependenciesExtension;
   }
 
-  private static void createParent(Path path){
-    try{
+  static Writer newWriter(String file, OpenOption... options) {
+    Path path = Paths.get(file);
+    try {
       Files.createDirectories(path.getParent());
+      return Files.newBufferedWriter(path, StandardCharsets.UTF_8, options);
     } catch (IOException e) {
       throw new ExporterException(e);
     }
   }
 
   @Override
-  public void export(Set<ExternalDependency> dependencies) {
+  public void export(DependencyExport export) {
     if (!exportDependenciesExtension.isEnabled()) {
       LOG.info("Exporting dependencies is disabled");
       return;
     }
 
-    Set<DependencyExporterModel> dependencyModels =
-        dependencies.stream()
-            .map(dependency -> new DependencyExporterModel(dependency))
-            .collect(Collectors.toSet());
-
-    Gson gson = new GsonBuilder().setPrettyPrinting().create();
     String file = exportDependenciesExtension.getFile();
-    Path path = Paths.get(file);
-    createParent(path);
-    try (BufferedWriter writer =
-        Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
-      LOG.info("Exporting dependencies to JSON at " + file);
-      gson.toJson(dependencyModels, writer);
+    LOG.info("Exporting dependencies to JSON at " + file);
+    try (JsonWriter jsonWriter = new JsonWriter(newWriter(file))) {
+      jsonWriter.setIndent("  ");
+      jsonWriter.beginArray();
+      for (ExternalDependency dependency : export.getRawDependencies()) {
+        GSON.toJson(
+            new DependencyExporterModel(dependency), DependencyExporterModel.class, jsonWriter);
+      }
+      jsonWriter.endArray();
     } catch (IOException e) {
       throw new ExporterException(e);
     }
@@ -0,0 +1,85 @@
+package com.uber.okbuck.core.dependency.exporter;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.uber.okbuck.core.dependency.OExternalDependency;
+import com.uber.okbuck.extension.ExportDependenciesExtension;
+import org.gradle.api.artifacts.ExternalDependency;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * Exports the dependencies as newline delimited json, one compact record per line. Raw dependency
+ * records have the type {@code raw} and are written before the dependencies are validated. Once
+ * they are validated, records of type {@code resolved} are appended, which hold the resolved
+ * version of each external dependency and the coordinates of its children, so that the export can
+ * be streamed by tools without resolving the dependencies again.
+ */
+public class NdjsonDependencyExporter implements DependencyExporter {
+
+  private static final Logger LOG = LoggerFactory.getLogger(NdjsonDependencyExporter.class);
+
+  private static final Gson GSON = new Gson();
+
+  private final ExportDependenciesExtension exportDependenciesExtension;
+
+  public NdjsonDependencyExporter(ExportDependenciesExtension exportDependenciesExtension) {
+    this.exportDependenciesExtension = exportDependenciesExtension;
+  }
+
+  @Override
+  public void export(DependencyExport export) {
+    if (!exportDependenciesExtension.isEnabled()) {
+      LOG.info("Exporting dependencies is disabled");
+      return;
+    }
+
+    String file = exportDependenciesExtension.getFile();
+    LOG.info("Exporting dependencies to NDJSON at " + file);
+    try (Writer writer = JsonDependencyExporter.newWriter(file)) {
+      for (ExternalDependency dependency : export.getRawDependencies()) {
+        writeRecord(writer, "raw", GSON.toJsonTree(new DependencyExporterModel(dependency)));
+      }
+    } catch (IOException e) {
+      throw new ExporterException(e);
+    }
+  }
+
+  @Override
+  public void exportResolved(DependencyExport export) {
+    if (!exportDependenciesExtension.isEnabled()) {
+      return;
+    }
+
+    String file = exportDependenciesExtension.getFile();
+    try (Writer writer =
+        JsonDependencyExporter.newWriter(
+            file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+      for (OExternalDependency dependency : export.getResolvedDependencies()) {
+        writeRecord(
+            writer,
+            "resolved",
+            GSON.toJsonTree(new ResolvedDependencyExporterModel(dependency, export.getGraph())));
+      }
+    } catch (IOException e) {
+      throw new ExporterException(e);
+    }
+  }
+
+  private static void writeRecord(Writer writer, String type, JsonElement model)
+      throws IOException {
+    JsonObject record = new JsonObject();
+    record.addProperty("type", type);
+    for (Map.Entry<String, JsonElement> entry : model.getAsJsonObject().entrySet()) {
+      record.add(entry.getKey(), entry.getValue());
+    }
+    GSON.toJson(record, writer);
+    writer.write('\n');
+  }
+}
@@ -0,0 +1,45 @@
+package com.uber.okbuck.core.dependency.exporter;
+
+import com.uber.okbuck.core.dependency.DependencyGraph;
+import com.uber.okbuck.core.dependency.OExternalDependency;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/** A resolved external dependency and the maven coordinates of its children. */
+public class ResolvedDependencyExporterModel {
+
+  private final String mavenCoords;
+  private final String version;
+  private final boolean firstLevel;
+  private final List<String> children;
+
+  public ResolvedDependencyExporterModel(OExternalDependency dependency, DependencyGraph graph) {
+    mavenCoords = dependency.getMavenCoords();
+    version = dependency.getVersion();
+    firstLevel = dependency.isFirstLevel();
+    children =
+        graph
+            .children(dependency)
+            .stream()
+            .map(OExternalDependency::getMavenCoords)
+            .sorted()
+            .collect(Collectors.toList());
+  }
+
+  public String getMavenCoords() {
+    return mavenCoords;
+  }
+
+  public String getVersion() {
+    return version;
+  }
+
+  public boolean isFirstLevel() {
+    return firstLevel;
+  }
+
+  public List<String> getChildren() {
+    return children;
+  }
+}
@@ -1,25 +1,26 @@
 package com.uber.okbuck.core.manager;
 
-import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.TreeMultimap;
-import com.google.common.io.CharSink;
-import com.google.common.io.FileWriteMode;
-import com.google.common.io.Files;
+import com.google.common.io.MoreFiles;
 import com.uber.okbuck.OkBuckGradlePlugin;
 import com.uber.okbuck.core.model.base.RuleType;
+import com.uber.okbuck.core.util.Tracer;
 import com.uber.okbuck.extension.RuleOverridesExtension;
 import com.uber.okbuck.template.common.GeneratedHeader;
 import com.uber.okbuck.template.common.LoadStatements;
+import com.uber.okbuck.template.core.FileEmitter;
 import com.uber.okbuck.template.core.Rule;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -29,24 +30,20 @@ public class BuckFileManager {
   private static final String RES_GLOB = "res_glob";
   private static final String SUBDIR_GLOB = "subdir_glob";
 
+  private static final byte[] EMPTY = new byte[0];
+
   private final RuleOverridesExtension ruleOverridesExtension;
 
+  // Build files rules may be appended to, mapped to the length of their content without them
+  private final Map<File, Long> appendableBuckFiles = new ConcurrentHashMap<>();
+
   public BuckFileManager(RuleOverridesExtension ruleOverridesExtension) {
     this.ruleOverridesExtension = ruleOverridesExtension;
   }
 
-  public void writeToBuckFile(String content, File buckFile, boolean append) {
-    CharSink sink;
-    if (append) {
-      sink = Files.asCharSink(buckFile, Charsets.UTF_8, FileWriteMode.APPEND);
-    } else {
-      sink = Files.asCharSink(buckFile, Charsets.UTF_8);
-    }
-
-    try {
-      sink.write(content);
-    } catch (IOException e) {
-      throw new IllegalStateException("Couldn't create the buck file", e);
+  public void writeToBuckFile(String content, File buckFile) {
+    try (Tracer.Span ignored = Tracer.span("writeToBuckFile", buckFile.getPath())) {
+      FileEmitter.emit(buckFile, os -> os.write(content.getBytes(StandardCharsets.UTF_8)));
     }
   }
 
@@ -59,33 +56,113 @@ public class BuckFileManager {
     if (!rules.isEmpty()) {
       Multimap<String, String> loadStatements = getLoadStatements(rules);
       loadStatements.putAll(extraLoadStatements);
-      File parent = buckFile.getParentFile();
-      if (!parent.exists() && !parent.mkdirs()) {
-        throw new IllegalStateException("Couldn't create dir: " + parent);
-      }
 
-      try (OutputStream fos = new FileOutputStream(buckFile);
-          BufferedOutputStream os = new BufferedOutputStream(fos)) {
+      try (Tracer.Span ignored = Tracer.span("writeToBuckFile", buckFile.getPath())) {
+        FileEmitter.emit(buckFile, os -> writeRules(os, rules, loadStatements));
+      }
+    }
+  }
 
-        GeneratedHeader.template().render(os);
-        if (!loadStatements.isEmpty()) {
-          LoadStatements.template(writableLoadStatements(loadStatements)).render(os);
-        }
+  /** Writes rules to a bzl file, which unlike build files ends with an empty line. */
+  public void writeToBzlFile(List<Rule> rules, File bzlFile) {
+    Multimap<String, String> loadStatements = getLoadStatements(rules);
 
-        for (int index = 0; index < rules.size(); index++) {
-          // Don't add a new line before the first rule
-          if (index != 0) {
+    try (Tracer.Span ignored = Tracer.span("writeToBzlFile", bzlFile.getPath())) {
+      FileEmitter.emit(
+          bzlFile,
+          os -> {
+            writeRules(os, rules, loadStatements);
             os.write(NEWLINE);
-          }
-          rules.get(index).render(os);
-        }
+          });
+    }
+  }
+
+  /**
+   * Writes a build file that rules may be appended to by {@link #appendToBuckFiles(Map)}. Rules
+   * appended in the last run are left in place until then, so that a build file whose content
+   * ends up the same is not touched.
+   */
+  public void writeToAppendableBuckFile(
+      List<Rule> rules, File buckFile, Multimap<String, String> extraLoadStatements) {
+    if (!rules.isEmpty()) {
+      Multimap<String, String> loadStatements = getLoadStatements(rules);
+      loadStatements.putAll(extraLoadStatements);
+
+      try (Tracer.Span ignored = Tracer.span("writeToBuckFile", buckFile.getPath())) {
+        long length = FileEmitter.emitPrefix(buckFile, os -> writeRules(os, rules, loadStatements));
+        appendableBuckFiles.put(buckFile, length);
+      }
+    }
+  }
+
+  /**
+   * Keeps a build file written by the last run as is, apart from the rules appended to it.
+   *
+   * @param buckFile The build file
+   * @param length The length of its content without any appended rules
+   */
+  public void retainBuckFile(File buckFile, long length) {
+    appendableBuckFiles.put(buckFile, length);
+  }
+
+  /** Returns the length of the content of a build file without any appended rules. */
+  public long getGeneratedLength(File buckFile) {
+    return appendableBuckFiles.getOrDefault(buckFile, buckFile.isFile() ? buckFile.length() : 0);
+  }
+
+  /**
+   * Appends rules to the appendable build files, replacing the rules appended in the last run.
+   * Build files that are not appendable only get the appended rules.
+   *
+   * @param appendedRules The rules to append to each build file
+   */
+  public void appendToBuckFiles(Map<File, List<Rule>> appendedRules) {
+    Set<File> buckFiles = new HashSet<>(appendableBuckFiles.keySet());
+    buckFiles.addAll(appendedRules.keySet());
+
+    for (File buckFile : buckFiles) {
+      long length = appendableBuckFiles.getOrDefault(buckFile, 0L);
+      List<Rule> rules = appendedRules.getOrDefault(buckFile, ImmutableList.of());
+      if (rules.isEmpty() && buckFile.length() == length) {
+        continue;
+      }
+
+      try (Tracer.Span ignored = Tracer.span("appendToBuckFile", buckFile.getPath())) {
+        byte[] generated =
+            length > 0 ? MoreFiles.asByteSource(buckFile.toPath()).slice(0, length).read() : EMPTY;
+        FileEmitter.emit(
+            buckFile,
+            os -> {
+              os.write(generated);
+              for (Rule rule : rules) {
+                rule.render(os);
+              }
+            });
       } catch (IOException e) {
-        throw new IllegalStateException("Couldn't create the buck file", e);
+        throw new IllegalStateException("Couldn't read the buck file " + buckFile, e);
+      }
+    }
+    appendableBuckFiles.clear();
+  }
+
+  private static void writeRules(
+      OutputStream os, List<Rule> rules, Multimap<String, String> loadStatements)
+      throws IOException {
+    GeneratedHeader.template().render(os);
+    if (!loadStatements.isEmpty()) {
+      LoadStatements.template(writableLoadStatements(loadStatements)).render(os);
+    }
+
+    for (int index = 0; index < rules.size(); index++) {
+      // Don't add a new line before the first rule
+      if (index != 0) {
+        os.write(NEWLINE);
       }
+      rules.get(index).render(os);
     }
   }
 
-  private Multimap<String, String> getLoadStatements(List<Rule> rules) {
+  Multimap<String, String> getLoadStatements(List<Rule> rules) {
     Multimap<String, String> loadStatements = TreeMultimap.create();
     Map<String, RuleOverridesExtension.OverrideSetting> overrides =
         ruleOverridesExtension.getOverrides();
@@ -53,17 +53,27 @@ public final class BuckManager {
 
   public void finalizeDependencies() {
     Path buckBinaryCache = rootProject.file(BUCK_BINARY_LOCATION).toPath();
-    // Delete already existing folder
-    FileUtil.deleteQuietly(buckBinaryCache);
-
-    if (realBuckBinaryPath != null) {
-      Path linkedBinaryPath = buckBinaryCache.resolve(realBuckBinaryPath.getFileName());
+    if (realBuckBinaryPath == null) {
+      FileUtil.deleteQuietly(buckBinaryCache);
+      return;
+    }
 
-      // Make dirs
-      linkedBinaryPath.getParent().toFile().mkdirs();
+    Path linkedBinaryPath = buckBinaryCache.resolve(realBuckBinaryPath.getFileName());
 
-      FileUtil.symlink(linkedBinaryPath, realBuckBinaryPath);
+    // Delete links to other buck binaries, keeping the link to this one if it exists
+    File[] existing = buckBinaryCache.toFile().listFiles();
+    if (existing != null) {
+      for (File file : existing) {
+        if (!file.toPath().equals(linkedBinaryPath)) {
+          FileUtil.deleteQuietly(file.toPath());
+        }
+      }
     }
+
+    // Make dirs
+    buckBinaryCache.toFile().mkdirs();
+
+    FileUtil.symlink(linkedBinaryPath, realBuckBinaryPath);
   }
 
   private static int getJavaVersion() {
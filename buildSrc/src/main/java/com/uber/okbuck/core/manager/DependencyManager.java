@@ -7,9 +7,11 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.MultimapBuilder;
 import com.google.common.collect.SetMultimap;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.uber.okbuck.OkBuckGradlePlugin;
 import com.uber.okbuck.composer.common.BazelHttpFileRuleComposer;
 import com.uber.okbuck.composer.common.HttpFileRuleComposer;
 import com.uber.okbuck.composer.java.JavaAnnotationProcessorRuleComposer;
@@ -17,55 +19,57 @@ import com.uber.okbuck.composer.java.LocalPrebuiltRuleComposer;
 import com.uber.okbuck.composer.java.PrebuiltRuleComposer;
 import com.uber.okbuck.core.annotation.AnnotationProcessorCache;
 import com.uber.okbuck.core.dependency.DependencyFactory;
+import com.uber.okbuck.core.dependency.DependencyGraph;
 import com.uber.okbuck.core.dependency.DependencyUtils;
 import com.uber.okbuck.core.dependency.LocalOExternalDependency;
 import com.uber.okbuck.core.dependency.OExternalDependency;
+import com.uber.okbuck.core.dependency.Sha256Cache;
 import com.uber.okbuck.core.dependency.VersionlessDependency;
+import com.uber.okbuck.core.dependency.exporter.DependencyExport;
 import com.uber.okbuck.core.dependency.exporter.DependencyExporter;
 import com.uber.okbuck.core.model.base.Scope;
 import com.uber.okbuck.core.util.FileUtil;
+import com.uber.okbuck.core.util.FingerprintUtil;
 import com.uber.okbuck.core.util.ProjectCache;
 import com.uber.okbuck.core.util.ProjectUtil;
+import com.uber.okbuck.core.util.Tracer;
 import com.uber.okbuck.extension.ExternalDependenciesExtension;
 import com.uber.okbuck.extension.JetifierExtension;
 import com.uber.okbuck.extension.OkBuckExtension;
 import com.uber.okbuck.template.common.BazelFunctionRule;
 import com.uber.okbuck.template.core.Rule;
 import java.io.File;
-import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.stream.Stream;
 import org.gradle.api.Project;
 import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.artifacts.Dependency;
 import org.gradle.api.artifacts.ExternalDependency;
 import org.gradle.api.artifacts.ResolvedConfiguration;
 import org.gradle.api.artifacts.ResolvedDependency;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class DependencyManager {
 
+  private static final Logger LOG = LoggerFactory.getLogger(DependencyManager.class);
+
   private final Project project;
   private final ExternalDependenciesExtension externalDependenciesExtension;
   private final JetifierExtension jetifierExtension;
   private final BuckFileManager buckFileManager;
 
-  private final Set<ExternalDependency> rawDependencies = new HashSet<>();
-
-  private final SetMultimap<VersionlessDependency, OExternalDependency> originalDependencyMap =
-      LinkedHashMultimap.create();
-
-  private final HashMap<VersionlessDependency, Boolean> skipPrebuiltDependencyMap = new HashMap<>();
+  private final DependencyRegistry registry = new DependencyRegistry();
 
-  private final HashMap<String, String> sha256Cache;
+  private final Sha256Cache sha256Cache;
 
   private final DependencyExporter dependencyExporter;
 
@@ -79,23 +83,20 @@ public class DependencyManager {
     this.jetifierExtension = okBuckExtension.getJetifierExtension();
     this.buckFileManager = buckFileManager;
     this.dependencyExporter = dependencyExporter;
-    this.sha256Cache = initSha256Cache(rootProject, externalDependenciesExtension);
+    this.sha256Cache =
+        new Sha256Cache(rootProject.file(externalDependenciesExtension.getSha256Cache()));
   }
 
-  public synchronized void addRawDependencies(Set<ExternalDependency> dependencies) {
-    rawDependencies.addAll(dependencies);
+  public Sha256Cache getSha256Cache() {
+    return sha256Cache;
   }
 
-  public synchronized void addDependency(OExternalDependency dependency, boolean skipPrebuilt) {
-    VersionlessDependency versionless = dependency.getVersionless();
-    originalDependencyMap.put(versionless, dependency);
+  public void addRawDependencies(Set<ExternalDependency> dependencies) {
+    registry.addRawDependencies(dependencies);
+  }
 
-    if (skipPrebuiltDependencyMap.containsKey(versionless)) {
-      skipPrebuiltDependencyMap.put(
-          versionless, skipPrebuiltDependencyMap.get(versionless) && skipPrebuilt);
-    } else {
-      skipPrebuiltDependencyMap.put(versionless, skipPrebuilt);
-    }
+  public void addDependency(OExternalDependency dependency, boolean skipPrebuilt) {
+    registry.add(dependency, skipPrebuilt);
   }
 
   public void resolveCurrentRawDeps() {
@@ -104,45 +105,26 @@ public class DependencyManager {
     }
 
     Map<String, List<ExternalDependency>> rawDepsMap =
-        rawDependencies
+        registry
+            .getRawDependencies()
             .stream()
             .collect(Collectors.groupingBy(i -> i.getGroup() + "--" + i.getVersion()));
 
     List<Project> allProjects = new ArrayList<>(project.getAllprojects());
-    int numberOfChunks = allProjects.size();
-
-    List<Map<String, List<ExternalDependency>>> chunksRawDepsMap =
-        rawDepsMap
-            .keySet()
-            .stream()
-            .collect(Collectors.groupingBy(key -> Math.abs(key.hashCode()) % numberOfChunks))
-            .values()
-            .stream()
-            .map(chunk -> chunk.stream().collect(Collectors.toMap(key -> key, rawDepsMap::get)))
-            .collect(Collectors.toList());
-
-    IntStream.range(0, allProjects.size())
-        .parallel()
-        .forEach(
-            i -> {
-              resolveDepsWithProject(allProjects.get(i), chunksRawDepsMap.get(i));
-            });
+    new RawDependencyScheduler(allProjects).run(rawDepsMap, DependencyManager::resolveWorkUnit);
   }
 
-  private static void resolveDepsWithProject(
-      Project project, Map<String, List<ExternalDependency>> depsMap) {
+  private static void resolveWorkUnit(Project project, RawDependencyScheduler.WorkUnit unit) {
     if (project != project.getRootProject()) {
       ProjectCache.initScopeCache(project);
     }
 
-    for (Map.Entry<String, List<ExternalDependency>> e : depsMap.entrySet()) {
-      Configuration config =
-          project
-              .getConfigurations()
-              .maybeCreate("resolve__" + e.getKey().replace(".", "__").replace(":", "__"));
-      config.getDependencies().addAll(e.getValue());
-      Scope.builder(project).configuration(config).build();
-    }
+    Configuration config =
+        project
+            .getConfigurations()
+            .maybeCreate("resolve__" + unit.getName().replace(".", "__").replace(":", "__"));
+    config.getDependencies().addAll(unit.getDependencies());
+    Scope.builder(project).configuration(config).build();
 
     if (project != project.getRootProject()) {
       ProjectCache.resetScopeCache(project);
@@ -150,21 +132,42 @@ public class DependencyManager {
   }
 
   public void finalizeDependencies(OkBuckExtension okBuckExtension) {
-    dependencyExporter.export(rawDependencies);
+    LOG.info("Dependency registry: {}", registry.contentionSummary());
+
+    // Export before validating, so that builds failing validation are exported as well
+    DependencyExport export = new DependencyExport(registry.getRawDependencies());
+    dependencyExporter.export(export);
 
     Map<VersionlessDependency, Collection<OExternalDependency>> filteredDependencyMap =
         filterDependencies();
 
     validateDependencies(filteredDependencyMap);
     updateDependencies(filteredDependencyMap);
-    processDependencies(filteredDependencyMap, okBuckExtension);
 
-    persistSha256Cache(project, sha256Cache, externalDependenciesExtension);
+    List<OExternalDependency> dependencies =
+        filteredDependencyMap
+            .values()
+            .stream()
+            .flatMap(Collection::stream)
+            .collect(Collectors.toList());
+
+    // Select the children of every dependency once, instead of once per composed rule
+    DependencyGraph graph;
+    try (Tracer.Span ignored = Tracer.span("DependencyManager.freezeGraph")) {
+      graph = DependencyGraph.freeze(dependencies);
+    }
+
+    dependencyExporter.exportResolved(export.withResolved(dependencies, graph));
+
+    try (Tracer.Span ignored = Tracer.span("DependencyManager.processDependencies")) {
+      processDependencies(filteredDependencyMap, graph, okBuckExtension);
+    }
+
+    sha256Cache.persist();
   }
 
   private Map<VersionlessDependency, Collection<OExternalDependency>> filterDependencies() {
-    Map<VersionlessDependency, Collection<OExternalDependency>> dependencies =
-        originalDependencyMap.asMap();
+    Map<VersionlessDependency, Collection<OExternalDependency>> dependencies = registry.snapshot();
 
     // Update first level of all versions of a dep if any one version has first level as true
 
@@ -280,7 +283,7 @@ public class DependencyManager {
     }
 
     Configuration config = project.getConfigurations().create("okbuckDependencyResolver");
-    config.getDependencies().addAll(rawDependencies);
+    config.getDependencies().addAll(registry.getRawDependencies());
 
     ResolvedConfiguration resolvedConfiguration = config.getResolvedConfiguration();
 
@@ -386,13 +389,30 @@ public class DependencyManager {
 
   private void processDependencies(
       Map<VersionlessDependency, Collection<OExternalDependency>> dependencyMap,
+      DependencyGraph graph,
       OkBuckExtension okBuckExtension) {
     Path rootPath = project.getRootDir().toPath();
     File cacheDir = rootPath.resolve(externalDependenciesExtension.getCache()).toFile();
-    FileUtil.deleteQuitelyAndCreate(
-        cacheDir,
-        externalDependenciesExtension.shouldCleanCacheDir(),
-        okBuckExtension.buildFileName);
+
+    ExternalCacheManifest manifest =
+        okBuckExtension.getExperimentalExtension().incrementalExternalCache
+            ? new ExternalCacheManifest(
+                project.file(OkBuckGradlePlugin.OKBUCK_EXTERNAL_CACHE_MANIFEST), cacheDir.toPath())
+            : null;
+    if (manifest != null && manifest.hasPrevious()) {
+      // Files no longer generated are deleted once all directories are generated
+      if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+        throw new IllegalStateException("Couldn't create dependency directory: " + cacheDir);
+      }
+    } else {
+      FileUtil.deleteQuitelyAndCreate(
+          cacheDir,
+          externalDependenciesExtension.shouldCleanCacheDir(),
+          okBuckExtension.buildFileName);
+    }
+    String globalFingerprint = manifest != null ? globalFingerprint(okBuckExtension) : "";
+    AtomicInteger upToDate = new AtomicInteger();
+    Map<Path, Path> symlinks = new HashMap<>();
 
     Map<Path, List<OExternalDependency>> groupToDependencyMap =
         dependencyMap
@@ -409,6 +429,22 @@ public class DependencyManager {
 
     ImmutableList.Builder<OExternalDependency> bazelDependencies = ImmutableList.builder();
 
+    // Hash all files the prebuilt and http_file rules need up front, so that it can run in parallel
+    if (externalDependenciesExtension.shouldDownloadInBuck()) {
+      sha256Cache.computeAll(
+          groupToDependencyMap
+              .values()
+              .stream()
+              .flatMap(Collection::stream)
+              .filter(dependency -> !(dependency instanceof LocalOExternalDependency))
+              .flatMap(
+                  dependency ->
+                      Stream.concat(
+                          Stream.of(dependency.getRealDependencyFile()),
+                          dependency.getRealSourceFile().map(Stream::of).orElseGet(Stream::empty)))
+              .collect(Collectors.toList()));
+    }
+
     groupToDependencyMap.forEach(
         (basePath, dependencies) -> {
           ImmutableList.Builder<OExternalDependency> localPrebuiltDependencies =
@@ -433,51 +469,166 @@ public class DependencyManager {
             localPrebuiltDependencies.addAll(dependencies);
           }
 
-          preComputeSha256(prebuiltDependencies.build(), sha256Cache);
-          preComputeSha256(httpFileDependencies.build(), sha256Cache);
+          Map<String, List<String>> labelsMap = externalDependenciesExtension.getLabelsMap();
+          List<Scope> scopeList = basePathToScopeMap.get(basePath);
 
-          ImmutableList.Builder<Rule> rulesBuilder = ImmutableList.builder();
-          rulesBuilder.addAll(LocalPrebuiltRuleComposer.compose(localPrebuiltDependencies.build()));
+          String fingerprint =
+              manifest != null
+                  ? fingerprint(
+                      globalFingerprint,
+                      localPrebuiltDependencies.build(),
+                      prebuiltDependencies.build(),
+                      httpFileDependencies.build(),
+                      graph,
+                      labelsMap)
+                  : "";
+          // Annotation processor rules depend on scopes that are not fingerprinted
+          if (manifest != null && scopeList == null && manifest.isUpToDate(basePath, fingerprint)) {
+            manifest.retain(basePath);
+            upToDate.incrementAndGet();
+            return;
+          }
 
-          Map<String, List<String>> labelsMap = externalDependenciesExtension.getLabelsMap();
+          ImmutableList.Builder<Rule> rulesBuilder = ImmutableList.builder();
+          rulesBuilder.addAll(
+              LocalPrebuiltRuleComposer.compose(localPrebuiltDependencies.build(), graph));
 
           rulesBuilder.addAll(
-              PrebuiltRuleComposer.compose(prebuiltDependencies.build(), sha256Cache, labelsMap));
+              PrebuiltRuleComposer.compose(
+                  prebuiltDependencies.build(), graph, sha256Cache.asMap(), labelsMap));
           rulesBuilder.addAll(
-              HttpFileRuleComposer.compose(httpFileDependencies.build(), sha256Cache));
+              HttpFileRuleComposer.compose(httpFileDependencies.build(), sha256Cache.asMap()));
 
           // Add annotation processor rules
-          List<Scope> scopeList = basePathToScopeMap.get(basePath);
           if (scopeList != null) {
             rulesBuilder.addAll(JavaAnnotationProcessorRuleComposer.compose(scopeList));
           }
 
+          List<Rule> rules = rulesBuilder.build();
           buckFileManager.writeToBuckFile(
-              rulesBuilder.build(), basePath.resolve(okBuckExtension.buildFileName).toFile());
+              rules, basePath.resolve(okBuckExtension.buildFileName).toFile());
 
-          createSymlinks(basePath, localPrebuiltDependencies.build());
+          List<String> links =
+              collectSymlinks(basePath, localPrebuiltDependencies.build(), symlinks);
+
+          if (manifest != null) {
+            List<String> files = new ArrayList<>(links);
+            if (!rules.isEmpty()) {
+              files.add(okBuckExtension.buildFileName);
+            }
+            manifest.record(basePath, fingerprint, files);
+          }
         });
 
+    try (Tracer.Span ignored =
+        Tracer.span("DependencyManager.symlinks", symlinks.size() + " links")) {
+      FileUtil.symlinks(symlinks);
+    }
+
     if (okBuckExtension.getExternalDependenciesExtension().bazelDepsEnabled()) {
       ImmutableList.Builder<Rule> bazelRulesBuilder = ImmutableList.builder();
       bazelRulesBuilder.add(new BazelFunctionRule());
       bazelRulesBuilder.addAll(
-          BazelHttpFileRuleComposer.compose(bazelDependencies.build(), sha256Cache));
+          BazelHttpFileRuleComposer.compose(bazelDependencies.build(), sha256Cache.asMap()));
 
       buckFileManager.writeToBuckFile(
-          "", cacheDir.toPath().resolve(okBuckExtension.buildFileName).toFile(), false);
-      File defsBzl = cacheDir.toPath().resolve("defs.bzl").toFile();
-      buckFileManager.writeToBuckFile(bazelRulesBuilder.build(), defsBzl);
-      buckFileManager.writeToBuckFile("\n", defsBzl, true);
+          "", cacheDir.toPath().resolve(okBuckExtension.buildFileName).toFile());
+      buckFileManager.writeToBzlFile(
+          bazelRulesBuilder.build(), cacheDir.toPath().resolve("defs.bzl").toFile());
+
+      if (manifest != null) {
+        manifest.record(
+            cacheDir.toPath(), "", ImmutableList.of(okBuckExtension.buildFileName, "defs.bzl"));
+      }
+    }
+
+    if (manifest != null) {
+      int deleted = manifest.deleteOrphans();
+      manifest.persist();
+      LOG.info(
+          "External dependency cache: {} of {} directories up to date, {} stale files deleted",
+          upToDate.get(),
+          groupToDependencyMap.size(),
+          deleted);
     }
   }
 
+  private String globalFingerprint(OkBuckExtension okBuckExtension) {
+    Hasher hasher = Hashing.sha256().newHasher();
+    FingerprintUtil.putPluginVersion(hasher);
+    FingerprintUtil.putString(hasher, okBuckExtension.buildFileName);
+    FingerprintUtil.putJson(hasher, externalDependenciesExtension);
+    FingerprintUtil.putJson(hasher, jetifierExtension);
+    FingerprintUtil.putJson(hasher, okBuckExtension.getRuleOverridesExtension());
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Fingerprints the dependencies of a directory of the external dependency cache. Files are
+   * fingerprinted by their path, size and modification time, which also covers their sha256.
+   */
+  private static String fingerprint(
+      String globalFingerprint,
+      Collection<OExternalDependency> localPrebuiltDependencies,
+      Collection<OExternalDependency> prebuiltDependencies,
+      Collection<OExternalDependency> httpFileDependencies,
+      DependencyGraph graph,
+      Map<String, List<String>> labelsMap) {
+    Hasher hasher = Hashing.sha256().newHasher();
+    FingerprintUtil.putString(hasher, globalFingerprint);
+    putDependencies(hasher, "local", localPrebuiltDependencies, graph, labelsMap);
+    putDependencies(hasher, "prebuilt", prebuiltDependencies, graph, labelsMap);
+    putDependencies(hasher, "http_file", httpFileDependencies, graph, labelsMap);
+    return hasher.hash().toString();
+  }
+
+  private static void putDependencies(
+      Hasher hasher,
+      String kind,
+      Collection<OExternalDependency> dependencies,
+      DependencyGraph graph,
+      Map<String, List<String>> labelsMap) {
+    FingerprintUtil.putString(hasher, kind);
+    dependencies
+        .stream()
+        .sorted(OExternalDependency.compareByName)
+        .forEach(
+            dependency -> {
+              FingerprintUtil.putString(hasher, dependency.getTargetName());
+              FingerprintUtil.putString(hasher, dependency.getMavenCoords());
+              putFileStat(hasher, dependency.getRealDependencyFile());
+              dependency.getRealSourceFile().ifPresent(file -> putFileStat(hasher, file));
+              hasher.putBoolean(dependency.enableJetifier()).putBoolean(dependency.isFirstLevel());
+              labelsMap
+                  .getOrDefault(dependency.getMavenCoordsForValidation(), ImmutableList.of())
+                  .forEach(label -> FingerprintUtil.putString(hasher, label));
+              graph
+                  .children(dependency)
+                  .stream()
+                  .map(child -> child.getTargetPath() + ":" + child.getTargetName())
+                  .sorted()
+                  .forEach(child -> FingerprintUtil.putString(hasher, child));
+              hasher.putChar('\n');
+            });
+  }
+
+  private static void putFileStat(Hasher hasher, File file) {
+    FingerprintUtil.putString(hasher, file.getAbsolutePath());
+    hasher.putLong(file.length()).putLong(file.lastModified());
+  }
+
   private boolean isPrebuiltDependency(OExternalDependency dependency) {
-    return !skipPrebuiltDependencyMap.getOrDefault(dependency.getVersionless(), false)
+    return !registry.isSkipPrebuilt(dependency.getVersionless())
         && (dependency.getPackaging().equals(AAR) || dependency.getPackaging().equals(JAR));
   }
 
-  private static void createSymlinks(Path path, Collection<OExternalDependency> dependencies) {
+  /**
+   * Collects the symlinks of local dependencies in a directory of the cache.
+   *
+   * @return The names of the links
+   */
+  private static List<String> collectSymlinks(
+      Path path, Collection<OExternalDependency> dependencies, Map<Path, Path> symlinks) {
     if (!path.toFile().exists() && !path.toFile().mkdirs()) {
       throw new IllegalStateException(
           String.format("Couldn't create %s when creating symlinks", path));
@@ -488,56 +639,22 @@ public class DependencyManager {
     dependencies.forEach(
         dependency -> nameToDependencyMap.put(dependency.getVersionless(), dependency));
 
+    List<String> links = new ArrayList<>();
     dependencies.forEach(
         dependency -> {
-          FileUtil.symlink(
+          symlinks.put(
               path.resolve(dependency.getDependencyFileName()),
               dependency.getRealDependencyFile().toPath());
+          links.add(dependency.getDependencyFileName());
 
           dependency
               .getRealSourceFile()
               .ifPresent(
-                  file ->
-                      FileUtil.symlink(
-                          path.resolve(dependency.getSourceFileName()), file.toPath()));
-        });
-  }
-
-  private static void preComputeSha256(
-      List<OExternalDependency> dependencies, HashMap<String, String> sha256Map) {
-    dependencies.forEach(
-        dependency -> {
-          computeSha256IfAbsent(dependency.getRealDependencyFile(), sha256Map);
-
-          Optional<File> sourcesFile = dependency.getRealSourceFile();
-          sourcesFile.ifPresent(file -> computeSha256IfAbsent(file, sha256Map));
+                  file -> {
+                    symlinks.put(path.resolve(dependency.getSourceFileName()), file.toPath());
+                    links.add(dependency.getSourceFileName());
+                  });
         });
-  }
-
-  private static void computeSha256IfAbsent(File file, HashMap<String, String> sha256Map) {
-    String key = OExternalDependency.getGradleSha(file);
-    sha256Map.computeIfAbsent(key, k -> DependencyUtils.shaSum256(file));
-  }
-
-  private static HashMap<String, String> initSha256Cache(
-      Project rootProject, ExternalDependenciesExtension externalDependenciesExtension) {
-    File projectMappingFile = rootProject.file(externalDependenciesExtension.getSha256Cache());
-    try {
-      return FileUtil.readMapFromJsonFile(projectMappingFile);
-    } catch (IOException e) {
-      return new HashMap<>();
-    }
-  }
-
-  private static void persistSha256Cache(
-      Project rootProject,
-      HashMap<String, String> sha256Map,
-      ExternalDependenciesExtension externalDependenciesExtension) {
-    File projectMappingFile = rootProject.file(externalDependenciesExtension.getSha256Cache());
-    try {
-      FileUtil.persistMapToJsonFile(sha256Map, projectMappingFile);
-    } catch (IOException e) {
-      throw new IllegalStateException(e);
-    }
+    return links;
   }
 }
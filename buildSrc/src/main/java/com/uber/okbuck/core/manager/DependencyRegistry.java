@@ -0,0 +1,161 @@
+package com.uber.okbuck.core.manager;
+
+import com.google.common.collect.ImmutableList;
+import com.uber.okbuck.core.dependency.OExternalDependency;
+import com.uber.okbuck.core.dependency.VersionlessDependency;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import org.gradle.api.artifacts.ExternalDependency;
+
+/**
+ * Registry of the external dependencies used by all projects. Dependencies are spread over lock
+ * stripes by their versionless coordinates, so that project tasks running in parallel only contend
+ * when they register dependencies of the same stripe. Contended lock acquisitions and the time
+ * spent waiting for them are counted.
+ */
+public final class DependencyRegistry {
+
+  private static final int STRIPES = 64;
+
+  private static final Comparator<OExternalDependency> DEPENDENCY_ORDER =
+      Comparator.comparing(OExternalDependency::getVersion)
+          .thenComparing(dependency -> dependency.getRealDependencyFile().getPath());
+
+  private final Stripe[] stripes = new Stripe[STRIPES];
+  private final Set<ExternalDependency> rawDependencies = ConcurrentHashMap.newKeySet();
+
+  private final LongAdder acquisitions = new LongAdder();
+  private final LongAdder contendedAcquisitions = new LongAdder();
+  private final LongAdder waitNanos = new LongAdder();
+
+  public DependencyRegistry() {
+    for (int i = 0; i < STRIPES; i++) {
+      stripes[i] = new Stripe();
+    }
+  }
+
+  public void addRawDependencies(Set<ExternalDependency> dependencies) {
+    rawDependencies.addAll(dependencies);
+  }
+
+  /** Returns the raw dependencies declared by all projects. */
+  public Set<ExternalDependency> getRawDependencies() {
+    return Collections.unmodifiableSet(rawDependencies);
+  }
+
+  /**
+   * Registers a dependency. A versionless dependency only skips prebuilt rules if all its
+   * registrations skip them.
+   *
+   * @param dependency The dependency
+   * @param skipPrebuilt Whether to skip the prebuilt rule of the dependency
+   */
+  public void add(OExternalDependency dependency, boolean skipPrebuilt) {
+    VersionlessDependency versionless = dependency.getVersionless();
+    Stripe stripe = stripe(versionless);
+    lock(stripe);
+    try {
+      stripe
+          .dependencies
+          .computeIfAbsent(versionless, key -> new LinkedHashSet<>())
+          .add(dependency);
+      stripe.skipPrebuilt.merge(versionless, skipPrebuilt, Boolean::logicalAnd);
+    } finally {
+      stripe.lock.unlock();
+    }
+  }
+
+  /**
+   * Returns whether the prebuilt rule of a dependency should be skipped.
+   *
+   * @param versionless The versionless dependency
+   * @return Whether all registrations of the dependency skip its prebuilt rule
+   */
+  public boolean isSkipPrebuilt(VersionlessDependency versionless) {
+    Stripe stripe = stripe(versionless);
+    lock(stripe);
+    try {
+      return stripe.skipPrebuilt.getOrDefault(versionless, false);
+    } finally {
+      stripe.lock.unlock();
+    }
+  }
+
+  /**
+   * Returns a snapshot of all registered dependencies ordered by their coordinates, so that the
+   * result does not depend on the order in which parallel project tasks registered them.
+   */
+  public Map<VersionlessDependency, Collection<OExternalDependency>> snapshot() {
+    Map<VersionlessDependency, Collection<OExternalDependency>> all = new HashMap<>();
+    for (Stripe stripe : stripes) {
+      lock(stripe);
+      try {
+        stripe.dependencies.forEach(
+            (versionless, dependencies) ->
+                all.put(
+                    versionless,
+                    dependencies
+                        .stream()
+                        .sorted(DEPENDENCY_ORDER)
+                        .collect(ImmutableList.toImmutableList())));
+      } finally {
+        stripe.lock.unlock();
+      }
+    }
+
+    Map<VersionlessDependency, Collection<OExternalDependency>> sorted = new LinkedHashMap<>();
+    all.keySet()
+        .stream()
+        .sorted(Comparator.comparing(VersionlessDependency::mavenCoords))
+        .forEach(versionless -> sorted.put(versionless, all.get(versionless)));
+    return sorted;
+  }
+
+  /** Returns the number of lock acquisitions, contended acquisitions and total wait time. */
+  public String contentionSummary() {
+    return String.format(
+        "%d lock acquisitions, %d contended, %d ms waiting",
+        acquisitions.sum(), contendedAcquisitions.sum(), waitNanos.sum() / 1_000_000);
+  }
+
+  public long getContendedAcquisitions() {
+    return contendedAcquisitions.sum();
+  }
+
+  public long getWaitNanos() {
+    return waitNanos.sum();
+  }
+
+  private Stripe stripe(VersionlessDependency versionless) {
+    int hash = versionless.hashCode();
+    return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+  }
+
+  private void lock(Stripe stripe) {
+    acquisitions.increment();
+    if (stripe.lock.tryLock()) {
+      return;
+    }
+    contendedAcquisitions.increment();
+    long start = System.nanoTime();
+    stripe.lock.lock();
+    waitNanos.add(System.nanoTime() - start);
+  }
+
+  private static final class Stripe {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<VersionlessDependency, Set<OExternalDependency>> dependencies =
+        new HashMap<>();
+    private final Map<VersionlessDependency, Boolean> skipPrebuilt = new HashMap<>();
+  }
+}
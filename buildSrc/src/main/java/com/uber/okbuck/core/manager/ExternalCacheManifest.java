@@ -0,0 +1,187 @@
+package com.uber.okbuck.core.manager;
+
+import com.google.common.collect.ImmutableList;
+import com.google.errorprone.annotations.Var;
+import com.google.gson.reflect.TypeToken;
+import com.uber.okbuck.core.util.StateFile;
+import com.uber.okbuck.template.core.FileEmitter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Manifest of the directories generated in the external dependency cache by the last run. Each
+ * directory is recorded with a fingerprint of the dependencies it was generated from and the files
+ * generated in it, so that directories whose dependencies did not change are left as they are, and
+ * files and directories no longer generated can be deleted without deleting the whole cache.
+ */
+public final class ExternalCacheManifest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ExternalCacheManifest.class);
+
+  // Bump whenever the fingerprint inputs or the generated files change.
+  private static final int FORMAT_VERSION = 1;
+
+  private final StateFile<Map<String, Entry>> stateFile;
+  private final Path cacheDir;
+
+  private final Map<String, Entry> current = new ConcurrentHashMap<>();
+
+  @Nullable private final Map<String, Entry> previous;
+
+  /**
+   * Loads the manifest of the last run. The manifest is deleted until it is persisted again, so
+   * that a failed run is followed by a full generation.
+   *
+   * @param stateFile The file the manifest is persisted to
+   * @param cacheDir The external dependency cache directory
+   */
+  public ExternalCacheManifest(File stateFile, Path cacheDir) {
+    this.stateFile =
+        new StateFile<>(
+            stateFile,
+            FORMAT_VERSION,
+            new TypeToken<Map<String, Entry>>() {}.getType(),
+            "external cache manifest");
+    this.cacheDir = cacheDir;
+    this.previous = this.stateFile.read();
+    this.stateFile.delete();
+  }
+
+  /**
+   * Returns whether a manifest of the last run was found. Without it, files generated by the last
+   * run are not known and the cache directory needs to be cleaned as a whole.
+   */
+  public boolean hasPrevious() {
+    return previous != null;
+  }
+
+  /**
+   * Returns whether a directory was generated by the last run from the same dependencies, and
+   * still has all the files generated in it.
+   *
+   * @param dir The directory in the cache
+   * @param fingerprint The fingerprint of the dependencies of the directory
+   */
+  public boolean isUpToDate(Path dir, String fingerprint) {
+    Entry entry = previous != null ? previous.get(key(dir)) : null;
+    return entry != null
+        && entry.fingerprint.equals(fingerprint)
+        && entry
+            .files
+            .stream()
+            .allMatch(file -> Files.exists(dir.resolve(file), LinkOption.NOFOLLOW_LINKS));
+  }
+
+  /**
+   * Records the files generated in a directory by this run. Can be called from multiple threads.
+   *
+   * @param dir The directory in the cache
+   * @param fingerprint The fingerprint of the dependencies of the directory
+   * @param files The names of the files generated in the directory
+   */
+  public void record(Path dir, String fingerprint, Collection<String> files) {
+    Entry entry = new Entry();
+    entry.fingerprint = fingerprint;
+    entry.files = ImmutableList.sortedCopyOf(files);
+    current.put(key(dir), entry);
+  }
+
+  /**
+   * Keeps the files a directory had in the last run.
+   *
+   * @param dir The directory in the cache
+   */
+  public void retain(Path dir) {
+    if (previous != null) {
+      Entry entry = previous.get(key(dir));
+      if (entry != null) {
+        current.put(key(dir), entry);
+      }
+    }
+  }
+
+  /**
+   * Deletes the files generated by the last run that were not generated again by this run, and
+   * the directories left empty by that.
+   *
+   * @return The number of deleted files
+   */
+  public int deleteOrphans() {
+    if (previous == null) {
+      return 0;
+    }
+
+    @Var int deleted = 0;
+    for (Map.Entry<String, Entry> entry : previous.entrySet()) {
+      Entry now = current.get(entry.getKey());
+      Set<String> kept = now != null ? new HashSet<>(now.files) : new HashSet<>();
+      Path dir = cacheDir.resolve(entry.getKey());
+      for (String file : entry.getValue().files) {
+        if (!kept.contains(file)) {
+          FileEmitter.delete(dir.resolve(file));
+          deleted++;
+        }
+      }
+      if (now == null) {
+        deleteEmptyDirs(dir);
+      }
+    }
+    return deleted;
+  }
+
+  /** Persists the directories recorded in this run. */
+  public void persist() {
+    stateFile.write(new TreeMap<>(current));
+  }
+
+  private String key(Path dir) {
+    return cacheDir.relativize(dir).toString();
+  }
+
+  private void deleteEmptyDirs(Path dir) {
+    @Var Path path = dir;
+    while (path.startsWith(cacheDir) && !path.equals(cacheDir) && isEmptyDir(path)) {
+      try {
+        Files.delete(path);
+      } catch (IOException e) {
+        LOG.warn("Couldn't delete orphaned directory {}", path, e);
+        return;
+      }
+      Path parent = path.getParent();
+      if (parent == null) {
+        return;
+      }
+      path = parent;
+    }
+  }
+
+  private static boolean isEmptyDir(Path dir) {
+    if (!Files.isDirectory(dir)) {
+      return false;
+    }
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+      return !entries.iterator().hasNext();
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static final class Entry {
+    private String fingerprint = "";
+    private List<String> files = ImmutableList.of();
+  }
+}
@@ -0,0 +1,201 @@
+package com.uber.okbuck.core.manager;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.errorprone.annotations.Var;
+import com.uber.okbuck.core.util.Tracer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the finalize step of the managers once all project build files are generated. Serial steps
+ * run first, one after the other on the calling thread, and may use gradle and mutate shared
+ * dependencies. The remaining steps declare the steps whose results they need, and steps without
+ * a path between them run concurrently when parallel execution is enabled, so they must only read
+ * dependencies and write their own files.
+ */
+public class FinalizeScheduler {
+
+  private static final Logger LOG = LoggerFactory.getLogger(FinalizeScheduler.class);
+
+  private final Map<String, Step> steps = new LinkedHashMap<>();
+  private final boolean parallel;
+
+  @Nullable private String lastSerial;
+
+  public FinalizeScheduler(boolean parallel) {
+    this.parallel = parallel;
+  }
+
+  /**
+   * Adds a finalize step. Steps must be added after the steps they depend on.
+   *
+   * @param name The name the step is reported with
+   * @param action The finalize action
+   * @param dependsOn The names of the steps that need to complete before this step
+   * @return This scheduler
+   */
+  public FinalizeScheduler add(String name, Runnable action, String... dependsOn) {
+    Preconditions.checkState(!steps.containsKey(name), "Duplicate finalize step %s", name);
+    for (String dependency : dependsOn) {
+      Preconditions.checkState(
+          steps.containsKey(dependency), "Unknown finalize step %s for %s", dependency, name);
+    }
+    List<String> upstream = new ArrayList<>(Arrays.asList(dependsOn));
+    if (lastSerial != null && !upstream.contains(lastSerial)) {
+      upstream.add(lastSerial);
+    }
+    steps.put(name, new Step(name, action, upstream, false));
+    return this;
+  }
+
+  /**
+   * Adds a serial step, which runs on the calling thread after all serial steps added before it
+   * and before any other step. Serial steps must be added before all other steps.
+   *
+   * @param name The name the step is reported with
+   * @param action The finalize action
+   * @return This scheduler
+   */
+  public FinalizeScheduler addSerial(String name, Runnable action) {
+    Preconditions.checkState(!steps.containsKey(name), "Duplicate finalize step %s", name);
+    Preconditions.checkState(
+        steps.values().stream().allMatch(step -> step.serial),
+        "Serial finalize step %s added after a concurrent step",
+        name);
+    List<String> upstream = lastSerial != null ? ImmutableList.of(lastSerial) : ImmutableList.of();
+    steps.put(name, new Step(name, action, upstream, true));
+    lastSerial = name;
+    return this;
+  }
+
+  /**
+   * Adds a finalize step that depends on all the steps added before it.
+   *
+   * @param name The name the step is reported with
+   * @param action The finalize action
+   * @return This scheduler
+   */
+  public FinalizeScheduler addLast(String name, Runnable action) {
+    return add(name, action, steps.keySet().toArray(new String[0]));
+  }
+
+  /** Runs all steps and logs the wall time of each along with the longest chain of steps. */
+  public void run() {
+    Stopwatch total = Stopwatch.createStarted();
+    if (parallel) {
+      runParallel();
+    } else {
+      steps.values().forEach(Step::run);
+    }
+    report(total.elapsed(TimeUnit.MILLISECONDS));
+  }
+
+  private void runParallel() {
+    int threads = Math.max(1, Math.min(steps.size(), Runtime.getRuntime().availableProcessors()));
+    ExecutorService executor =
+        Executors.newFixedThreadPool(
+            threads, new ThreadFactoryBuilder().setNameFormat("okbuck-finalize-%d").build());
+    try {
+      Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+      for (Step step : steps.values()) {
+        if (step.serial) {
+          step.run();
+          futures.put(step.name, CompletableFuture.completedFuture(null));
+          continue;
+        }
+        CompletableFuture<?>[] upstream =
+            step.dependsOn.stream().map(futures::get).toArray(CompletableFuture<?>[]::new);
+        futures.put(
+            step.name, CompletableFuture.allOf(upstream).thenRunAsync(step::run, executor));
+      }
+      CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause() != null ? e.getCause() : e;
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void report(long totalMillis) {
+    Map<String, Long> pathMillis = new LinkedHashMap<>();
+    Map<String, String> pathPredecessor = new LinkedHashMap<>();
+    @Var String last = null;
+    @Var long longest = -1;
+    for (Step step : steps.values()) {
+      LOG.info("Finalized {} in {} ms", step.name, step.millis);
+
+      @Var long upstreamMillis = 0;
+      for (String dependency : step.dependsOn) {
+        long dependencyMillis = pathMillis.getOrDefault(dependency, 0L);
+        if (dependencyMillis > upstreamMillis) {
+          upstreamMillis = dependencyMillis;
+          pathPredecessor.put(step.name, dependency);
+        }
+      }
+      long millis = upstreamMillis + step.millis;
+      pathMillis.put(step.name, millis);
+      if (millis > longest) {
+        longest = millis;
+        last = step.name;
+      }
+    }
+
+    List<String> criticalPath = new ArrayList<>();
+    @Var String name = last;
+    while (name != null) {
+      criticalPath.add(0, name);
+      name = pathPredecessor.get(name);
+    }
+    LOG.info(
+        "Finalized {} steps in {} ms, critical path {} ({} ms)",
+        steps.size(),
+        totalMillis,
+        String.join(" -> ", criticalPath),
+        longest);
+  }
+
+  private static final class Step {
+
+    private final String name;
+    private final Runnable action;
+    private final List<String> dependsOn;
+    private final boolean serial;
+    private volatile long millis;
+
+    private Step(String name, Runnable action, List<String> dependsOn, boolean serial) {
+      this.name = name;
+      this.action = action;
+      this.dependsOn = dependsOn;
+      this.serial = serial;
+    }
+
+    private void run() {
+      Stopwatch stopwatch = Stopwatch.createStarted();
+      try (Tracer.Span ignored = Tracer.span("finalize", name)) {
+        action.run();
+      }
+      millis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+    }
+  }
+}
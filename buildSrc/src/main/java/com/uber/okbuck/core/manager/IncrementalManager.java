@@ -0,0 +1,501 @@
+package com.uber.okbuck.core.manager;
+
+import com.android.build.gradle.BaseExtension;
+import com.android.build.gradle.api.AndroidSourceSet;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.gson.reflect.TypeToken;
+import com.uber.okbuck.core.annotation.AnnotationProcessorCache;
+import com.uber.okbuck.core.dependency.DependencyCache;
+import com.uber.okbuck.core.dependency.DependencyFactory;
+import com.uber.okbuck.core.dependency.ExternalDependencyRecord;
+import com.uber.okbuck.core.dependency.OExternalDependency;
+import com.uber.okbuck.core.util.FileUtil;
+import com.uber.okbuck.core.util.FingerprintUtil;
+import com.uber.okbuck.core.util.ProjectUtil;
+import com.uber.okbuck.core.util.StateFile;
+import com.uber.okbuck.extension.ExperimentalExtension;
+import com.uber.okbuck.extension.ExternalDependenciesExtension;
+import com.uber.okbuck.extension.JetifierExtension;
+import com.uber.okbuck.extension.OkBuckExtension;
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.ProjectDependency;
+import org.gradle.api.plugins.JavaPluginConvention;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Skips regenerating the build file of projects whose inputs did not change since the last run.
+ *
+ * <p>Every project is fingerprinted before any project okbuck task runs. The fingerprint covers
+ * every gradle script of the build, the buildscript classpath, declared dependencies of all
+ * configurations, source set roots, manifests and the okbuck extension values, combined with the
+ * fingerprints of all upstream projects. While a project is generated, the external dependencies,
+ * configurations, annotation processor configurations and exported paths it contributes to the root
+ * okbuck task are recorded. When a project is up to date, its build file is left untouched and the
+ * recorded contributions are replayed instead.
+ */
+public final class IncrementalManager {
+
+  private static final Logger LOG = LoggerFactory.getLogger(IncrementalManager.class);
+
+  // Bump whenever the fingerprint inputs or the recorded state change.
+  private static final int FORMAT_VERSION = 4;
+
+  private final Project rootProject;
+  private final OkBuckExtension okBuckExtension;
+  private final BuckFileManager buckFileManager;
+  private final StateFile<Map<String, ProjectState>> stateFile;
+
+  private final ThreadLocal<Recording> recordings = new ThreadLocal<>();
+  private final Map<String, ProjectState> currentStates = new ConcurrentHashMap<>();
+  private final AtomicInteger skippedProjects = new AtomicInteger();
+  private final AtomicInteger changingProjects = new AtomicInteger();
+
+  private Map<String, ProjectState> previousStates = new HashMap<>();
+  private Map<String, String> fingerprints = new HashMap<>();
+  private boolean enabled;
+
+  public IncrementalManager(
+      Project rootProject,
+      OkBuckExtension okBuckExtension,
+      BuckFileManager buckFileManager,
+      String stateFile) {
+    this.rootProject = rootProject;
+    this.okBuckExtension = okBuckExtension;
+    this.buckFileManager = buckFileManager;
+    this.stateFile =
+        new StateFile<>(
+            rootProject.file(stateFile),
+            FORMAT_VERSION,
+            new TypeToken<Map<String, ProjectState>>() {}.getType(),
+            "incremental state");
+  }
+
+  /**
+   * Loads the state of the last run and fingerprints the given projects. Needs to be called before
+   * any project okbuck task runs.
+   *
+   * @param projects The projects for which build files are generated
+   */
+  public void setup(Collection<Project> projects) {
+    ExternalDependenciesExtension externalDependenciesExtension =
+        okBuckExtension.getExternalDependenciesExtension();
+    ExperimentalExtension experimentalExtension = okBuckExtension.getExperimentalExtension();
+
+    // Lazy scopes are resolved by whichever project first needs them, possibly after the project
+    // owning them was recorded, so their dependencies can't be attributed to it.
+    if (experimentalExtension.incremental && experimentalExtension.lazyScopes) {
+      throw new IllegalStateException(
+          "experimental.incremental can't be used together with experimental.lazyScopes");
+    }
+
+    // Child dependencies of exported deps are derived from the resolved graph of each
+    // configuration and cannot be replayed from the recorded state.
+    enabled =
+        experimentalExtension.incremental && !externalDependenciesExtension.exportedDepsEnabled();
+
+    if (enabled) {
+      Map<String, ProjectState> states = stateFile.read();
+      previousStates = states != null ? states : new HashMap<>();
+    }
+
+    // The state is rewritten at the very end of a successful run only. Deleting it upfront ensures
+    // that a failed run is followed by a full generation.
+    stateFile.delete();
+
+    if (enabled) {
+      fingerprints = computeFingerprints(projects);
+    }
+  }
+
+  /**
+   * Checks whether the build file of the project can be reused from the last run.
+   *
+   * @param project The project to check
+   * @return Whether the project is up to date
+   */
+  public boolean isUpToDate(Project project) {
+    if (!enabled) {
+      return false;
+    }
+
+    ProjectState previous = previousStates.get(project.getPath());
+    String fingerprint = fingerprints.get(project.getPath());
+    if (previous == null || fingerprint == null || !fingerprint.equals(previous.fingerprint)) {
+      return false;
+    }
+
+    File buildFile = project.file(okBuckExtension.buildFileName);
+    if (!buildFile.isFile() || buildFile.length() < previous.buildFileLength) {
+      return false;
+    }
+
+    return previous.dependencies.stream().allMatch(ExternalDependencyRecord::isAvailable);
+  }
+
+  /**
+   * Generates the project while recording everything it contributes to the root okbuck task.
+   *
+   * @param project The project being generated
+   * @param generator Generates the build file of the project
+   */
+  public void record(Project project, Runnable generator) {
+    if (!enabled) {
+      generator.run();
+      return;
+    }
+
+    Recording recording = new Recording();
+    recordings.set(recording);
+    try {
+      generator.run();
+    } finally {
+      recordings.remove();
+    }
+
+    // Dependencies with changing versions may resolve differently next time
+    if (recording.changingVersions) {
+      changingProjects.incrementAndGet();
+      return;
+    }
+
+    File buildFile = project.file(okBuckExtension.buildFileName);
+    currentStates.put(
+        project.getPath(),
+        recording.toState(
+            fingerprints.getOrDefault(project.getPath(), ""),
+            buckFileManager.getGeneratedLength(buildFile)));
+  }
+
+  /**
+   * Replays the contributions recorded for an up to date project in the last run.
+   *
+   * @param project The up to date project
+   */
+  public void replay(Project project) {
+    ProjectState state = previousStates.get(project.getPath());
+    if (state == null) {
+      throw new IllegalStateException("No recorded state for " + project);
+    }
+
+    DependencyFactory factory = ProjectUtil.getDependencyFactory(project);
+    DependencyManager dependencyManager = ProjectUtil.getDependencyManager(project);
+    DependencyCache depCache = ProjectUtil.getDependencyCache(project);
+    AnnotationProcessorCache apCache = ProjectUtil.getAnnotationProcessorCache(project);
+
+    ExternalDependenciesExtension externalDependenciesExtension =
+        okBuckExtension.getExternalDependenciesExtension();
+    JetifierExtension jetifierExtension = okBuckExtension.getJetifierExtension();
+
+    state.dependencies.forEach(
+        record -> {
+          OExternalDependency dependency =
+              record.toDependency(factory, externalDependenciesExtension, jetifierExtension);
+          dependencyManager.addDependency(dependency, record.isSkipPrebuilt());
+          dependency.updateFirstLevel(record.isFirstLevel());
+        });
+
+    state.configurations.forEach(
+        name -> {
+          Configuration configuration = project.getConfigurations().findByName(name);
+          if (configuration != null) {
+            depCache.addDependencies(configuration.getAllDependencies());
+          }
+        });
+
+    state.processorConfigurations.forEach(
+        name -> apCache.getAnnotationProcessorScopes(project, name));
+
+    ProjectUtil.getPlugin(project).exportedPaths.addAll(state.exportedPaths);
+
+    buckFileManager.retainBuckFile(
+        project.file(okBuckExtension.buildFileName), state.buildFileLength);
+    skippedProjects.incrementAndGet();
+    currentStates.put(project.getPath(), state);
+
+    LOG.info("Skipping up to date project {}", project.getPath());
+  }
+
+  /** Records a dependency registered by the project being generated on the current thread. */
+  public void recordDependency(OExternalDependency dependency, boolean skipPrebuilt) {
+    Recording recording = recordings.get();
+    if (recording != null) {
+      recording.skipPrebuilt.merge(dependency, skipPrebuilt, Boolean::logicalAnd);
+    }
+  }
+
+  /**
+   * Records that a configuration of the project being generated has dynamic, changing or snapshot
+   * versions, so that the project is generated again by the next run.
+   */
+  public void recordChangingVersions() {
+    Recording recording = recordings.get();
+    if (recording != null) {
+      recording.changingVersions = true;
+    }
+  }
+
+  /** Records the first level dependencies of a scope of the project being generated. */
+  public void recordFirstLevel(Collection<OExternalDependency> dependencies) {
+    Recording recording = recordings.get();
+    if (recording != null) {
+      recording.firstLevel.addAll(dependencies);
+    }
+  }
+
+  /** Records a configuration of the project being generated whose dependencies are added raw. */
+  public void recordConfiguration(Project project, Configuration configuration) {
+    Recording recording = recordings.get();
+    if (recording != null
+        && project.getConfigurations().findByName(configuration.getName()) == configuration) {
+      recording.configurations.add(configuration.getName());
+    }
+  }
+
+  /** Records an annotation processor configuration of the project being generated. */
+  public void recordProcessorConfiguration(Configuration configuration) {
+    Recording recording = recordings.get();
+    if (recording != null) {
+      recording.processorConfigurations.add(configuration.getName());
+    }
+  }
+
+  /** Records a path exported by the project being generated. */
+  public void recordExportedPath(String path) {
+    Recording recording = recordings.get();
+    if (recording != null) {
+      recording.exportedPaths.add(path);
+    }
+  }
+
+  /** Persists the state of this run to be used by the next one. */
+  public void finalizeState() {
+    if (!enabled) {
+      return;
+    }
+
+    LOG.info(
+        "Incremental okbuck: {} projects generated, {} projects up to date, "
+            + "{} projects with changing versions not recorded",
+        currentStates.size() - skippedProjects.get() + changingProjects.get(),
+        skippedProjects.get(),
+        changingProjects.get());
+
+    stateFile.write(new TreeMap<>(currentStates));
+  }
+
+  private Map<String, String> computeFingerprints(Collection<Project> projects) {
+    String globalFingerprint = globalFingerprint();
+
+    Map<Project, String> localFingerprints = new HashMap<>();
+    Map<Project, Set<Project>> upstreamProjects = new HashMap<>();
+
+    Map<String, String> result = new HashMap<>();
+    for (Project project : projects) {
+      Hasher hasher = Hashing.sha256().newHasher();
+      FingerprintUtil.putString(hasher, globalFingerprint);
+
+      // Include all transitively reachable projects so that changes to targets of upstream
+      // projects invalidate the downstream build files referring to them.
+      Set<Project> closure = new TreeSet<>(Comparator.comparing(Project::getPath));
+      Deque<Project> queue = new ArrayDeque<>();
+      queue.add(project);
+      while (!queue.isEmpty()) {
+        Project current = queue.poll();
+        if (closure.add(current)) {
+          queue.addAll(upstreamProjects.computeIfAbsent(current, IncrementalManager::upstream));
+        }
+      }
+
+      closure.forEach(
+          current -> {
+            FingerprintUtil.putString(hasher, current.getPath());
+            FingerprintUtil.putString(
+                hasher,
+                localFingerprints.computeIfAbsent(current, IncrementalManager::localFingerprint));
+          });
+
+      result.put(project.getPath(), hasher.hash().toString());
+    }
+    return result;
+  }
+
+  private String globalFingerprint() {
+    Hasher hasher = Hashing.sha256().newHasher();
+    hasher.putInt(FORMAT_VERSION);
+
+    FingerprintUtil.putPluginVersion(hasher);
+
+    // Scripts applied from anywhere, e.g. a shared dependencies.gradle, change any project
+    FingerprintUtil.putScripts(hasher, rootProject);
+    FingerprintUtil.putFile(hasher, rootProject.file("gradle.properties"));
+    putBuildscript(hasher, rootProject);
+
+    FingerprintUtil.putJson(hasher, okBuckExtension, OkBuckExtension.class);
+    FingerprintUtil.putJson(hasher, okBuckExtension.getKotlinExtension());
+    FingerprintUtil.putJson(hasher, okBuckExtension.getScalaExtension());
+    FingerprintUtil.putJson(hasher, okBuckExtension.getIntellijExtension());
+    FingerprintUtil.putJson(hasher, okBuckExtension.getExperimentalExtension());
+    FingerprintUtil.putJson(hasher, okBuckExtension.getTestExtension());
+    FingerprintUtil.putJson(hasher, okBuckExtension.getTransformExtension());
+    FingerprintUtil.putJson(hasher, okBuckExtension.getLintExtension());
+    FingerprintUtil.putJson(hasher, okBuckExtension.getJetifierExtension());
+    FingerprintUtil.putJson(hasher, okBuckExtension.getExternalDependenciesExtension());
+    FingerprintUtil.putJson(hasher, okBuckExtension.getVisibilityExtension());
+    FingerprintUtil.putJson(hasher, okBuckExtension.getRuleOverridesExtension());
+    FingerprintUtil.putJson(hasher, okBuckExtension.getExportDependenciesExtension());
+    FingerprintUtil.putJson(hasher, okBuckExtension.getVariantExtension());
+
+    return hasher.hash().toString();
+  }
+
+  private static String localFingerprint(Project project) {
+    Hasher hasher = Hashing.sha256().newHasher();
+
+    FingerprintUtil.putString(hasher, ProjectUtil.getType(project).name());
+    FingerprintUtil.putFile(hasher, project.getBuildFile());
+    FingerprintUtil.putFile(hasher, project.file("gradle.properties"));
+    putBuildscript(hasher, project);
+
+    project.getConfigurations().stream()
+        .sorted(Comparator.comparing(Configuration::getName))
+        .forEach(
+            configuration -> {
+              FingerprintUtil.putString(hasher, configuration.getName());
+              configuration.getExtendsFrom().stream()
+                  .map(parent -> "extends:" + parent.getName())
+                  .sorted()
+                  .forEach(parent -> FingerprintUtil.putString(hasher, parent));
+              configuration.getDependencies().stream()
+                  .map(FingerprintUtil::describe)
+                  .sorted()
+                  .forEach(description -> FingerprintUtil.putString(hasher, description));
+              configuration.getDependencyConstraints().stream()
+                  .map(FingerprintUtil::describe)
+                  .sorted()
+                  .forEach(description -> FingerprintUtil.putString(hasher, description));
+            });
+
+    SourceRoots roots = sourceRoots(project);
+    roots.directories.stream()
+        .map(File::getAbsolutePath)
+        .sorted()
+        .forEach(
+            path -> {
+              FingerprintUtil.putString(hasher, project.relativePath(path));
+              hasher.putBoolean(FileUtil.isAvailable(new File(path)));
+            });
+    roots.manifests.stream()
+        .sorted(Comparator.comparing(File::getAbsolutePath))
+        .forEach(manifest -> FingerprintUtil.putFile(hasher, manifest));
+
+    return hasher.hash().toString();
+  }
+
+  private static void putBuildscript(Hasher hasher, Project project) {
+    project.getBuildscript().getConfigurations().stream()
+        .sorted(Comparator.comparing(Configuration::getName))
+        .forEach(
+            configuration -> {
+              FingerprintUtil.putString(hasher, "buildscript:" + configuration.getName());
+              FingerprintUtil.putConfiguration(hasher, configuration);
+            });
+  }
+
+    private static Set<Project> upstream(Project project) {
+    return project.getConfigurations().stream()
+        .flatMap(configuration -> configuration.getDependencies().stream())
+        .filter(dependency -> dependency instanceof ProjectDependency)
+        .map(dependency -> ((ProjectDependency) dependency).getDependencyProject())
+        .collect(Collectors.toSet());
+  }
+
+  private static SourceRoots sourceRoots(Project project) {
+    SourceRoots roots = new SourceRoots();
+
+    BaseExtension android = project.getExtensions().findByType(BaseExtension.class);
+    if (android != null) {
+      for (AndroidSourceSet sourceSet : android.getSourceSets()) {
+        for (File javaDir : sourceSet.getJava().getSrcDirs()) {
+          roots.directories.add(javaDir);
+          roots.directories.add(
+              project.file(javaDir.getAbsolutePath().replaceFirst("/java$", "/kotlin")));
+        }
+        roots.directories.addAll(sourceSet.getResources().getSrcDirs());
+        roots.directories.addAll(sourceSet.getRes().getSrcDirs());
+        roots.directories.addAll(sourceSet.getAssets().getSrcDirs());
+        roots.directories.addAll(sourceSet.getAidl().getSrcDirs());
+        roots.directories.addAll(sourceSet.getJniLibs().getSrcDirs());
+        roots.manifests.add(sourceSet.getManifest().getSrcFile());
+      }
+    }
+
+    JavaPluginConvention java = project.getConvention().findPlugin(JavaPluginConvention.class);
+    if (java != null) {
+      java.getSourceSets()
+          .forEach(sourceSet -> roots.directories.addAll(sourceSet.getAllSource().getSrcDirs()));
+    }
+
+    return roots;
+  }
+
+  private static final class SourceRoots {
+    private final Set<File> directories = new TreeSet<>();
+    private final Set<File> manifests = new TreeSet<>();
+  }
+
+  private static final class Recording {
+    private final Map<OExternalDependency, Boolean> skipPrebuilt = new LinkedHashMap<>();
+    private final Set<OExternalDependency> firstLevel = new HashSet<>();
+    private final Set<String> configurations = new TreeSet<>();
+    private final Set<String> processorConfigurations = new TreeSet<>();
+    private final Set<String> exportedPaths = new TreeSet<>();
+    private boolean changingVersions;
+
+    private ProjectState toState(String fingerprint, long buildFileLength) {
+      ProjectState state = new ProjectState();
+      state.fingerprint = fingerprint;
+      state.buildFileLength = buildFileLength;
+      state.dependencies =
+          skipPrebuilt.entrySet().stream()
+              .map(
+                  entry ->
+                      ExternalDependencyRecord.of(
+                          entry.getKey(), entry.getValue(), firstLevel.contains(entry.getKey())))
+              .collect(Collectors.toList());
+      state.configurations = new ArrayList<>(configurations);
+      state.processorConfigurations = new ArrayList<>(processorConfigurations);
+      state.exportedPaths = new ArrayList<>(exportedPaths);
+      return state;
+    }
+  }
+
+  private static final class ProjectState {
+    private String fingerprint = "";
+    private long buildFileLength;
+    private List<ExternalDependencyRecord> dependencies = ImmutableList.of();
+    private List<String> configurations = ImmutableList.of();
+    private List<String> processorConfigurations = ImmutableList.of();
+    private List<String> exportedPaths = ImmutableList.of();
+  }
+}
@@ -112,7 +112,7 @@ public final class JetifierManager {
 
         String relativeConfigPath =
             FileUtil.getRelativePath(project.getRootProject().getProjectDir(), configFile);
-        ProjectUtil.getPlugin(project.getRootProject()).exportedPaths.add(relativeConfigPath);
+        ProjectUtil.getPlugin(project.getRootProject()).addExportedPath(relativeConfigPath);
       }
 
       buckFileManager.writeToBuckFile(
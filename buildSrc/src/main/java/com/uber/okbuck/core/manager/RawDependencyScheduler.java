@@ -0,0 +1,166 @@
+package com.uber.okbuck.core.manager;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import com.uber.okbuck.core.util.Tracer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.ExternalDependency;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves groups of raw third party dependencies on a pool sized to the available cores. Each
+ * group is a work unit, which workers take largest first from a shared queue until it is empty, so
+ * that the large groups are started early and the small ones fill the gaps. Groups are never split,
+ * as the dependencies of a group are resolved together and conflict with each other, so the
+ * resolved versions don't depend on the number of workers. Each worker resolves its units in a
+ * project of its own, as configurations of a project can not be created concurrently.
+ */
+public class RawDependencyScheduler {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RawDependencyScheduler.class);
+
+  private final List<Project> projects;
+  private final int workers;
+
+  /**
+   * Creates a scheduler that runs a worker for each given project, up to the available cores.
+   *
+   * @param projects The projects the workers resolve their units in
+   */
+  public RawDependencyScheduler(List<Project> projects) {
+    this.projects = projects;
+    this.workers =
+        Math.max(1, Math.min(projects.size(), Runtime.getRuntime().availableProcessors()));
+  }
+
+  /**
+   * Resolves each group as a work unit.
+   *
+   * @param groups The dependencies to resolve, keyed by the name of their group
+   * @param resolver Resolves a unit in the project of the worker that took it
+   */
+  public void run(
+      Map<String, List<ExternalDependency>> groups, BiConsumer<Project, WorkUnit> resolver) {
+    Queue<WorkUnit> queue = new ConcurrentLinkedQueue<>(split(groups));
+    int units = queue.size();
+
+    List<Worker> workerList = new ArrayList<>();
+    for (int i = 0; i < workers; i++) {
+      workerList.add(new Worker(projects.get(i), queue, resolver));
+    }
+
+    Stopwatch total = Stopwatch.createStarted();
+    ForkJoinPool pool = new ForkJoinPool(workers);
+    try {
+      List<ForkJoinTask<?>> tasks =
+          workerList.stream().map(pool::submit).collect(Collectors.toList());
+      tasks.forEach(ForkJoinTask::join);
+    } finally {
+      pool.shutdownNow();
+    }
+    report(workerList, units, total.elapsed(TimeUnit.NANOSECONDS));
+  }
+
+  private static List<WorkUnit> split(Map<String, List<ExternalDependency>> groups) {
+    List<WorkUnit> units = new ArrayList<>();
+    groups.forEach(
+        (name, dependencies) ->
+            units.add(
+                new WorkUnit(
+                    name,
+                    dependencies
+                        .stream()
+                        .sorted(Comparator.comparing(RawDependencyScheduler::describe))
+                        .collect(Collectors.toList()))));
+
+    units.sort(
+        Comparator.comparingInt((WorkUnit unit) -> unit.getDependencies().size())
+            .reversed()
+            .thenComparing(WorkUnit::getName));
+    return units;
+  }
+
+  private void report(List<Worker> workerList, int units, long totalNanos) {
+    for (Worker worker : workerList) {
+      LOG.info(
+          "Raw dependency worker {} resolved {} units ({} deps) in {} ms, {}% utilized",
+          worker.project.getPath(),
+          worker.units,
+          worker.dependencies,
+          TimeUnit.NANOSECONDS.toMillis(worker.busyNanos),
+          totalNanos > 0 ? 100 * worker.busyNanos / totalNanos : 100);
+    }
+    LOG.info(
+        "Resolved {} raw dependency units on {} workers in {} ms",
+        units,
+        workerList.size(),
+        TimeUnit.NANOSECONDS.toMillis(totalNanos));
+  }
+
+  private static String describe(ExternalDependency dependency) {
+    return dependency.getGroup() + ":" + dependency.getName() + ":" + dependency.getVersion();
+  }
+
+  /** A set of dependencies resolved together in one configuration. */
+  public static final class WorkUnit {
+
+    private final String name;
+    private final List<ExternalDependency> dependencies;
+
+    private WorkUnit(String name, List<ExternalDependency> dependencies) {
+      this.name = name;
+      this.dependencies = ImmutableList.copyOf(dependencies);
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public List<ExternalDependency> getDependencies() {
+      return dependencies;
+    }
+  }
+
+  private static final class Worker implements Runnable {
+
+    private final Project project;
+    private final Queue<WorkUnit> queue;
+    private final BiConsumer<Project, WorkUnit> resolver;
+
+    private int units;
+    private int dependencies;
+    private long busyNanos;
+
+    private Worker(
+        Project project, Queue<WorkUnit> queue, BiConsumer<Project, WorkUnit> resolver) {
+      this.project = project;
+      this.queue = queue;
+      this.resolver = resolver;
+    }
+
+    @Override
+    public void run() {
+      for (WorkUnit unit = queue.poll(); unit != null; unit = queue.poll()) {
+        long start = System.nanoTime();
+        try (Tracer.Span ignored = Tracer.span("resolveRawDeps", unit.getName())) {
+          resolver.accept(project, unit);
+        }
+        busyNanos += System.nanoTime() - start;
+        units++;
+        dependencies += unit.getDependencies().size();
+      }
+    }
+  }
+}
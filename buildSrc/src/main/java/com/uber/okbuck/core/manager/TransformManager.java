@@ -153,7 +153,7 @@ public final class TransformManager {
   private static String getTransformConfigRuleForFile(Project project, File config) {
     String relativeConfigPath =
         FileUtil.getRelativePath(project.getRootProject().getProjectDir(), config);
-    ProjectUtil.getPlugin(project.getRootProject()).exportedPaths.add(relativeConfigPath);
+    ProjectUtil.getPlugin(project.getRootProject()).addExportedPath(relativeConfigPath);
 
     if (project.getProjectDir().equals(config.getParentFile())) {
       return ":" + config.getName();
@@ -173,7 +173,7 @@ public class AndroidAppTarget extends AndroidLibTarget {
     if (config != null) {
       String keystoreFilePath =
           FileUtil.getRelativePath(getRootProject().getProjectDir(), config.getStoreFile());
-      ProjectUtil.getPlugin(getProject()).exportedPaths.add(keystoreFilePath);
+      ProjectUtil.getPlugin(getProject()).addExportedPath(keystoreFilePath);
       return Keystore.create(
           keystoreFilePath,
           config.getStorePassword(),
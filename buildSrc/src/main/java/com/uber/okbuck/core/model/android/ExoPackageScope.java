@@ -2,22 +2,21 @@ package com.uber.okbuck.core.model.android;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
-import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.errorprone.annotations.Var;
 import com.uber.okbuck.core.dependency.OExternalDependency;
 import com.uber.okbuck.core.model.base.Scope;
 import com.uber.okbuck.core.model.base.Target;
+import com.uber.okbuck.core.util.FileIndex;
 import com.uber.okbuck.core.util.FileUtil;
 import com.uber.okbuck.core.util.XmlUtil;
 import java.io.File;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 import org.gradle.api.Project;
-import org.gradle.api.file.FileTree;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
@@ -64,19 +63,19 @@ public class ExoPackageScope extends Scope {
               .stream()
               .map(
                   sourceDir -> {
-                    FileTree found =
-                        project.fileTree(
-                            ImmutableMap.of(
-                                "dir",
-                                sourceDir,
-                                "includes",
-                                ImmutableList.of("**/" + finalAppClass + ".java")));
-                    try {
-                      return FileUtil.getRelativePath(
-                          project.getProjectDir(), found.getSingleFile());
-                    } catch (IllegalStateException ignored) {
+                    File dir = project.file(sourceDir);
+                    String fileName = finalAppClass + ".java";
+                    List<String> found =
+                        FileIndex.listing(dir)
+                            .getFiles()
+                            .stream()
+                            .filter(file -> file.equals(fileName) || file.endsWith("/" + fileName))
+                            .collect(Collectors.toList());
+                    if (found.size() != 1) {
                       return null;
                     }
+                    return FileUtil.getRelativePath(
+                        project.getProjectDir(), new File(dir, found.get(0)));
                   })
               .filter(Objects::nonNull)
               .findFirst();
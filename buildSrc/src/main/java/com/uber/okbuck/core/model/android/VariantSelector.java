@@ -0,0 +1,193 @@
+package com.uber.okbuck.core.model.android;
+
+import com.android.build.gradle.AppExtension;
+import com.android.build.gradle.api.ApplicationVariant;
+import com.android.build.gradle.api.BaseVariant;
+import com.android.builder.model.ProductFlavor;
+import com.google.common.base.Strings;
+import com.google.errorprone.annotations.Var;
+import com.uber.okbuck.core.model.base.ProjectType;
+import com.uber.okbuck.core.util.ProjectUtil;
+import com.uber.okbuck.extension.OkBuckExtension;
+import com.uber.okbuck.extension.VariantExtension;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+import org.apache.commons.io.FilenameUtils;
+import org.gradle.api.Project;
+
+/**
+ * Selects the android variants targets are created for, based on the patterns of the {@link
+ * VariantExtension}. Library variants that aren't included are still selected when a selected app
+ * variant may consume them, i.e. when their build type and the flavor of each of their dimensions,
+ * or fallbacks of those, are requested by a selected app variant. Flavor dimensions an app doesn't
+ * have are matched against its missing dimension strategies, and any flavor is accepted for them
+ * if it has none. Excluded variants and libraries with their own include patterns are never pulled
+ * in.
+ */
+public final class VariantSelector {
+
+  private final OkBuckExtension okBuckExtension;
+
+  @Nullable private List<Request> appRequests;
+
+  public VariantSelector(OkBuckExtension okBuckExtension) {
+    this.okBuckExtension = okBuckExtension;
+  }
+
+  /**
+   * Returns whether a target should be created for an app variant.
+   *
+   * @param project The app project
+   * @param variant The variant
+   */
+  public boolean isAppVariantSelected(Project project, BaseVariant variant) {
+    String identifier = identifier(project);
+    return isIncluded(identifier, variant) && !isExcluded(identifier, variant);
+  }
+
+  /**
+   * Returns whether a target should be created for a library variant.
+   *
+   * @param project The library project
+   * @param variant The variant
+   */
+  public boolean isLibraryVariantSelected(Project project, BaseVariant variant) {
+    String identifier = identifier(project);
+    if (isExcluded(identifier, variant)) {
+      return false;
+    }
+    if (isIncluded(identifier, variant)) {
+      return true;
+    }
+    if (okBuckExtension.getVariantExtension().projectInclude.containsKey(identifier)) {
+      return false;
+    }
+    return isRequestedByApps(variant);
+  }
+
+  private boolean isIncluded(String identifier, BaseVariant variant) {
+    VariantExtension extension = okBuckExtension.getVariantExtension();
+    List<String> include = extension.projectInclude.getOrDefault(identifier, extension.include);
+    return include.isEmpty() || matchesAny(include, variant);
+  }
+
+  private boolean isExcluded(String identifier, BaseVariant variant) {
+    VariantExtension extension = okBuckExtension.getVariantExtension();
+    List<String> exclude = extension.projectExclude.getOrDefault(identifier, extension.exclude);
+    return matchesAny(exclude, variant);
+  }
+
+  private synchronized boolean isRequestedByApps(BaseVariant variant) {
+    @Var List<Request> requests = appRequests;
+    if (requests == null) {
+      requests = new ArrayList<>();
+      for (Project project : okBuckExtension.buckProjects) {
+        if (ProjectUtil.getType(project) == ProjectType.ANDROID_APP) {
+          collectRequests(project, requests);
+        }
+      }
+      appRequests = requests;
+    }
+    return requests.stream().anyMatch(request -> request.accepts(variant));
+  }
+
+  private void collectRequests(Project project, List<Request> requests) {
+    AppExtension appExtension = project.getExtensions().getByType(AppExtension.class);
+    for (ApplicationVariant variant : appExtension.getApplicationVariants()) {
+      if (!isAppVariantSelected(project, variant)) {
+        continue;
+      }
+
+      String buildType = variant.getBuildType().getName();
+      Set<String> buildTypes = new HashSet<>();
+      buildTypes.add(buildType);
+      buildTypes.addAll(appExtension.getBuildTypes().getByName(buildType).getMatchingFallbacks());
+
+      Map<String, Set<String>> flavors = new HashMap<>();
+      for (ProductFlavor flavor : variant.getProductFlavors()) {
+        Set<String> accepted =
+            flavors.computeIfAbsent(dimension(flavor), dimension -> new HashSet<>());
+        accepted.add(flavor.getName());
+        accepted.addAll(
+            appExtension.getProductFlavors().getByName(flavor.getName()).getMatchingFallbacks());
+      }
+
+      // Strategies of flavors take precedence over the default config, and only apply to
+      // dimensions the app doesn't have.
+      Map<String, Set<String>> strategies = new HashMap<>();
+      for (ProductFlavor flavor : variant.getProductFlavors()) {
+        appExtension
+            .getProductFlavors()
+            .getByName(flavor.getName())
+            .getMissingDimensionStrategies()
+            .forEach(
+                (dimension, request) ->
+                    strategies.putIfAbsent(
+                        dimension, requested(request.getRequested(), request.getFallbacks())));
+      }
+      appExtension
+          .getDefaultConfig()
+          .getMissingDimensionStrategies()
+          .forEach(
+              (dimension, request) ->
+                  strategies.putIfAbsent(
+                      dimension, requested(request.getRequested(), request.getFallbacks())));
+      strategies.forEach(flavors::putIfAbsent);
+
+      requests.add(new Request(buildTypes, flavors));
+    }
+  }
+
+  private static Set<String> requested(String requested, List<String> fallbacks) {
+    Set<String> names = new HashSet<>(fallbacks);
+    names.add(requested);
+    return names;
+  }
+
+  private static String dimension(ProductFlavor flavor) {
+    return Strings.nullToEmpty(flavor.getDimension());
+  }
+
+  private static boolean matchesAny(List<String> patterns, BaseVariant variant) {
+    return patterns.stream()
+        .anyMatch(
+            pattern ->
+                FilenameUtils.wildcardMatch(variant.getName(), pattern)
+                    || FilenameUtils.wildcardMatch(variant.getBuildType().getName(), pattern)
+                    || variant.getProductFlavors().stream()
+                        .anyMatch(
+                            flavor -> FilenameUtils.wildcardMatch(flavor.getName(), pattern)));
+  }
+
+  private static String identifier(Project project) {
+    return project.getPath().replaceFirst(":", "");
+  }
+
+  /** The library build types and flavors a selected app variant may consume. */
+  private static final class Request {
+
+    private final Set<String> buildTypes;
+    // Accepted flavors by dimension. Any flavor is accepted for other dimensions.
+    private final Map<String, Set<String>> flavors;
+
+    private Request(Set<String> buildTypes, Map<String, Set<String>> flavors) {
+      this.buildTypes = buildTypes;
+      this.flavors = flavors;
+    }
+
+    private boolean accepts(BaseVariant variant) {
+      return buildTypes.contains(variant.getBuildType().getName())
+          && variant.getProductFlavors().stream()
+              .allMatch(
+                  flavor -> {
+                    Set<String> accepted = flavors.get(dimension(flavor));
+                    return accepted == null || accepted.contains(flavor.getName());
+                  });
+    }
+  }
+}
@@ -13,10 +13,13 @@ import com.uber.okbuck.core.dependency.DependencyCache;
 import com.uber.okbuck.core.dependency.DependencyFactory;
 import com.uber.okbuck.core.dependency.DependencyUtils;
 import com.uber.okbuck.core.dependency.OExternalDependency;
+import com.uber.okbuck.core.dependency.ResolvedConfigurationCache;
+import com.uber.okbuck.core.dependency.ResolvedConfigurationCache.TargetRecord;
 import com.uber.okbuck.core.dependency.VersionlessDependency;
 import com.uber.okbuck.core.util.FileUtil;
 import com.uber.okbuck.core.util.ProjectCache;
 import com.uber.okbuck.core.util.ProjectUtil;
+import com.uber.okbuck.core.util.Tracer;
 import com.uber.okbuck.extension.ExternalDependenciesExtension;
 import com.uber.okbuck.extension.JetifierExtension;
 import com.uber.okbuck.extension.OkBuckExtension;
@@ -32,6 +35,9 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 import org.apache.commons.io.FilenameUtils;
@@ -48,13 +54,20 @@ import org.gradle.api.artifacts.component.ProjectComponentIdentifier;
 import org.gradle.api.artifacts.result.ResolvedArtifactResult;
 import org.gradle.api.attributes.Attribute;
 import org.gradle.api.specs.Spec;
+import org.gradle.api.specs.Specs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class Scope {
 
+  private static final Logger LOG = LoggerFactory.getLogger(Scope.class);
+
   private final Set<String> javaResources;
   private final Set<String> sources;
   @Nullable private final Configuration configuration;
   private final DependencyCache depCache;
+  @Nullable private final ConfigurationArtifacts resolvedArtifacts;
+  @Nullable private final String resolutionKey;
   private final Map<String, List<String>> customOptions;
   protected final Project project;
 
@@ -67,6 +80,16 @@ public class Scope {
 
   @Nullable private Set<String> annotationProcessors;
 
+  private boolean materialized;
+
+  // Scopes with a configuration created and resolved since the last reset
+  private static final AtomicInteger CREATED = new AtomicInteger();
+  private static final AtomicInteger RESOLVED = new AtomicInteger();
+
+  // Configurations whose artifacts were resolved since the last reset, and the time it took
+  private static final AtomicInteger ARTIFACT_RESOLUTIONS = new AtomicInteger();
+  private static final AtomicLong ARTIFACT_NANOS = new AtomicLong();
+
   public final Set<String> getJavaResources() {
     return javaResources;
   }
@@ -79,10 +102,6 @@ public class Scope {
     return customOptions;
   }
 
-  /** Used to filter out only project dependencies when resolving a configuration. */
-  private static final Spec<ComponentIdentifier> PROJECT_FILTER =
-      componentIdentifier -> componentIdentifier instanceof ProjectComponentIdentifier;
-
   /** Used to filter out external & local jar/aar dependencies when resolving a configuration. */
   private static final Spec<ComponentIdentifier> EXTERNAL_DEP_FILTER =
       componentIdentifier -> !(componentIdentifier instanceof ProjectComponentIdentifier);
@@ -93,7 +112,9 @@ public class Scope {
       Set<File> sourceDirs,
       Set<File> javaResourceDirs,
       Map<String, List<String>> customOptions,
-      DependencyCache depCache) {
+      DependencyCache depCache,
+      @Nullable ConfigurationArtifacts resolvedArtifacts,
+      @Nullable String resolutionKey) {
 
     this.project = project;
     this.sources = FileUtil.available(project, sourceDirs);
@@ -101,10 +122,17 @@ public class Scope {
     this.customOptions = customOptions;
     this.depCache = depCache;
     this.configuration = configuration;
+    this.resolvedArtifacts = resolvedArtifacts;
+    this.resolutionKey = resolutionKey;
 
     if (configuration != null) {
       DependencyUtils.enforceChangingDeps(project, configuration);
-      extractConfiguration(configuration);
+      registerConfiguration(configuration);
+      CREATED.incrementAndGet();
+
+      if (!ProjectUtil.getOkBuckExtension(project).getExperimentalExtension().lazyScopes) {
+        materialize();
+      }
     }
   }
 
@@ -120,10 +148,52 @@ public class Scope {
         sourceDirs,
         javaResourceDirs,
         customOptions,
-        ProjectUtil.getDependencyCache(project));
+        ProjectUtil.getDependencyCache(project),
+        null,
+        null);
+  }
+
+  /** Resets the counts of created and resolved scopes. */
+  public static void resetCounts() {
+    CREATED.set(0);
+    RESOLVED.set(0);
+    ARTIFACT_RESOLUTIONS.set(0);
+    ARTIFACT_NANOS.set(0);
+  }
+
+  /**
+   * Returns the counts of resolved and skipped scope configurations since the last reset, and the
+   * time spent resolving their artifacts summed over all threads.
+   */
+  public static String summary() {
+    int resolved = RESOLVED.get();
+    return String.format(
+        "%d scope configurations resolved, %d skipped, artifacts of %d resolved in %d ms",
+        resolved,
+        CREATED.get() - resolved,
+        ARTIFACT_RESOLUTIONS.get(),
+        TimeUnit.NANOSECONDS.toMillis(ARTIFACT_NANOS.get()));
+  }
+
+  /**
+   * Resolves the dependencies of the configuration the first time they are needed. Can be called
+   * from the okbuck tasks of other projects, which read the scopes of their project dependencies.
+   */
+  private synchronized void materialize() {
+    if (materialized || configuration == null) {
+      return;
+    }
+    materialized = true;
+
+    try (Tracer.Span ignored =
+        Tracer.span("Scope", project.getPath() + ":" + configuration.getName())) {
+      extractConfiguration(configuration);
+    }
+    RESOLVED.incrementAndGet();
   }
 
   public Set<Target> getTargetDeps(boolean firstLevel) {
+    materialize();
     if (configuration != null && firstLevel) {
       return firstLevelTargetDeps;
     } else {
@@ -139,6 +209,7 @@ public class Scope {
   }
 
   public Set<OExternalDependency> getExternalDeps(boolean firstLevel) {
+    materialize();
     if (configuration != null && firstLevel) {
       return new HashSet<>(firstLevelExternal.values());
     } else {
@@ -256,24 +327,48 @@ public class Scope {
         .getArtifacts();
   }
 
-  private static ImmutableSet<ResolvedArtifactResult> getArtifacts(
-      Configuration configuration,
-      Spec<ComponentIdentifier> filter,
-      ImmutableList<String> artifactTypes) {
+  /**
+   * Resolves the artifacts of a configuration with a single artifact view per artifact type. Jar
+   * artifacts of project and external components come from the same view and are classified by
+   * their component.
+   */
+  private static ConfigurationArtifacts getArtifacts(Configuration configuration) {
+    ImmutableSet.Builder<ResolvedArtifactResult> projectJars = ImmutableSet.builder();
+    ImmutableSet.Builder<ResolvedArtifactResult> externalArtifacts = ImmutableSet.builder();
+
+    // All aar artifacts should come before jar artifacts
+    for (ResolvedArtifactResult artifact :
+        getArtifacts(configuration, "aar", EXTERNAL_DEP_FILTER)) {
+      if (!artifact.getFile().getName().equals("classes.jar")) {
+        externalArtifacts.add(artifact);
+      }
+    }
+    for (ResolvedArtifactResult artifact :
+        getArtifacts(configuration, "jar", Specs.satisfyAll())) {
+      if (artifact.getFile().getName().equals("classes.jar")) {
+        continue;
+      }
+      if (artifact.getId().getComponentIdentifier() instanceof ProjectComponentIdentifier) {
+        projectJars.add(artifact);
+      } else {
+        externalArtifacts.add(artifact);
+      }
+    }
 
-    ImmutableSet.Builder<ResolvedArtifactResult> artifactResultsBuilder = ImmutableSet.builder();
+    return new ConfigurationArtifacts(projectJars.build(), externalArtifacts.build());
+  }
 
-    // We need to individually add these sets to the final set so as to maintain the order.
-    // for eg. All aar artifact should come before jar artifacts.
-    artifactTypes.forEach(
-        artifactType ->
-            artifactResultsBuilder.addAll(
-                getArtifacts(configuration, artifactType, filter)
-                    .stream()
-                    .filter(it -> !it.getFile().getName().equals("classes.jar"))
-                    .collect(Collectors.toSet())));
+  private String resolutionKey(Configuration configuration) {
+    return resolutionKey != null
+        ? resolutionKey
+        : ResolvedConfigurationCache.key(project, configuration);
+  }
 
-    return artifactResultsBuilder.build();
+  private void registerConfiguration(Configuration configuration) {
+    // Add raw dependency to dep cache. Used to resolved 3rdparty
+    // dependencies when versionless is enabled.
+    depCache.addDependencies(configuration.getAllDependencies());
+    ProjectUtil.getIncrementalManager(project).recordConfiguration(project, configuration);
   }
 
   private void extractConfiguration(Configuration configuration) {
@@ -282,10 +377,6 @@ public class Scope {
     ExternalDependenciesExtension externalDependenciesExtension =
         ProjectUtil.getExternalDependencyExtension(project);
 
-    // Add raw dependency to dep cache. Used to resolved 3rdparty
-    // dependencies when versionless is enabled.
-    depCache.addDependencies(configuration.getAllDependencies());
-
     // TODO: Move to generic way which defines the first level dependencies
     // rather than collecting them from a global project which contains all.
     // Skip resolving gradle configurations which contains all dependencies
@@ -295,6 +386,84 @@ public class Scope {
       return;
     }
 
+    ResolvedConfigurationCache resolvedConfigurationCache =
+        ProjectUtil.getResolvedConfigurationCache(project);
+    SharedScopeCache sharedScopeCache = ProjectUtil.getSharedScopeCache(project);
+    String sharedKey = sharedScopeCache.key(project, configuration);
+    SharedScopeCache.Extraction shared =
+        sharedKey != null ? sharedScopeCache.get(depCache, sharedKey) : null;
+    if (shared != null) {
+      shareConfiguration(configuration, shared, resolvedConfigurationCache);
+    } else {
+      List<TargetRecord> targetRecords = new ArrayList<>();
+      Map<OExternalDependency, Set<OExternalDependency>> children = new HashMap<>();
+      ResolvedConfigurationCache.Entry cached =
+          resolvedConfigurationCache.get(project, configuration, resolutionKey(configuration));
+      @Var boolean changing = false;
+      if (cached != null) {
+        restoreConfiguration(cached, targetRecords, children);
+      } else {
+        changing =
+            resolveConfiguration(
+                configuration, resolvedConfigurationCache, targetRecords, children);
+      }
+
+      if (sharedKey != null) {
+        sharedScopeCache.put(
+            depCache,
+            sharedKey,
+            new SharedScopeCache.Extraction(
+                allTargetDeps,
+                firstLevelTargetDeps,
+                allExternal,
+                firstLevelExternal,
+                targetRecords,
+                children,
+                changing));
+      }
+    }
+
+    if (externalDependenciesExtension.versionedExportedDepsEnabled()) {
+      // Add exclude rule to the external dependency.
+      configuration
+          .getAllDependencies()
+          .stream()
+          .filter(dependency -> dependency instanceof ExternalDependency)
+          .map(dependency -> (ExternalDependency) dependency)
+          .forEach(
+              dependency -> {
+                Set<VersionlessDependency> vDeps = factory.fromDependency(dependency);
+                vDeps.forEach(
+                    vDep -> {
+                      OExternalDependency eDep = allExternal.getOrDefault(vDep, null);
+                      if (eDep != null) {
+                        eDep.addExcludeRules(dependency.getExcludeRules());
+                      }
+                    });
+              });
+    }
+
+    // Mark first level external deps as same in the object
+    firstLevelExternal.values().forEach(external -> external.updateFirstLevel(true));
+    ProjectUtil.getIncrementalManager(project).recordFirstLevel(firstLevelExternal.values());
+  }
+
+  /**
+   * Resolves a configuration and records its dependencies in the resolved configuration cache,
+   * unless it has changing versions.
+   *
+   * @return Whether the configuration has changing versions
+   */
+  private boolean resolveConfiguration(
+      Configuration configuration,
+      ResolvedConfigurationCache resolvedConfigurationCache,
+      List<TargetRecord> targetRecords,
+      Map<OExternalDependency, Set<OExternalDependency>> children) {
+    DependencyFactory factory = ProjectUtil.getDependencyFactory(project);
+
+    ExternalDependenciesExtension externalDependenciesExtension =
+        ProjectUtil.getExternalDependencyExtension(project);
+
     // Get first level project deps defined for the project's configuration
     Set<String> projectFirstLevel =
         configuration
@@ -363,7 +532,7 @@ public class Scope {
       externalFirstLevel.addAll(firstLevelExternal);
     }
 
-    extractConfigurationImpl(configuration, projectFirstLevel, externalFirstLevel);
+    extractConfigurationImpl(configuration, projectFirstLevel, externalFirstLevel, targetRecords);
 
     if (externalDependenciesExtension.versionedExportedDepsEnabled()) {
       Preconditions.checkNotNull(allModuleDependencies);
@@ -383,47 +552,148 @@ public class Scope {
                 .stream()
                 .map(allExternal::get)
                 .filter(Objects::nonNull)
-                .forEach(eDep -> eDep.addDeps(childEDeps));
+                .forEach(
+                    eDep -> {
+                      eDep.addDeps(childEDeps);
+                      children.computeIfAbsent(eDep, k -> new HashSet<>()).addAll(childEDeps);
+                    });
 
             // Add all child deps as first level deps if there are no self artifacts;
             if (rDep.getModuleArtifacts().size() == 0) {
               childEDeps.forEach(i -> firstLevelExternal.put(i.getVersionless(), i));
             }
           });
+    }
 
-      // Add exclude rule to the external dependency.
-      configuration
-          .getAllDependencies()
-          .stream()
-          .filter(dependency -> dependency instanceof ExternalDependency)
-          .map(dependency -> (ExternalDependency) dependency)
-          .forEach(
-              dependency -> {
-                Set<VersionlessDependency> vDeps = factory.fromDependency(dependency);
-                vDeps.forEach(
-                    vDep -> {
-                      OExternalDependency eDep = allExternal.getOrDefault(vDep, null);
-                      if (eDep != null) {
-                        eDep.addExcludeRules(dependency.getExcludeRules());
-                      }
-                    });
-              });
+    // Artifacts resolved as part of a batch were already checked for changing versions
+    boolean changing =
+        resolvedArtifacts == null
+            && DependencyUtils.hasChangingVersions(configuration, externalDependenciesExtension);
+    if (changing) {
+      ProjectUtil.getIncrementalManager(project).recordChangingVersions();
+    } else {
+      resolvedConfigurationCache.put(
+          project,
+          configuration,
+          resolutionKey(configuration),
+          targetRecords,
+          allExternal.values(),
+          new HashSet<>(firstLevelExternal.values()),
+          children);
     }
+    return changing;
+  }
 
-    // Mark first level external deps as same in the object
-    firstLevelExternal.values().forEach(external -> external.updateFirstLevel(true));
+  private void shareConfiguration(
+      Configuration configuration,
+      SharedScopeCache.Extraction shared,
+      ResolvedConfigurationCache resolvedConfigurationCache) {
+    allTargetDeps.addAll(shared.getAllTargetDeps());
+    firstLevelTargetDeps.addAll(shared.getFirstLevelTargetDeps());
+
+    // Register the shared dependencies again, so that they are recorded for this project as well.
+    // They were picked by the same dependency cache, so it returns the same dependencies.
+    shared.getAllExternal().values().forEach(depCache::get);
+    allExternal.putAll(shared.getAllExternal());
+    firstLevelExternal.putAll(shared.getFirstLevelExternal());
+
+    // Children were already added to the shared external dependencies, only record them
+    if (shared.hasChangingVersions()) {
+      ProjectUtil.getIncrementalManager(project).recordChangingVersions();
+    } else {
+      resolvedConfigurationCache.put(
+          project,
+          configuration,
+          resolutionKey(configuration),
+          shared.getTargetRecords(),
+          shared.getAllExternal().values(),
+          new HashSet<>(shared.getFirstLevelExternal().values()),
+          shared.getChildren());
+    }
+  }
+
+  private void restoreConfiguration(
+      ResolvedConfigurationCache.Entry entry,
+      List<TargetRecord> targetRecords,
+      Map<OExternalDependency, Set<OExternalDependency>> children) {
+    DependencyFactory factory = ProjectUtil.getDependencyFactory(project);
+
+    OkBuckExtension okBuckExtension = ProjectUtil.getOkBuckExtension(project);
+    ExternalDependenciesExtension externalDependenciesExtension =
+        okBuckExtension.getExternalDependenciesExtension();
+    JetifierExtension jetifierExtension = okBuckExtension.getJetifierExtension();
+
+    entry
+        .getTargets()
+        .forEach(
+            record -> {
+              Target target =
+                  ProjectCache.getTargetCache(project.project(record.getProjectPath()))
+                      .getTargetForVariant(record.getVariant());
+              allTargetDeps.add(target);
+
+              if (record.isFirstLevel()) {
+                firstLevelTargetDeps.add(target);
+              }
+            });
+
+    List<OExternalDependency> externals = new ArrayList<>();
+    entry
+        .getExternals()
+        .forEach(
+            record -> {
+              OExternalDependency externalDependency =
+                  depCache.get(
+                      record.toDependency(
+                          factory, externalDependenciesExtension, jetifierExtension));
+              externals.add(externalDependency);
+              allExternal.put(externalDependency.getVersionless(), externalDependency);
+
+              if (record.isFirstLevel()) {
+                firstLevelExternal.put(externalDependency.getVersionless(), externalDependency);
+              }
+            });
+
+    targetRecords.addAll(entry.getTargets());
+
+    List<List<Integer>> childIndexes = entry.getChildren();
+    for (int i = 0; i < childIndexes.size(); i++) {
+      if (!childIndexes.get(i).isEmpty()) {
+        Set<OExternalDependency> childEDeps =
+            childIndexes.get(i).stream().map(externals::get).collect(Collectors.toSet());
+        externals.get(i).addDeps(childEDeps);
+        children.put(externals.get(i), childEDeps);
+      }
+    }
   }
 
   private void extractConfigurationImpl(
       Configuration configuration,
       Set<String> projectFirstLevel,
-      Set<VersionlessDependency> externalFirstLevel) {
+      Set<VersionlessDependency> externalFirstLevel,
+      List<TargetRecord> targetRecords) {
     DependencyFactory factory = ProjectUtil.getDependencyFactory(project);
 
-    Set<ResolvedArtifactResult> jarArtifacts =
-        getArtifacts(configuration, PROJECT_FILTER, ImmutableList.of("jar"));
+    ConfigurationArtifacts artifacts;
+    try (Tracer.Span ignored =
+        Tracer.span("Scope.artifacts", project.getPath() + ":" + configuration.getName())) {
+      if (resolvedArtifacts != null) {
+        artifacts = resolvedArtifacts;
+      } else {
+        long start = System.nanoTime();
+        artifacts = getArtifacts(configuration);
+        long nanos = System.nanoTime() - start;
+        ARTIFACT_RESOLUTIONS.incrementAndGet();
+        ARTIFACT_NANOS.addAndGet(nanos);
+        LOG.debug(
+            "Resolved artifacts of {}:{} in {} ms",
+            project.getPath(),
+            configuration.getName(),
+            TimeUnit.NANOSECONDS.toMillis(nanos));
+      }
+    }
 
-    jarArtifacts.forEach(
+    artifacts.projectJars.forEach(
         artifact -> {
           if (!DependencyUtils.isConsumable(artifact.getFile())) {
             return;
@@ -441,32 +711,32 @@ public class Scope {
               ProjectCache.getTargetCache(identifierProject).getTargetForVariant(variant);
           allTargetDeps.add(target);
 
-          if (projectFirstLevel.contains(identifierProject.getPath())) {
+          boolean firstLevel = projectFirstLevel.contains(identifierProject.getPath());
+          if (firstLevel) {
             firstLevelTargetDeps.add(target);
           }
+          targetRecords.add(new TargetRecord(identifierProject.getPath(), variant, firstLevel));
         });
 
-    Set<ResolvedArtifactResult> aarOrJarArtifacts =
-        getArtifacts(configuration, EXTERNAL_DEP_FILTER, ImmutableList.of("aar", "jar"));
-
     OkBuckExtension okBuckExtension = ProjectUtil.getOkBuckExtension(project);
     ExternalDependenciesExtension externalDependenciesExtension =
         okBuckExtension.getExternalDependenciesExtension();
     JetifierExtension jetifierExtension = okBuckExtension.getJetifierExtension();
 
     Set<ResolvedArtifactResult> consumableArtifacts =
-        aarOrJarArtifacts
+        artifacts
+            .externalArtifacts
             .stream()
             .filter(artifact -> DependencyUtils.isConsumable(artifact.getFile()))
             .collect(Collectors.toSet());
 
-    Map<ComponentIdentifier, ResolvedArtifactResult> componentIdToSourcesArtifactMap =
+    Map<ComponentIdentifier, File> componentIdToSourcesFileMap =
         ProjectUtil.downloadSources(project, consumableArtifacts);
 
     consumableArtifacts.forEach(
         artifact -> {
           ComponentIdentifier identifier = artifact.getId().getComponentIdentifier();
-          ResolvedArtifactResult sourcesArtifact = componentIdToSourcesArtifactMap.get(identifier);
+          File sourcesFile = componentIdToSourcesFileMap.get(identifier);
 
           if (identifier instanceof ModuleComponentIdentifier
               && ((ModuleComponentIdentifier) identifier).getVersion().length() > 0) {
@@ -479,7 +749,7 @@ public class Scope {
                     moduleIdentifier.getModule(),
                     moduleIdentifier.getVersion(),
                     artifact.getFile(),
-                    sourcesArtifact != null ? sourcesArtifact.getFile() : null,
+                    sourcesFile,
                     externalDependenciesExtension,
                     jetifierExtension);
 
@@ -509,7 +779,7 @@ public class Scope {
               OExternalDependency localExternalDependency =
                   factory.fromLocal(
                       artifact.getFile(),
-                      sourcesArtifact != null ? sourcesArtifact.getFile() : null,
+                      sourcesFile,
                       externalDependenciesExtension,
                       jetifierExtension);
 
@@ -548,6 +818,47 @@ public class Scope {
     return Objects.hash(javaResources, sources, configuration, customOptions, project);
   }
 
+  /** The artifacts of a configuration, split into project jars and external aars and jars. */
+  public static final class ConfigurationArtifacts {
+
+    private final ImmutableSet<ResolvedArtifactResult> projectJars;
+    private final ImmutableSet<ResolvedArtifactResult> externalArtifacts;
+
+    private ConfigurationArtifacts(
+        ImmutableSet<ResolvedArtifactResult> projectJars,
+        ImmutableSet<ResolvedArtifactResult> externalArtifacts) {
+      this.projectJars = projectJars;
+      this.externalArtifacts = externalArtifacts;
+    }
+
+    /**
+     * Resolves the artifacts of a configuration, so that they can be split between scopes of
+     * configurations that declare a part of its dependencies.
+     *
+     * @param configuration The configuration
+     */
+    public static ConfigurationArtifacts resolve(Configuration configuration) {
+      return getArtifacts(configuration);
+    }
+
+    /**
+     * Returns the artifacts of the given components, in the same order.
+     *
+     * @param components The components to keep
+     */
+    public ConfigurationArtifacts filter(Set<ComponentIdentifier> components) {
+      return new ConfigurationArtifacts(
+          filter(projectJars, components), filter(externalArtifacts, components));
+    }
+
+    private static ImmutableSet<ResolvedArtifactResult> filter(
+        Set<ResolvedArtifactResult> artifacts, Set<ComponentIdentifier> components) {
+      return artifacts.stream()
+          .filter(artifact -> components.contains(artifact.getId().getComponentIdentifier()))
+          .collect(ImmutableSet.toImmutableSet());
+    }
+  }
+
   public static Builder builder(Project project) {
     return new Builder(project);
   }
@@ -560,6 +871,8 @@ public class Scope {
     private Set<File> sourceDirs = ImmutableSet.of();
     @Nullable private Configuration configuration = null;
     private DependencyCache depCache;
+    @Nullable private ConfigurationArtifacts resolvedArtifacts = null;
+    @Nullable private String resolutionKey = null;
     private final Map<String, List<String>> compilerOptions = new LinkedHashMap<>();
 
     private Builder(Project project) {
@@ -592,6 +905,18 @@ public class Scope {
       return this;
     }
 
+    /** Artifacts of the configuration that were already resolved, e.g. as part of a larger one. */
+    public Builder resolvedArtifacts(@Nullable ConfigurationArtifacts resolvedArtifacts) {
+      this.resolvedArtifacts = resolvedArtifacts;
+      return this;
+    }
+
+    /** Key of the configuration in the resolved configuration cache, if its name isn't stable. */
+    public Builder resolutionKey(String resolutionKey) {
+      this.resolutionKey = resolutionKey;
+      return this;
+    }
+
     public Builder customOptions(String key, List<String> values) {
       List<String> existingOptions =
           compilerOptions.computeIfAbsent(key, key1 -> new ArrayList<>());
@@ -620,7 +945,14 @@ public class Scope {
               key,
               t ->
                   new Scope(
-                      project, useful, sourceDirs, javaResourceDirs, compilerOptions, depCache));
+                      project,
+                      useful,
+                      sourceDirs,
+                      javaResourceDirs,
+                      compilerOptions,
+                      depCache,
+                      resolvedArtifacts,
+                      resolutionKey));
     }
   }
 }
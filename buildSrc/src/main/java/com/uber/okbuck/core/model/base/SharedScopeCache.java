@@ -0,0 +1,187 @@
+package com.uber.okbuck.core.model.base;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.uber.okbuck.core.dependency.DependencyCache;
+import com.uber.okbuck.core.dependency.DependencyUtils;
+import com.uber.okbuck.core.dependency.OExternalDependency;
+import com.uber.okbuck.core.dependency.ResolvedConfigurationCache.TargetRecord;
+import com.uber.okbuck.core.dependency.VersionlessDependency;
+import com.uber.okbuck.core.util.FingerprintUtil;
+import com.uber.okbuck.extension.OkBuckExtension;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shares the dependencies extracted from a configuration between the scopes of all projects of a
+ * build. Configurations of different projects that declare the same dependencies, constraints,
+ * forced modules, exclusions, transitivity and attributes, and resolve them from the same
+ * repositories, resolve to the same dependencies, so only the first of them is resolved through
+ * gradle.
+ *
+ * <p>Resolution rules, like dependency substitutions, are code and can't be compared, so
+ * configurations with resolution rules are never shared and are always resolved on their own.
+ */
+public final class SharedScopeCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SharedScopeCache.class);
+
+  private final OkBuckExtension okBuckExtension;
+
+  private final Map<DependencyCache, Map<String, Extraction>> extractions =
+      new ConcurrentHashMap<>();
+  private final Map<String, String> repositoryFingerprints = new ConcurrentHashMap<>();
+  private final AtomicInteger hits = new AtomicInteger();
+  private final AtomicInteger misses = new AtomicInteger();
+  private final AtomicInteger unshared = new AtomicInteger();
+
+  public SharedScopeCache(OkBuckExtension okBuckExtension) {
+    this.okBuckExtension = okBuckExtension;
+  }
+
+  /**
+   * Returns the key the dependencies of a configuration are shared with, which does not depend on
+   * the project or name of the configuration.
+   *
+   * @param project The project of the configuration
+   * @param configuration The configuration
+   * @return The key or null if sharing is disabled or the configuration has resolution rules
+   */
+  @Nullable
+  String key(Project project, Configuration configuration) {
+    if (!okBuckExtension.getExperimentalExtension().sharedScopeCache) {
+      return null;
+    }
+    if (DependencyUtils.hasResolutionRules(configuration)) {
+      unshared.incrementAndGet();
+      return null;
+    }
+
+    Hasher hasher = Hashing.sha256().newHasher();
+    FingerprintUtil.putString(
+        hasher,
+        repositoryFingerprints.computeIfAbsent(
+            project.getPath(), path -> FingerprintUtil.repositoriesFingerprint(project)));
+    FingerprintUtil.putConfiguration(hasher, configuration);
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Returns the dependencies extracted by another scope for the same key and dependency cache.
+   *
+   * @param depCache The dependency cache the dependencies were registered with
+   * @param key The key of the configuration
+   * @return The extraction or null if no scope extracted it yet
+   */
+  @Nullable
+  Extraction get(DependencyCache depCache, String key) {
+    Extraction extraction =
+        extractions.computeIfAbsent(depCache, cache -> new ConcurrentHashMap<>()).get(key);
+    if (extraction != null) {
+      hits.incrementAndGet();
+    } else {
+      misses.incrementAndGet();
+    }
+    return extraction;
+  }
+
+  /**
+   * Records the dependencies extracted by a scope. Scopes extracting the same key concurrently
+   * keep the first recorded extraction.
+   *
+   * @param depCache The dependency cache the dependencies were registered with
+   * @param key The key of the configuration
+   * @param extraction The extracted dependencies
+   */
+  void put(DependencyCache depCache, String key, Extraction extraction) {
+    extractions
+        .computeIfAbsent(depCache, cache -> new ConcurrentHashMap<>())
+        .putIfAbsent(key, extraction);
+  }
+
+  /** Logs the number of shared extractions and releases them. */
+  public void finalizeState() {
+    if (hits.get() + misses.get() + unshared.get() > 0) {
+      LOG.info(
+          "Shared scope cache: {} configurations shared, {} extracted, {} with resolution rules",
+          hits.get(),
+          misses.get(),
+          unshared.get());
+    }
+    extractions.clear();
+    repositoryFingerprints.clear();
+  }
+
+  /** The dependencies extracted from a configuration, which are not changed once shared. */
+  static final class Extraction {
+
+    private final ImmutableSet<Target> allTargetDeps;
+    private final ImmutableSet<Target> firstLevelTargetDeps;
+    private final ImmutableMap<VersionlessDependency, OExternalDependency> allExternal;
+    private final ImmutableMap<VersionlessDependency, OExternalDependency> firstLevelExternal;
+    private final ImmutableList<TargetRecord> targetRecords;
+    private final ImmutableMap<OExternalDependency, Set<OExternalDependency>> children;
+    private final boolean changingVersions;
+
+    Extraction(
+        Collection<Target> allTargetDeps,
+        Collection<Target> firstLevelTargetDeps,
+        Map<VersionlessDependency, OExternalDependency> allExternal,
+        Map<VersionlessDependency, OExternalDependency> firstLevelExternal,
+        List<TargetRecord> targetRecords,
+        Map<OExternalDependency, Set<OExternalDependency>> children,
+        boolean changingVersions) {
+      this.allTargetDeps = ImmutableSet.copyOf(allTargetDeps);
+      this.firstLevelTargetDeps = ImmutableSet.copyOf(firstLevelTargetDeps);
+      this.allExternal = ImmutableMap.copyOf(allExternal);
+      this.firstLevelExternal = ImmutableMap.copyOf(firstLevelExternal);
+      this.targetRecords = ImmutableList.copyOf(targetRecords);
+      ImmutableMap.Builder<OExternalDependency, Set<OExternalDependency>> builder =
+          ImmutableMap.builder();
+      children.forEach((dependency, deps) -> builder.put(dependency, ImmutableSet.copyOf(deps)));
+      this.children = builder.build();
+      this.changingVersions = changingVersions;
+    }
+
+    ImmutableSet<Target> getAllTargetDeps() {
+      return allTargetDeps;
+    }
+
+    ImmutableSet<Target> getFirstLevelTargetDeps() {
+      return firstLevelTargetDeps;
+    }
+
+    ImmutableMap<VersionlessDependency, OExternalDependency> getAllExternal() {
+      return allExternal;
+    }
+
+    ImmutableMap<VersionlessDependency, OExternalDependency> getFirstLevelExternal() {
+      return firstLevelExternal;
+    }
+
+    ImmutableList<TargetRecord> getTargetRecords() {
+      return targetRecords;
+    }
+
+    ImmutableMap<OExternalDependency, Set<OExternalDependency>> getChildren() {
+      return children;
+    }
+
+    /** Whether the configuration requested changing versions, so it can't be reused across runs. */
+    boolean hasChangingVersions() {
+      return changingVersions;
+    }
+  }
+}
@@ -7,6 +7,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.errorprone.annotations.Var;
 import com.uber.okbuck.core.model.android.AndroidAppTarget;
 import com.uber.okbuck.core.model.android.AndroidLibTarget;
+import com.uber.okbuck.core.model.android.VariantSelector;
 import com.uber.okbuck.core.model.jvm.JvmTarget;
 import com.uber.okbuck.core.util.ProjectUtil;
 import java.util.Map;
@@ -26,6 +27,7 @@ public final class TargetCache {
   public synchronized Map<String, Target> getTargets() {
     if (targets == null) {
       ProjectType type = ProjectUtil.getType(project);
+      VariantSelector selector = ProjectUtil.getVariantSelector(project);
       switch (type) {
         case ANDROID_APP:
           targets =
@@ -34,6 +36,7 @@ public final class TargetCache {
                   .getByType(AppExtension.class)
                   .getApplicationVariants()
                   .stream()
+                  .filter(v -> selector.isAppVariantSelected(project, v))
                   .collect(
                       ImmutableMap.toImmutableMap(
                           BaseVariant::getName, v -> new AndroidAppTarget(project, v.getName())));
@@ -45,6 +48,7 @@ public final class TargetCache {
                   .getByType(LibraryExtension.class)
                   .getLibraryVariants()
                   .stream()
+                  .filter(v -> selector.isLibraryVariantSelected(project, v))
                   .collect(
                       ImmutableMap.toImmutableMap(
                           BaseVariant::getName, v -> new AndroidLibTarget(project, v.getName())));
@@ -79,7 +83,11 @@ public final class TargetCache {
         result = getTargets().get(variant);
         if (result == null) {
           throw new IllegalStateException(
-              "No target found for " + project.getDisplayName() + " for variant " + variant);
+              "No target found for "
+                  + project.getDisplayName()
+                  + " for variant "
+                  + variant
+                  + ". Make sure it is selected by okbuck.variants");
         }
         break;
       case GROOVY_LIB:
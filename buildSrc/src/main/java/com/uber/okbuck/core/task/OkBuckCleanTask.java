@@ -4,10 +4,9 @@ import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import com.uber.okbuck.OkBuckGradlePlugin;
-import com.uber.okbuck.core.model.base.ProjectType;
 import com.uber.okbuck.core.util.FileUtil;
 import com.uber.okbuck.core.util.MoreCollectors;
-import com.uber.okbuck.core.util.ProjectUtil;
+import com.uber.okbuck.template.core.FileEmitter;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
@@ -16,7 +15,7 @@ import java.util.Set;
 import java.util.stream.Stream;
 import javax.inject.Inject;
 import org.gradle.api.DefaultTask;
-import org.gradle.api.Project;
+import org.gradle.api.provider.Provider;
 import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.TaskAction;
@@ -25,19 +24,24 @@ import org.gradle.api.tasks.TaskAction;
 @SuppressWarnings({"WeakerAccess", "CanBeFinal", "unused", "ResultOfMethodCallIgnored", "NewApi"})
 public class OkBuckCleanTask extends DefaultTask {
 
-  @Input public Set<Project> projects;
+  /** Paths of the projects build files are generated for, relative to the root project. */
+  @Input public Provider<Set<String>> projectPaths;
+
+  @Input public String buildFileName;
+
+  private final File rootProjectDir = getProject().getProjectDir();
 
   @Inject
-  public OkBuckCleanTask(Set<Project> projects) {
-    this.projects = projects;
+  public OkBuckCleanTask(Provider<Set<String>> projectPaths, String buildFileName) {
+    this.projectPaths = projectPaths;
+    this.buildFileName = buildFileName;
   }
 
   @TaskAction
   void clean() throws IOException {
-    Project rootProject = getProject();
-    Path rootProjectPath = rootProject.getProjectDir().toPath();
+    Path rootProjectPath = rootProjectDir.toPath();
 
-    File okbuckState = rootProject.file(OkBuckGradlePlugin.OKBUCK_STATE);
+    File okbuckState = rootProjectPath.resolve(OkBuckGradlePlugin.OKBUCK_STATE).toFile();
 
     // Get last project paths
     Set<String> lastProjectPaths;
@@ -55,31 +59,15 @@ public class OkBuckCleanTask extends DefaultTask {
       okbuckState.createNewFile();
     }
 
-    Set<String> currentProjectPaths =
-        projects
-            .stream()
-            .filter(project -> ProjectUtil.getType(project) != ProjectType.UNKNOWN)
-            .map(
-                project ->
-                    project
-                        .getRootProject()
-                        .getProjectDir()
-                        .toPath()
-                        .relativize(project.getProjectDir().toPath())
-                        .toString())
-            .collect(MoreCollectors.toImmutableSet());
+    Set<String> currentProjectPaths = projectPaths.get();
 
     Sets.SetView<String> difference = Sets.difference(lastProjectPaths, currentProjectPaths);
 
     // Delete stale project's build file
     difference
         .stream()
-        .map(
-            p ->
-                rootProjectPath
-                    .resolve(p)
-                    .resolve(ProjectUtil.getOkBuckExtension(rootProject).buildFileName))
-        .forEach(FileUtil::deleteQuietly);
+        .map(p -> rootProjectPath.resolve(p).resolve(buildFileName))
+        .forEach(FileEmitter::delete);
 
     // Delete old .okbuck/cache dir
     FileUtil.deleteQuietly(rootProjectPath.resolve(".okbuck/cache"));
@@ -108,7 +96,11 @@ public class OkBuckCleanTask extends DefaultTask {
     return OkBuckGradlePlugin.GROUP;
   }
 
-  public Set<Project> getProjects() {
-    return projects;
+  public Provider<Set<String>> getProjectPaths() {
+    return projectPaths;
+  }
+
+  public String getBuildFileName() {
+    return buildFileName;
   }
 }
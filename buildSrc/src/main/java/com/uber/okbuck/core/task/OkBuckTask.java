@@ -42,12 +42,22 @@ import javax.inject.Inject;
 import org.gradle.api.DefaultTask;
 import org.gradle.api.Project;
 import org.gradle.api.artifacts.repositories.MavenArtifactRepository;
+import org.gradle.api.provider.Provider;
 import org.gradle.api.specs.Specs;
 import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.Nested;
 import org.gradle.api.tasks.OutputFile;
 import org.gradle.api.tasks.TaskAction;
 
+/**
+ * Generates the buckconfig and bzl files of the root project.
+ *
+ * <p>The root directory, project types, repositories and proguard jar path are captured at
+ * configuration time, so the task action never calls {@link #getProject()}. The task is not
+ * compatible with the configuration cache yet: the extensions, the build file manager and the
+ * groovy, kotlin and scala managers still hold on to projects, and the managers resolve
+ * configurations while the task runs.
+ */
 @SuppressWarnings({"WeakerAccess", "unused", "ResultOfMethodCallIgnored", "NewApi"})
 public class OkBuckTask extends DefaultTask {
 
@@ -61,6 +71,25 @@ public class OkBuckTask extends DefaultTask {
 
   private BuckFileManager buckFileManager;
 
+  // Resolve their support dependencies through the root project when the task runs
+  private final GroovyManager groovyManager;
+  private final KotlinManager kotlinManager;
+  private final ScalaManager scalaManager;
+
+  private final File rootProjectDir;
+
+  /**
+   * The types of the projects build files are generated for. Read lazily so that it reflects the
+   * plugins applied by the time the task graph is computed, without holding on to the projects.
+   */
+  @Internal public final Provider<Set<ProjectType>> projectTypes;
+
+  /** The maven repositories written to the buckconfig when buck downloads dependencies. */
+  @Internal public final Provider<LinkedHashMap<String, String>> repositories;
+
+  /** The proguard jar target written to the buckconfig, if proguard is on the classpath. */
+  @Internal public final Provider<String> proguardJarPath;
+
   @Inject
   public OkBuckTask(
       OkBuckExtension okBuckExtension,
@@ -73,6 +102,32 @@ public class OkBuckTask extends DefaultTask {
 
     this.buckFileManager = buckFileManager;
 
+    Project project = getProject();
+    Project rootProject = project.getRootProject();
+    this.groovyManager = ProjectUtil.getGroovyManager(project);
+    this.kotlinManager = ProjectUtil.getKotlinManager(project);
+    this.scalaManager = ProjectUtil.getScalaManager(project);
+
+    this.rootProjectDir = project.getProjectDir();
+    this.projectTypes =
+        project.provider(
+            () ->
+                okBuckExtension
+                    .buckProjects
+                    .stream()
+                    .map(ProjectUtil::getType)
+                    .collect(Collectors.toSet()));
+    this.repositories =
+        project.provider(
+            () ->
+                repositoryMap(
+                    rootProject,
+                    okBuckExtension.getExternalDependenciesExtension().shouldDownloadInBuck()
+                        && okBuckExtension
+                            .getExternalDependenciesExtension()
+                            .getGenerateMavenRepositories()));
+    this.proguardJarPath = project.provider(() -> ProguardUtil.getProguardJarPath(project));
+
     // Never up to date; this task isn't safe to run incrementally.
     getOutputs().upToDateWhen(Specs.satisfyNone());
   }
@@ -80,25 +135,16 @@ public class OkBuckTask extends DefaultTask {
   @TaskAction
   void okbuck() {
     // Fetch Groovy support deps if needed
-    boolean hasGroovyLib =
-        okBuckExtension
-            .buckProjects
-            .stream()
-            .anyMatch(project -> ProjectUtil.getType(project) == ProjectType.GROOVY_LIB);
+    boolean hasGroovyLib = projectTypes.get().contains(ProjectType.GROOVY_LIB);
     if (hasGroovyLib) {
-      ProjectUtil.getGroovyManager(getProject()).setupGroovyHome();
+      groovyManager.setupGroovyHome();
     }
 
     // Fetch Scala support deps if needed
     String scalaLibraryLocation;
-    boolean hasScalaLib =
-        okBuckExtension
-            .buckProjects
-            .stream()
-            .anyMatch(project -> ProjectUtil.getType(project) == ProjectType.SCALA_LIB);
+    boolean hasScalaLib = projectTypes.get().contains(ProjectType.SCALA_LIB);
     if (hasScalaLib) {
-      Set<OExternalDependency> scalaDeps =
-          ProjectUtil.getScalaManager(getProject()).setupScalaHome(scalaExtension.version);
+      Set<OExternalDependency> scalaDeps = scalaManager.setupScalaHome(scalaExtension.version);
       scalaLibraryLocation =
           BuckRuleComposer.external(
               scalaDeps
@@ -112,7 +158,7 @@ public class OkBuckTask extends DefaultTask {
 
     // Fetch Kotlin deps if needed
     if (kotlinExtension.version != null) {
-      ProjectUtil.getKotlinManager(getProject()).setupKotlinHome(kotlinExtension);
+      kotlinManager.setupKotlinHome(kotlinExtension);
     }
 
     generate(
@@ -137,35 +183,34 @@ public class OkBuckTask extends DefaultTask {
 
   @OutputFile
   public File getOkbuckTargets() {
-    return getProject().file(OKBUCK_TARGETS_FILE);
+    return new File(rootProjectDir, OKBUCK_TARGETS_FILE);
   }
 
   @OutputFile
   public File getOkbuckPrebuilt() {
-    return getProject().file(OKBUCK_PREBUILT_FILE);
+    return new File(rootProjectDir, OKBUCK_PREBUILT_FILE);
   }
 
   @OutputFile
   public File getOkbuckPrebuiltBuildFile() {
-    return getProject().file(OKBUCK_PREBUILT_FOLDER + "/" + okBuckExtension.buildFileName);
+    return new File(rootProjectDir, OKBUCK_PREBUILT_FOLDER + "/" + okBuckExtension.buildFileName);
   }
 
   @OutputFile
   public File getOkbuckAndroidModules() {
-    return getProject().file(OKBUCK_ANDROID_MODULES_FILE);
+    return new File(rootProjectDir, OKBUCK_ANDROID_MODULES_FILE);
   }
 
   @OutputFile
   public File getDotBuckConfig() {
-    return getProject().file(".buckconfig");
+    return new File(rootProjectDir, ".buckconfig");
   }
 
   @OutputFile
   public File getOkbuckBuckConfig() {
-    return getProject().file(OkBuckGradlePlugin.OKBUCK_CONFIG + "/okbuck.buckconfig");
+    return new File(rootProjectDir, OkBuckGradlePlugin.OKBUCK_CONFIG + "/okbuck.buckconfig");
   }
 
-
   public OkBuckExtension getOkBuckExtension() {
     return okBuckExtension;
   }
@@ -240,7 +285,7 @@ public class OkBuckTask extends DefaultTask {
         ImmutableList.of(okbuckPrebuiltRule), getOkbuckPrebuilt(), prebuiltLoadStatements);
 
     // Ensure that a build file is present where bzl files are
-    buckFileManager.writeToBuckFile("", getOkbuckPrebuiltBuildFile(), false);
+    buckFileManager.writeToBuckFile("", getOkbuckPrebuiltBuildFile());
 
     // Setup okbuck_android_modules.bzl
     Multimap<String, String> unifiedLibsLoadStatements = TreeMultimap.create();
@@ -281,19 +326,15 @@ public class OkBuckTask extends DefaultTask {
             kotlinHome,
             scalaCompiler,
             scalaLibrary,
-            ProguardUtil.getProguardJarPath(getProject()),
-            repositoryMap(
-                okbuckExt.getExternalDependenciesExtension().shouldDownloadInBuck()
-                    && okBuckExtension
-                        .getExternalDependenciesExtension()
-                        .getGenerateMavenRepositories()))
+            proguardJarPath.getOrNull(),
+            repositories.get())
         .render(getOkbuckBuckConfig());
 
     if (okbuckExt.okBuckBuckConfig) {
       // Add entry of OkBuckBuckConfig to DotBuckConfig
       String entry =
           String.format(
-              "<file:%s>", FileUtil.getRelativePath(getProject().getRootDir(), getOkbuckBuckConfig()));
+              "<file:%s>", FileUtil.getRelativePath(rootProjectDir, getOkbuckBuckConfig()));
 
       @Var String dotBuckContent = FileUtil.readString(getDotBuckConfig());
       if (!dotBuckContent.contains(entry)) {
@@ -303,16 +344,16 @@ public class OkBuckTask extends DefaultTask {
     }
   }
 
-  private LinkedHashMap<String, String> repositoryMap(boolean downloadInBuck) {
+  private static LinkedHashMap<String, String> repositoryMap(
+      Project rootProject, boolean downloadInBuck) {
     LinkedHashMap<String, String> rawRepositories = new LinkedHashMap<>();
 
     if (!downloadInBuck) {
       return rawRepositories;
     }
 
-    addRepositories(getProject().getRootProject(), rawRepositories);
-    getProject()
-        .getRootProject()
+    addRepositories(rootProject, rawRepositories);
+    rootProject
         .getSubprojects()
         .forEach(
             subProject -> {
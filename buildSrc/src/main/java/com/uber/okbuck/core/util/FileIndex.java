@@ -0,0 +1,178 @@
+package com.uber.okbuck.core.util;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.commons.io.FilenameUtils;
+
+/**
+ * Build-wide index of the directories okbuck looks for files in, like source, resource, asset and
+ * res directories. Each directory is scanned once with a single walk, which records the files it
+ * holds, their count per extension and whether each of its subdirectories holds any file. The
+ * directories are not expected to change while okbuck runs, and the index is reset with each run.
+ */
+public final class FileIndex {
+
+  private static final String DS_STORE = ".DS_Store";
+
+  private static final Map<Path, Listing> LISTINGS = new ConcurrentHashMap<>();
+
+  // Whether the directories walked while listing others hold any file
+  private static final Map<Path, Boolean> NON_EMPTY = new ConcurrentHashMap<>();
+
+  private FileIndex() {}
+
+  /** Drops all listings. */
+  public static void reset() {
+    LISTINGS.clear();
+    NON_EMPTY.clear();
+  }
+
+  /**
+   * Lists the directories among the given files that were not walked yet, in parallel.
+   *
+   * @param files The files and directories that are about to be checked
+   */
+  public static void scan(Collection<File> files) {
+    files
+        .parallelStream()
+        .filter(File::isDirectory)
+        .map(FileIndex::normalize)
+        .filter(dir -> !NON_EMPTY.containsKey(dir))
+        .forEach(FileIndex::listing);
+  }
+
+  /**
+   * Checks whether a file exists, or in case of a directory, whether it contains any valid file.
+   *
+   * @param file The file or directory to check
+   * @return Whether the file is available
+   */
+  public static boolean isAvailable(File file) {
+    if (!file.isDirectory()) {
+      return file.exists();
+    }
+
+    Path dir = normalize(file);
+    Boolean nonEmpty = NON_EMPTY.get(dir);
+    if (nonEmpty != null) {
+      return nonEmpty;
+    }
+    return listing(dir).hasFiles();
+  }
+
+  /**
+   * Returns the files in a directory and its subdirectories.
+   *
+   * @param dir The directory
+   * @return The listing, which is empty if the directory does not exist
+   */
+  public static Listing listing(File dir) {
+    return listing(normalize(dir));
+  }
+
+  private static Listing listing(Path dir) {
+    Listing listing = LISTINGS.get(dir);
+    if (listing != null) {
+      return listing;
+    }
+
+    // Walked outside of the map, concurrent listings of the same directory keep the first one
+    Listing walked = walk(dir);
+    Listing existing = LISTINGS.putIfAbsent(dir, walked);
+    return existing != null ? existing : walked;
+  }
+
+  private static Listing walk(Path root) {
+    if (!Files.isDirectory(root)) {
+      return new Listing(ImmutableList.of(), ImmutableMap.of());
+    }
+
+    ImmutableList.Builder<String> files = ImmutableList.builder();
+    Map<String, Integer> extensions = new HashMap<>();
+    Map<Path, Boolean> nonEmpty = new HashMap<>();
+    Deque<Integer> counts = new ArrayDeque<>();
+    int[] total = {0};
+
+    try {
+      Files.walkFileTree(
+          root,
+          new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+              counts.push(total[0]);
+              return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+              String name = file.getFileName().toString();
+              if (!Files.isDirectory(file) && !name.equals(DS_STORE)) {
+                files.add(FilenameUtils.separatorsToUnix(root.relativize(file).toString()));
+                extensions.merge(FilenameUtils.getExtension(name), 1, Integer::sum);
+                total[0]++;
+              }
+              return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc)
+                throws IOException {
+              if (exc != null) {
+                throw exc;
+              }
+              nonEmpty.put(dir, total[0] > counts.pop());
+              return FileVisitResult.CONTINUE;
+            }
+          });
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+
+    NON_EMPTY.putAll(nonEmpty);
+    return new Listing(files.build(), ImmutableMap.copyOf(new TreeMap<>(extensions)));
+  }
+
+  private static Path normalize(File file) {
+    return file.toPath().toAbsolutePath().normalize();
+  }
+
+  /** The files in a directory and its subdirectories. */
+  public static final class Listing {
+
+    private final ImmutableList<String> files;
+    private final ImmutableMap<String, Integer> extensionCounts;
+
+    private Listing(ImmutableList<String> files, ImmutableMap<String, Integer> extensionCounts) {
+      this.files = files;
+      this.extensionCounts = extensionCounts;
+    }
+
+    public boolean hasFiles() {
+      return !files.isEmpty();
+    }
+
+    /** Returns the paths of the files relative to the directory, separated by '/'. */
+    public ImmutableList<String> getFiles() {
+      return files;
+    }
+
+    /** Returns the number of files per extension, without the dot. */
+    public ImmutableMap<String, Integer> getExtensionCounts() {
+      return extensionCounts;
+    }
+  }
+}
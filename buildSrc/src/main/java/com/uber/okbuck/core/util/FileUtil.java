@@ -20,7 +20,7 @@ import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.stream.Stream;
+import java.util.Map;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.NameFileFilter;
 import org.apache.commons.io.filefilter.TrueFileFilter;
@@ -32,8 +32,6 @@ public final class FileUtil {
   private static final Logger LOG = LoggerFactory.getLogger(FileUtil.class);
   private static final SymlinkCreator symlinkCreator = SymlinkCreatorFactory.getSymlinkCreator();
 
-  private static final String DS_STORE = ".DS_Store";
-
   private FileUtil() {}
 
   public static String getRelativePath(File root, File f) {
@@ -72,32 +70,24 @@ public final class FileUtil {
   }
 
   public static ImmutableSet<String> available(Project project, Collection<File> files) {
+    FileIndex.scan(files);
     return files
         .stream()
-        .filter(
-            rootFile -> {
-              if (rootFile.isDirectory() && rootFile.exists()) {
-                // Check if the directory contains any valid file
-                try (Stream<Path> fileTree = Files.walk(rootFile.toPath())) {
-                  return fileTree
-                      .filter(
-                          currentFilePath -> {
-                            File currentFile = currentFilePath.toFile();
-                            return !currentFile.isDirectory()
-                                && !currentFile.getName().equals(DS_STORE);
-                          })
-                      .iterator()
-                      .hasNext();
-                } catch (IOException e) {
-                  throw new IllegalStateException(e);
-                }
-              }
-              return rootFile.exists();
-            })
+        .filter(FileIndex::isAvailable)
         .map(f -> getRelativePath(project.getProjectDir(), f))
         .collect(MoreCollectors.toImmutableSet());
   }
 
+  /**
+   * Checks whether a file exists, or in case of a directory, whether it contains any valid file.
+   *
+   * @param rootFile The file or directory to check
+   * @return Whether the file is available
+   */
+  public static boolean isAvailable(File rootFile) {
+    return FileIndex.isAvailable(rootFile);
+  }
+
   @SuppressWarnings("EmptyCatch")
   public static void deleteQuietly(Path p) {
     try {
@@ -136,7 +126,7 @@ public final class FileUtil {
 
   public static void symlink(Path link, Path target) {
     try {
-      LOG.info("Creating symlink {} -> {}", link, target);
+      LOG.debug("Creating symlink {} -> {}", link, target);
       symlinkCreator.createSymbolicLink(link, target);
     } catch (IOException e) {
       LOG.error("Could not create symlink {} -> {}", link, target);
@@ -144,6 +134,19 @@ public final class FileUtil {
     }
   }
 
+  /**
+   * Creates symlinks, keeping existing links that already point to their target.
+   *
+   * @param links The links to create, mapped to their targets
+   */
+  public static void symlinks(Map<Path, Path> links) {
+    try {
+      symlinkCreator.createSymbolicLinks(links);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
   public static HashMap<String, String> readMapFromJsonFile(File file) throws IOException {
     Reader fileReader = Files.newBufferedReader(file.toPath(), UTF_8);
     Gson gson = new Gson();
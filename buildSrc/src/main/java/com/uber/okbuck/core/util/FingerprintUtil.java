@@ -0,0 +1,315 @@
+package com.uber.okbuck.core.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializer;
+import com.uber.okbuck.OkBuckGradlePlugin;
+import com.uber.okbuck.core.dependency.DependencyUtils;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.artifacts.DependencyConstraint;
+import org.gradle.api.artifacts.ExcludeRule;
+import org.gradle.api.artifacts.ExternalDependency;
+import org.gradle.api.artifacts.FileCollectionDependency;
+import org.gradle.api.artifacts.ModuleDependency;
+import org.gradle.api.artifacts.ProjectDependency;
+import org.gradle.api.artifacts.repositories.ArtifactRepository;
+import org.gradle.api.artifacts.repositories.IvyArtifactRepository;
+import org.gradle.api.artifacts.repositories.MavenArtifactRepository;
+import org.gradle.api.attributes.Attribute;
+import org.gradle.api.attributes.AttributeContainer;
+import org.gradle.api.capabilities.Capability;
+import org.gradle.api.tasks.Internal;
+
+/** Helpers to fingerprint the inputs of okbuck state that is reused across runs. */
+public final class FingerprintUtil {
+
+  // Directories that never hold gradle scripts applied by the build
+  private static final Set<String> SKIPPED_DIRS = ImmutableSet.of("build", "buck-out", "src");
+
+  private static final Gson GSON =
+      new GsonBuilder()
+          .setExclusionStrategies(
+              new ExclusionStrategy() {
+                @Override
+                public boolean shouldSkipField(FieldAttributes field) {
+                  return field.getAnnotation(Internal.class) != null
+                      || Project.class.isAssignableFrom(field.getDeclaredClass());
+                }
+
+                @Override
+                public boolean shouldSkipClass(Class<?> clazz) {
+                  return false;
+                }
+              })
+          .registerTypeHierarchyAdapter(
+              File.class,
+              (JsonSerializer<File>) (file, type, context) -> new JsonPrimitive(file.getPath()))
+          .create();
+
+  private FingerprintUtil() {}
+
+  /** Describes a declared dependency with everything that affects its resolution. */
+  public static String describe(Dependency dependency) {
+    StringBuilder builder =
+        new StringBuilder()
+            .append(dependency.getClass().getSimpleName())
+            .append(':')
+            .append(dependency.getGroup())
+            .append(':')
+            .append(dependency.getName())
+            .append(':')
+            .append(dependency.getVersion());
+
+    if (dependency instanceof ProjectDependency) {
+      builder.append(':').append(((ProjectDependency) dependency).getDependencyProject().getPath());
+    } else if (dependency instanceof ExternalDependency) {
+      builder.append(':').append(((ExternalDependency) dependency).getVersionConstraint());
+    } else if (dependency instanceof FileCollectionDependency) {
+      ((FileCollectionDependency) dependency)
+          .getFiles().getFiles().stream()
+              .map(File::getAbsolutePath)
+              .sorted()
+              .forEach(path -> builder.append(':').append(path));
+    }
+
+    if (dependency instanceof ModuleDependency) {
+      // Attributes and capabilities tell apart e.g. platform("x:bom:1") from "x:bom:1"
+      ModuleDependency moduleDependency = (ModuleDependency) dependency;
+      builder
+          .append(':')
+          .append(moduleDependency.isTransitive())
+          .append(':')
+          .append(moduleDependency.getTargetConfiguration());
+      moduleDependency.getArtifacts().stream()
+          .map(artifact -> artifact.getClassifier() + "." + artifact.getExtension())
+          .sorted()
+          .forEach(artifact -> builder.append(':').append(artifact));
+      moduleDependency.getExcludeRules().stream()
+          .map(FingerprintUtil::describe)
+          .sorted()
+          .forEach(rule -> builder.append(":!").append(rule));
+      describe(moduleDependency.getAttributes())
+          .forEach(attribute -> builder.append(":@").append(attribute));
+      moduleDependency.getRequestedCapabilities().stream()
+          .map(FingerprintUtil::describe)
+          .sorted()
+          .forEach(capability -> builder.append(":^").append(capability));
+    }
+    return builder.toString();
+  }
+
+  /** Describes a declared dependency constraint. */
+  public static String describe(DependencyConstraint constraint) {
+    StringBuilder builder =
+        new StringBuilder()
+            .append(constraint.getGroup())
+            .append(':')
+            .append(constraint.getName())
+            .append(':')
+            .append(constraint.getVersionConstraint());
+    describe(constraint.getAttributes())
+        .forEach(attribute -> builder.append(":@").append(attribute));
+    return builder.toString();
+  }
+
+  /**
+   * Adds everything a configuration declares that affects its resolution: its dependencies,
+   * constraints, forced modules, exclude rules, transitivity and attributes.
+   */
+  public static void putConfiguration(Hasher hasher, Configuration configuration) {
+    configuration.getAllDependencies().stream()
+        .map(FingerprintUtil::describe)
+        .sorted()
+        .forEach(description -> putString(hasher, description));
+    configuration.getAllDependencyConstraints().stream()
+        .map(FingerprintUtil::describe)
+        .sorted()
+        .forEach(description -> putString(hasher, description));
+    configuration.getResolutionStrategy().getForcedModules().stream()
+        .map(module -> module.getGroup() + ":" + module.getName() + ":" + module.getVersion())
+        .sorted()
+        .forEach(module -> putString(hasher, "force:" + module));
+    configuration.getExcludeRules().stream()
+        .map(FingerprintUtil::describe)
+        .sorted()
+        .forEach(rule -> putString(hasher, "exclude:" + rule));
+    putString(hasher, "transitive:" + configuration.isTransitive());
+    describe(configuration.getAttributes()).forEach(attribute -> putString(hasher, attribute));
+  }
+
+  /** Adds the location and timestamp of the okbuck plugin jar. */
+  public static void putPluginVersion(Hasher hasher) {
+    CodeSource codeSource = OkBuckGradlePlugin.class.getProtectionDomain().getCodeSource();
+    if (codeSource == null) {
+      return;
+    }
+    try {
+      File location = new File(codeSource.getLocation().toURI());
+      putString(hasher, location.getAbsolutePath());
+      hasher.putLong(location.length()).putLong(location.lastModified());
+    } catch (URISyntaxException e) {
+      putString(hasher, codeSource.getLocation().toString());
+    }
+  }
+
+  /** Adds the path and content of a file, which may not exist. */
+  public static void putFile(Hasher hasher, File file) {
+    putString(hasher, file.getAbsolutePath());
+    if (file.isFile()) {
+      putString(hasher, DependencyUtils.shaSum256(file));
+    } else {
+      hasher.putBoolean(false);
+    }
+  }
+
+  /**
+   * Adds the relative path and content of every gradle script in the root project directory and of
+   * the init scripts. This covers the settings script, the build scripts of all projects and the
+   * scripts they apply with {@code apply from}.
+   */
+  public static void putScripts(Hasher hasher, Project rootProject) {
+    Path root = rootProject.getProjectDir().toPath();
+    Set<Path> buildDirs =
+        rootProject.getAllprojects().stream()
+            .map(project -> project.getBuildDir().toPath())
+            .collect(Collectors.toSet());
+
+    List<Path> scripts = new ArrayList<>();
+    try {
+      Files.walkFileTree(
+          root,
+          new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+              if (dir.equals(root)) {
+                return FileVisitResult.CONTINUE;
+              }
+              String name = String.valueOf(dir.getFileName());
+              if (name.startsWith(".") || SKIPPED_DIRS.contains(name) || buildDirs.contains(dir)) {
+                return FileVisitResult.SKIP_SUBTREE;
+              }
+              return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+              String name = String.valueOf(file.getFileName());
+              if (name.endsWith(".gradle") || name.endsWith(".gradle.kts")) {
+                scripts.add(file);
+              }
+              return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+              return FileVisitResult.CONTINUE;
+            }
+          });
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not list the gradle scripts in " + root, e);
+    }
+
+    scripts.stream()
+        .sorted()
+        .forEach(
+            script -> {
+              putString(hasher, root.relativize(script).toString());
+              putString(hasher, DependencyUtils.shaSum256(script.toFile()));
+            });
+    rootProject.getGradle().getStartParameter().getAllInitScripts().stream()
+        .sorted()
+        .forEach(script -> putFile(hasher, script));
+  }
+
+  /** Adds the values of an extension, skipping internal and project fields. */
+  public static void putJson(Hasher hasher, Object extension) {
+    putJson(hasher, extension, extension.getClass());
+  }
+
+  public static void putJson(Hasher hasher, Object extension, Class<?> type) {
+    putString(hasher, type.getName());
+    putString(hasher, canonical(GSON.toJsonTree(extension, type)).toString());
+  }
+
+  /** Adds the name and locations of a repository. */
+  public static void putRepository(Hasher hasher, ArtifactRepository repository) {
+    putString(hasher, repository.getName());
+    if (repository instanceof MavenArtifactRepository) {
+      MavenArtifactRepository maven = (MavenArtifactRepository) repository;
+      putString(hasher, String.valueOf(maven.getUrl()));
+      maven.getArtifactUrls().forEach(url -> putString(hasher, url.toString()));
+    } else if (repository instanceof IvyArtifactRepository) {
+      putString(hasher, String.valueOf(((IvyArtifactRepository) repository).getUrl()));
+    }
+  }
+
+  /** Returns a fingerprint of the repositories of a project. */
+  public static String repositoriesFingerprint(Project project) {
+    Hasher hasher = Hashing.sha256().newHasher();
+    project.getRepositories().forEach(repository -> putRepository(hasher, repository));
+    return hasher.hash().toString();
+  }
+
+  /** Adds a string, terminated so that consecutive strings can't be confused. */
+  public static void putString(Hasher hasher, String value) {
+    hasher.putString(value, UTF_8).putChar('\0');
+  }
+
+  private static String describe(Capability capability) {
+    return capability.getGroup() + ":" + capability.getName() + ":" + capability.getVersion();
+  }
+
+  private static String describe(ExcludeRule rule) {
+    return rule.getGroup() + "/" + rule.getModule();
+  }
+
+  private static List<String> describe(AttributeContainer attributes) {
+    return attributes.keySet().stream()
+        .sorted(Comparator.comparing(Attribute::getName))
+        .map(attribute -> attribute.getName() + "=" + attributes.getAttribute(attribute))
+        .collect(Collectors.toList());
+  }
+
+  private static JsonElement canonical(JsonElement element) {
+    if (element.isJsonObject()) {
+      JsonObject sorted = new JsonObject();
+      element.getAsJsonObject().entrySet().stream()
+          .sorted(Map.Entry.comparingByKey())
+          .forEach(entry -> sorted.add(entry.getKey(), canonical(entry.getValue())));
+      return sorted;
+    } else if (element.isJsonArray()) {
+      JsonArray array = new JsonArray();
+      element.getAsJsonArray().forEach(item -> array.add(canonical(item)));
+      return array;
+    }
+    return element;
+  }
+}
@@ -11,36 +11,35 @@ import com.uber.okbuck.core.annotation.AnnotationProcessorCache;
 import com.uber.okbuck.core.dependency.DependencyCache;
 import com.uber.okbuck.core.dependency.DependencyFactory;
 import com.uber.okbuck.core.dependency.DependencyUtils;
+import com.uber.okbuck.core.dependency.JarMetadataIndex;
+import com.uber.okbuck.core.dependency.ResolvedConfigurationCache;
+import com.uber.okbuck.core.dependency.SourcesResolver;
 import com.uber.okbuck.core.manager.DependencyManager;
 import com.uber.okbuck.core.manager.GroovyManager;
+import com.uber.okbuck.core.manager.IncrementalManager;
 import com.uber.okbuck.core.manager.KotlinManager;
 import com.uber.okbuck.core.manager.LintManager;
 import com.uber.okbuck.core.manager.ScalaManager;
 import com.uber.okbuck.core.manager.TransformManager;
+import com.uber.okbuck.core.model.android.VariantSelector;
 import com.uber.okbuck.core.model.base.ProjectType;
+import com.uber.okbuck.core.model.base.SharedScopeCache;
 import com.uber.okbuck.extension.ExternalDependenciesExtension;
 import com.uber.okbuck.extension.OkBuckExtension;
 import java.io.File;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import javax.annotation.Nullable;
 import org.apache.commons.io.FilenameUtils;
 import org.gradle.api.Project;
 import org.gradle.api.artifacts.component.ComponentIdentifier;
 import org.gradle.api.artifacts.component.ModuleComponentIdentifier;
-import org.gradle.api.artifacts.dsl.DependencyHandler;
-import org.gradle.api.artifacts.result.ComponentArtifactsResult;
 import org.gradle.api.artifacts.result.ResolvedArtifactResult;
-import org.gradle.api.component.Artifact;
 import org.gradle.api.plugins.GroovyPlugin;
 import org.gradle.api.plugins.JavaPlugin;
 import org.gradle.api.plugins.PluginContainer;
 import org.gradle.api.plugins.scala.ScalaPlugin;
-import org.gradle.jvm.JvmLibrary;
-import org.gradle.language.base.artifact.SourcesArtifact;
 import org.jetbrains.kotlin.gradle.plugin.KotlinPluginWrapper;
 
 public final class ProjectUtil {
@@ -107,6 +106,30 @@ public final class ProjectUtil {
     return getPlugin(project).transformManager;
   }
 
+  public static IncrementalManager getIncrementalManager(Project project) {
+    return getPlugin(project).incrementalManager;
+  }
+
+  public static ResolvedConfigurationCache getResolvedConfigurationCache(Project project) {
+    return getPlugin(project).resolvedConfigurationCache;
+  }
+
+  public static SharedScopeCache getSharedScopeCache(Project project) {
+    return getPlugin(project).sharedScopeCache;
+  }
+
+  public static VariantSelector getVariantSelector(Project project) {
+    return getPlugin(project).variantSelector;
+  }
+
+  public static JarMetadataIndex getJarMetadataIndex(Project project) {
+    return getPlugin(project).jarMetadataIndex;
+  }
+
+  public static SourcesResolver getSourcesResolver(Project project) {
+    return getPlugin(project).sourcesResolver;
+  }
+
   public static OkBuckGradlePlugin getPlugin(Project project) {
     return project.getRootProject().getPlugins().getPlugin(OkBuckGradlePlugin.class);
   }
@@ -147,76 +170,9 @@ public final class ProjectUtil {
         .orElse(null);
   }
 
-  /*
-   * Copyright (C) 2017 The Android Open Source Project
-   *
-   * Licensed under the Apache License, Version 2.0 (the "License");
-   * you may not use this file except in compliance with the License.
-   * You may obtain a copy of the License at
-   *
-   *      http://www.apache.org/licenses/LICENSE-2.0
-   *
-   * Unless required by applicable law or agreed to in writing, software
-   * distributed under the License is distributed on an "AS IS" BASIS,
-   * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
-   * See the License for the specific language governing permissions and
-   * limitations under the License.
-   */
-  // Copied from AGP 3.1.0 ArtifactDependencyGraph
-  public static Map<ComponentIdentifier, ResolvedArtifactResult> downloadSources(
+  public static Map<ComponentIdentifier, File> downloadSources(
       Project project, Set<ResolvedArtifactResult> artifacts) {
-
-    // Download sources if enabled via intellij extension
-    if (!ProjectUtil.getOkBuckExtension(project).getIntellijExtension().downloadSources()) {
-      return new HashMap<>();
-    }
-
-    DependencyHandler dependencies = project.getDependencies();
-
-    try {
-      Set<ComponentIdentifier> identifiers =
-          artifacts
-              .stream()
-              .filter(artifact -> canHaveSources(artifact.getFile()))
-              .map(artifact -> artifact.getId().getComponentIdentifier())
-              .collect(Collectors.toSet());
-
-      @SuppressWarnings("unchecked")
-      Class<? extends Artifact>[] artifactTypesArray =
-          (Class<? extends Artifact>[]) new Class<?>[] {SourcesArtifact.class};
-
-      Set<ComponentArtifactsResult> results =
-          dependencies
-              .createArtifactResolutionQuery()
-              .forComponents(identifiers)
-              .withArtifacts(JvmLibrary.class, artifactTypesArray)
-              .execute()
-              .getResolvedComponents();
-
-      // Only has one type.
-      Class<? extends Artifact> type = artifactTypesArray[0];
-
-      return results
-          .stream()
-          .map(artifactsResult -> artifactsResult.getArtifacts(type))
-          .flatMap(Set::stream)
-          .filter(artifactResult -> artifactResult instanceof ResolvedArtifactResult)
-          .map(artifactResult -> (ResolvedArtifactResult) artifactResult)
-          .filter(artifactResult -> FileUtil.isZipFile(artifactResult.getFile()))
-          .collect(
-              Collectors.toMap(
-                  resolvedArtifact -> resolvedArtifact.getId().getComponentIdentifier(),
-                  resolvedArtifact -> resolvedArtifact));
-
-    } catch (Throwable t) {
-      System.out.println(
-          "Unable to download sources for project "
-              + project.toString()
-              + " with error "
-              + t.toString());
-
-      return new HashMap<>();
-    }
+    return getSourcesResolver(project).resolve(project, artifacts);
   }
 
   public static boolean canHaveSources(File dependencyFile) {
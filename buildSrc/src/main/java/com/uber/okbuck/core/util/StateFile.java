@@ -0,0 +1,106 @@
+package com.uber.okbuck.core.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A json file in .okbuck/state holding entries reused by the next run. The entries are stored along
+ * with the version of their format, and entries of another version are ignored, so that a changed
+ * format only costs a full run.
+ *
+ * @param <T> The type of the entries
+ */
+public final class StateFile<T> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(StateFile.class);
+
+  private static final Gson GSON = new Gson();
+
+  private final File file;
+  private final int version;
+  private final Type envelopeType;
+  private final String description;
+
+  /**
+   * Creates a state file.
+   *
+   * @param file The file
+   * @param version The version of the format of the entries. Bump whenever it changes.
+   * @param entriesType The type of the entries, e.g. from a {@link TypeToken}
+   * @param description What the file holds, used in log messages
+   */
+  public StateFile(File file, int version, Type entriesType, String description) {
+    this.file = file;
+    this.version = version;
+    this.envelopeType = TypeToken.getParameterized(Envelope.class, entriesType).getType();
+    this.description = description;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Reads the entries written by the last run.
+   *
+   * @return The entries, or null if the file is missing, unreadable or of another version
+   */
+  @Nullable
+  public T read() {
+    if (!file.isFile()) {
+      return null;
+    }
+
+    try (Reader reader = Files.newBufferedReader(file.toPath(), UTF_8)) {
+      Envelope<T> envelope = GSON.fromJson(reader, envelopeType);
+      if (envelope == null || envelope.version != version) {
+        return null;
+      }
+      return envelope.entries;
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Ignoring unreadable {} {}", description, file, e);
+      return null;
+    }
+  }
+
+  /**
+   * Writes the entries for the next run.
+   *
+   * @param entries The entries
+   */
+  public void write(T entries) {
+    Envelope<T> envelope = new Envelope<>();
+    envelope.version = version;
+    envelope.entries = entries;
+
+    try {
+      Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+      try (Writer writer = Files.newBufferedWriter(file.toPath(), UTF_8)) {
+        GSON.toJson(envelope, envelopeType, writer);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Couldn't write " + file, e);
+    }
+  }
+
+  /** Deletes the file, so that the next run starts without any entries. */
+  public void delete() {
+    FileUtil.deleteQuietly(file.toPath());
+  }
+
+  private static final class Envelope<T> {
+    private int version;
+    @Nullable private T entries;
+  }
+}
@@ -0,0 +1,164 @@
+package com.uber.okbuck.core.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records nested spans of okbuck work and writes them in the chrome trace event format, which can
+ * be loaded in chrome://tracing or https://ui.perfetto.dev. Spans are recorded per thread so that
+ * project tasks running in parallel show up as separate lanes.
+ */
+public final class Tracer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(Tracer.class);
+
+  private static final String CATEGORY = "okbuck";
+  private static final Span NOOP = () -> {};
+
+  @Nullable private static volatile Recording recording;
+
+  private Tracer() {}
+
+  /** Starts recording spans, dropping the spans of any previous recording. */
+  public static void start() {
+    recording = new Recording();
+  }
+
+  /** Drops any spans left over from a recording that was not stopped, e.g. by a failed build. */
+  public static void discard() {
+    recording = null;
+  }
+
+  /**
+   * Stops recording and writes the recorded spans to the given file. Does nothing if no recording
+   * was started.
+   *
+   * @param traceFile The file to write the trace to
+   */
+  public static void stop(File traceFile) {
+    Recording current = recording;
+    recording = null;
+    if (current == null) {
+      return;
+    }
+
+    List<Event> events = new ArrayList<>();
+    current.threadNames.forEach(
+        (tid, name) ->
+            events.add(new Event("thread_name", "M", 0, null, tid, ImmutableMap.of("name", name))));
+    events.addAll(current.events);
+
+    try {
+      traceFile.getParentFile().mkdirs();
+      try (Writer writer = Files.newBufferedWriter(traceFile.toPath(), UTF_8)) {
+        new Gson().toJson(ImmutableMap.of("traceEvents", events), writer);
+      }
+      LOG.info("Wrote {} trace events to {}", current.events.size(), traceFile);
+    } catch (IOException e) {
+      throw new IllegalStateException("Couldn't write trace to " + traceFile, e);
+    }
+  }
+
+  /**
+   * Opens a span on the current thread that ends when the returned span is closed.
+   *
+   * @param name The name of the span
+   * @return The span, which is a no-op when not recording
+   */
+  public static Span span(String name) {
+    return span(name, null);
+  }
+
+  /**
+   * Opens a span on the current thread that ends when the returned span is closed.
+   *
+   * @param name The name of the span
+   * @param detail Detail shown with the span, e.g. the project or file it is for
+   * @return The span, which is a no-op when not recording
+   */
+  public static Span span(String name, @Nullable String detail) {
+    Recording current = recording;
+    if (current == null) {
+      return NOOP;
+    }
+
+    Thread thread = Thread.currentThread();
+    long tid = thread.getId();
+    current.threadNames.putIfAbsent(tid, thread.getName());
+    long start = System.nanoTime();
+    return () ->
+        current.events.add(
+            new Event(
+                name,
+                "X",
+                current.micros(start),
+                current.micros(System.nanoTime()) - current.micros(start),
+                tid,
+                detail != null ? ImmutableMap.of("detail", detail) : null));
+  }
+
+  /** A span that ends when closed. */
+  public interface Span extends AutoCloseable {
+
+    @Override
+    void close();
+  }
+
+  private static final class Recording {
+
+    private final long startNanos = System.nanoTime();
+    private final Queue<Event> events = new ConcurrentLinkedQueue<>();
+    private final Map<Long, String> threadNames = new ConcurrentHashMap<>();
+
+    private long micros(long nanos) {
+      return TimeUnit.NANOSECONDS.toMicros(nanos - startNanos);
+    }
+  }
+
+  /** A trace event, serialized with the field names of the chrome trace event format. */
+  @SuppressWarnings("unused")
+  private static final class Event {
+
+    private final String name;
+    private final String cat;
+    private final String ph;
+    private final long ts;
+    @Nullable private final Long dur;
+    private final int pid;
+    private final long tid;
+    @Nullable private final Map<String, String> args;
+
+    private Event(
+        String name,
+        String ph,
+        long ts,
+        @Nullable Long dur,
+        long tid,
+        @Nullable Map<String, String> args) {
+      this.name = name;
+      this.cat = CATEGORY;
+      this.ph = ph;
+      this.ts = ts;
+      this.dur = dur;
+      this.pid = 1;
+      this.tid = tid;
+      this.args = args;
+    }
+  }
+}
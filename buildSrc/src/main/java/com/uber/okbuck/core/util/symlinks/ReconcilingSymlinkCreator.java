@@ -0,0 +1,125 @@
+package com.uber.okbuck.core.util.symlinks;
+
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates symbolic links without assuming their location was cleaned before. Links that already
+ * point to their target are kept as they are, and anything else at the location of a link is
+ * replaced. Links created together are reconciled in parallel batches.
+ */
+public class ReconcilingSymlinkCreator implements SymlinkCreator {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ReconcilingSymlinkCreator.class);
+
+  private static final int BATCH_SIZE = 256;
+
+  private final SymlinkCreator delegate;
+
+  private final LongAdder kept = new LongAdder();
+  private final LongAdder created = new LongAdder();
+  private final LongAdder replaced = new LongAdder();
+
+  /**
+   * Creates a reconciling creator.
+   *
+   * @param delegate Creates the links that are missing or need to be replaced
+   */
+  public ReconcilingSymlinkCreator(SymlinkCreator delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public void createSymbolicLink(Path symlink, Path target) throws IOException {
+    if (Files.isSymbolicLink(symlink)) {
+      if (Files.readSymbolicLink(symlink).equals(target)) {
+        kept.increment();
+        return;
+      }
+      Files.delete(symlink);
+      replaced.increment();
+    } else if (Files.exists(symlink, LinkOption.NOFOLLOW_LINKS)) {
+      Files.delete(symlink);
+      replaced.increment();
+    } else {
+      created.increment();
+    }
+    delegate.createSymbolicLink(symlink, target);
+  }
+
+  @Override
+  public void createSymbolicLinks(Map<Path, Path> symlinks) throws IOException {
+    long keptBefore = kept.sum();
+    long createdBefore = created.sum();
+    long replacedBefore = replaced.sum();
+
+    List<List<Map.Entry<Path, Path>>> batches = new ArrayList<>();
+    Iterables.partition(symlinks.entrySet(), BATCH_SIZE).forEach(batches::add);
+    if (batches.size() <= 1) {
+      for (Map.Entry<Path, Path> symlink : symlinks.entrySet()) {
+        createSymbolicLink(symlink.getKey(), symlink.getValue());
+      }
+    } else {
+      createInParallel(batches);
+    }
+
+    LOG.info(
+        "Symlinks: {} kept, {} created, {} replaced",
+        kept.sum() - keptBefore,
+        created.sum() - createdBefore,
+        replaced.sum() - replacedBefore);
+  }
+
+  private void createInParallel(List<List<Map.Entry<Path, Path>>> batches) throws IOException {
+    int threads = Math.min(batches.size(), Runtime.getRuntime().availableProcessors());
+    ExecutorService executor =
+        Executors.newFixedThreadPool(
+            threads, new ThreadFactoryBuilder().setNameFormat("okbuck-symlink-%d").build());
+    try {
+      List<CompletableFuture<Void>> futures =
+          batches
+              .stream()
+              .map(batch -> CompletableFuture.runAsync(() -> createBatch(batch), executor))
+              .collect(Collectors.toList());
+      CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause() != null ? e.getCause() : e;
+      if (cause instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) cause).getCause();
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IllegalStateException(cause);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void createBatch(List<Map.Entry<Path, Path>> batch) {
+    for (Map.Entry<Path, Path> symlink : batch) {
+      try {
+        createSymbolicLink(symlink.getKey(), symlink.getValue());
+      } catch (IOException e) {
+        throw new UncheckedIOException(
+            "Could not create symlink " + symlink.getKey() + " -> " + symlink.getValue(), e);
+      }
+    }
+  }
+}
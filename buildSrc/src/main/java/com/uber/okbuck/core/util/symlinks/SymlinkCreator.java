@@ -2,7 +2,19 @@ package com.uber.okbuck.core.util.symlinks;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Map;
 
 public interface SymlinkCreator {
   void createSymbolicLink(Path symlink, Path target) throws IOException;
+
+  /**
+   * Creates symbolic links, one at a time unless the creator supports creating them in parallel.
+   *
+   * @param symlinks The links to create, mapped to their targets
+   */
+  default void createSymbolicLinks(Map<Path, Path> symlinks) throws IOException {
+    for (Map.Entry<Path, Path> symlink : symlinks.entrySet()) {
+      createSymbolicLink(symlink.getKey(), symlink.getValue());
+    }
+  }
 }
@@ -5,6 +5,6 @@ public final class SymlinkCreatorFactory {
   private SymlinkCreatorFactory() {}
 
   public static SymlinkCreator getSymlinkCreator() {
-    return new GeneralSymlinkCreator();
+    return new ReconcilingSymlinkCreator(new GeneralSymlinkCreator());
   }
 }
@@ -3,4 +3,50 @@ package com.uber.okbuck.extension;
 import com.uber.okbuck.core.annotation.Experimental;
 
 @Experimental
-public class ExperimentalExtension {}
+public class ExperimentalExtension {
+
+  /**
+   * Resolve the annotation processors of all projects together in a few combined passes, and split
+   * the result into the dependencies of each processor.
+   */
+  public boolean batchedProcessorScopes = false;
+
+  /**
+   * Skip regenerating the build file of projects whose inputs and upstream projects have not
+   * changed since the last run.
+   */
+  public boolean incremental = false;
+
+  /**
+   * Regenerate only the directories of the external dependency cache whose dependencies changed
+   * since the last run, instead of cleaning the whole cache.
+   */
+  public boolean incrementalExternalCache = false;
+
+  /**
+   * Resolve the configuration of a scope only when a rule needs its dependencies, instead of when
+   * the scope is created.
+   */
+  public boolean lazyScopes = false;
+
+  /**
+   * Run the finalize step of independent managers concurrently once all build files are
+   * generated.
+   */
+  public boolean parallelFinalize = false;
+
+  /**
+   * Cache the resolved dependencies of each configuration in .okbuck/state and reuse them while
+   * the declared dependencies, constraints and repositories of the configuration did not change.
+   */
+  public boolean resolutionCache = false;
+
+  /**
+   * Resolve configurations of different projects with the same declared dependencies, attributes
+   * and repositories once per build, and share their dependencies between scopes.
+   */
+  public boolean sharedScopeCache = false;
+
+  /** Record the time spent in each phase of okbuck to a chrome trace file in .okbuck/state. */
+  public boolean trace = false;
+}
@@ -10,6 +10,9 @@ public class ExportDependenciesExtension {
   @Input private boolean enabled = false;
   @Input @Optional private String file = ".okbuck/raw-deps";
 
+  /** Format of the export: a json array of the raw dependencies, or ndjson records. */
+  @Input @Optional private String format = "json";
+
   private final String projectRoot;
 
   public ExportDependenciesExtension(Project project) {
@@ -20,6 +23,10 @@ public class ExportDependenciesExtension {
     return enabled;
   }
 
+  public String getFormat() {
+    return format;
+  }
+
   public String getFile() {
     return Paths.get(projectRoot, file).toString();
   }
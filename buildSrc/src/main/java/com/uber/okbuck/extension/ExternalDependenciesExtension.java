@@ -76,7 +76,7 @@ public class ExternalDependenciesExtension {
   /** Map of dependency coordinates to labels for prebuilt rules */
   @Input private Map<String, List<String>> labelsMap = new HashMap<>();
 
-  @Nullable private Set<VersionlessDependency> allowAllVersionsSet;
+  @Nullable private transient Set<VersionlessDependency> allowAllVersionsSet;
 
   public ExternalDependenciesExtension() {}
 
@@ -50,7 +50,7 @@ public class JetifierExtension {
 
   private final boolean enableJetifier;
 
-  @Nullable private List<Pattern> excludePatterns;
+  @Nullable private transient List<Pattern> excludePatterns;
 
   JetifierExtension(Project project) {
     version = DEFAULT_JETIFIER_VERSION;
@@ -110,6 +110,7 @@ public class OkBuckExtension {
   @Internal private final ExperimentalExtension experimentalExtension = new ExperimentalExtension();
   @Internal private final TestExtension testExtension = new TestExtension();
   @Internal private final TransformExtension transformExtension = new TransformExtension();
+  @Internal private final VariantExtension variantExtension = new VariantExtension();
   @Internal private final LintExtension lintExtension;
   @Internal private final JetifierExtension jetifierExtension;
 
@@ -203,6 +204,14 @@ public class OkBuckExtension {
     return transformExtension;
   }
 
+  public void variants(Action<VariantExtension> container) {
+    container.execute(variantExtension);
+  }
+
+  public VariantExtension getVariantExtension() {
+    return variantExtension;
+  }
+
   public void externalDependencies(Action<ExternalDependenciesExtension> container) {
     container.execute(externalDependenciesExtension);
   }
@@ -0,0 +1,25 @@
+package com.uber.okbuck.extension;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class VariantExtension {
+
+  /**
+   * Patterns of the android variants to generate rules for. A pattern matches a variant if it
+   * matches the name, build type or one of the flavors of the variant, and can use '*' and '?'
+   * wildcards. Default is all variants.
+   */
+  public List<String> include = new ArrayList<>();
+
+  /** Patterns of the android variants to skip, even if they match an include pattern. */
+  public List<String> exclude = new ArrayList<>();
+
+  /** Include patterns of specific projects, by project identifier. Replace include. */
+  public Map<String, List<String>> projectInclude = new HashMap<>();
+
+  /** Exclude patterns of specific projects, by project identifier. Replace exclude. */
+  public Map<String, List<String>> projectExclude = new HashMap<>();
+}
@@ -27,6 +27,7 @@ import com.uber.okbuck.core.model.base.RuleType;
 import com.uber.okbuck.core.model.jvm.JvmTarget;
 import com.uber.okbuck.core.util.ProjectCache;
 import com.uber.okbuck.core.util.ProjectUtil;
+import com.uber.okbuck.core.util.Tracer;
 import com.uber.okbuck.extension.OkBuckExtension;
 import com.uber.okbuck.extension.TestExtension;
 import com.uber.okbuck.extension.VisibilityExtension;
@@ -48,6 +49,13 @@ public final class BuckFileGenerator {
   /** generate {@code BUCKFile} */
   public static void generate(
       Project project, BuckFileManager buckFileManager, OkBuckExtension okBuckExtension) {
+    try (Tracer.Span ignored = Tracer.span("BuckFileGenerator.generate", project.getPath())) {
+      generateBuckFile(project, buckFileManager, okBuckExtension);
+    }
+  }
+
+  private static void generateBuckFile(
+      Project project, BuckFileManager buckFileManager, OkBuckExtension okBuckExtension) {
 
     VisibilityExtension visibilityExtension = okBuckExtension.getVisibilityExtension();
     TestExtension testExtension = okBuckExtension.getTestExtension();
@@ -68,7 +76,7 @@ public final class BuckFileGenerator {
     }
 
     File buckFile = project.file(okBuckExtension.buildFileName);
-    buckFileManager.writeToBuckFile(rules, buckFile, extraLoadStatements);
+    buckFileManager.writeToAppendableBuckFile(rules, buckFile, extraLoadStatements);
   }
 
   private static List<Rule> createRules(Project project, boolean integrationTestsEnabled) {
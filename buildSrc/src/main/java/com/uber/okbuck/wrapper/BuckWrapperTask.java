@@ -31,6 +31,8 @@ public class BuckWrapperTask extends DefaultTask {
 
   private final File wrapper = getProject().file("buckw");
 
+  private final File watchmanConfig = getProject().file(".watchmanconfig");
+
   @Inject
   public BuckWrapperTask(
       String repo, Set<String> watch, Set<String> sourceRoots, Set<String> ignoredDirs) {
@@ -50,10 +52,8 @@ public class BuckWrapperTask extends DefaultTask {
         .render(wrapper);
     wrapper.setExecutable(true);
 
-    File watchmanConfig = getProject().file(".watchmanconfig");
     if (!watchmanConfig.exists()) {
-      FileUtil.copyResourceToProject(
-          "wrapper/WATCHMAN_CONFIG", getProject().file(".watchmanconfig"));
+      FileUtil.copyResourceToProject("wrapper/WATCHMAN_CONFIG", watchmanConfig);
     }
   }
 
@@ -0,0 +1,168 @@
+package com.uber.okbuck.template.core;
+
+import com.google.common.io.ByteSource;
+import com.google.common.io.MoreFiles;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes generated files only when their content changes, so that unchanged files keep their
+ * modification time and buck does not need to parse them again. Content is rendered into a per
+ * thread buffer, compared against the existing file and, if different, written to a temporary
+ * file that atomically replaces the existing one.
+ */
+public final class FileEmitter {
+
+  private static final ThreadLocal<Buffer> BUFFER = ThreadLocal.withInitial(Buffer::new);
+
+  // Files emitted since the last reset, mapped to whether any of their emits wrote them
+  private static final Map<File, Boolean> EMITTED = new ConcurrentHashMap<>();
+  private static final AtomicInteger DELETED = new AtomicInteger();
+
+  private FileEmitter() {}
+
+  /**
+   * Writes the content to the file unless the file already has the exact same content.
+   *
+   * @param file The file to write
+   * @param content The content of the file
+   */
+  public static void emit(File file, Content content) {
+    write(file, render(content), false);
+  }
+
+  /**
+   * Writes the content to the file unless the file already starts with it. Anything following
+   * the content in the existing file is kept, and is expected to be reconciled by a later {@link
+   * #emit} of the file.
+   *
+   * @param file The file to write
+   * @param content The content of the file
+   * @return The length of the content
+   */
+  public static long emitPrefix(File file, Content content) {
+    Buffer buffer = render(content);
+    write(file, buffer, true);
+    return buffer.size();
+  }
+
+  /**
+   * Deletes a generated file if it exists.
+   *
+   * @param file The file to delete
+   */
+  public static void delete(Path file) {
+    try {
+      if (Files.deleteIfExists(file)) {
+        DELETED.incrementAndGet();
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Couldn't delete " + file, e);
+    }
+  }
+
+  /** Resets the counts of written, unchanged and deleted files. */
+  public static void reset() {
+    EMITTED.clear();
+    DELETED.set(0);
+  }
+
+  /**
+   * Returns the counts of written, unchanged and deleted files since the last reset. A file emitted
+   * more than once counts as written if any of its emits wrote it.
+   */
+  public static String summary() {
+    long written = EMITTED.values().stream().filter(Boolean::booleanValue).count();
+    return String.format(
+        "%d files written, %d unchanged, %d deleted",
+        written,
+        EMITTED.size() - written,
+        DELETED.get());
+  }
+
+  private static Buffer render(Content content) {
+    Buffer buffer = BUFFER.get();
+    buffer.reset();
+    try {
+      content.writeTo(buffer);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    return buffer;
+  }
+
+  private static void write(File file, Buffer buffer, boolean prefix) {
+    long length = file.length();
+    try {
+      if (file.isFile()
+          && (prefix ? length >= buffer.size() : length == buffer.size())
+          && buffer.contentEquals(MoreFiles.asByteSource(file.toPath()).slice(0, buffer.size()))) {
+        EMITTED.merge(file, false, Boolean::logicalOr);
+      } else {
+        replace(file, buffer);
+        EMITTED.put(file, true);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Couldn't write " + file, e);
+    }
+  }
+
+  private static void replace(File file, Buffer buffer) throws IOException {
+    File parent = file.getAbsoluteFile().getParentFile();
+    if (!parent.exists() && !parent.mkdirs()) {
+      throw new IllegalStateException("Couldn't create dir: " + parent);
+    }
+
+    // Created next to the file so that it can be renamed over it
+    File temp =
+        new File(parent, "." + file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+    try {
+      try (OutputStream os = new FileOutputStream(temp)) {
+        buffer.writeTo(os);
+      }
+      if (file.canExecute()) {
+        temp.setExecutable(true);
+      }
+      try {
+        Files.move(
+            temp.toPath(),
+            file.toPath(),
+            StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temp.toPath());
+    }
+  }
+
+  /** Content of a generated file. */
+  @FunctionalInterface
+  public interface Content {
+
+    void writeTo(OutputStream os) throws IOException;
+  }
+
+  /** A reusable buffer that can be compared against files without copying its bytes. */
+  private static final class Buffer extends ByteArrayOutputStream {
+
+    private Buffer() {
+      super(8192);
+    }
+
+    private boolean contentEquals(ByteSource source) throws IOException {
+      return ByteSource.wrap(buf).slice(0, count).contentEquals(source);
+    }
+  }
+}
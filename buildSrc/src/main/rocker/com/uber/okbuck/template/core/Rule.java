@@ -5,8 +5,6 @@ import com.fizzed.rocker.runtime.OutputStreamOutput;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.OutputStream;
 import java.nio.file.Path;
 import java.util.Collection;
@@ -103,12 +101,7 @@ public abstract class Rule<T extends Rule> extends DefaultRockerModel {
   }
 
   public void render(File file) {
-    try {
-      file.getParentFile().mkdirs();
-      render(new FileOutputStream(file));
-    } catch (FileNotFoundException e) {
-      throw new IllegalStateException(e);
-    }
+    FileEmitter.emit(file, this::render);
   }
 
   protected static ImmutableSortedSet<String> sorted(Collection c) {
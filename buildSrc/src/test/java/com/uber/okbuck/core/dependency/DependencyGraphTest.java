@@ -0,0 +1,102 @@
+package com.uber.okbuck.core.dependency;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.List;
+import org.junit.Test;
+
+public class DependencyGraphTest {
+
+  @Test
+  public void freeze_withTransitiveChildren_includesReachableDependencies() {
+    // Arrange
+    OExternalDependency a = dependency();
+    OExternalDependency b = dependency();
+    OExternalDependency c = dependency();
+    when(a.getDeps()).thenReturn(ImmutableSet.of(b));
+    when(b.getDeps()).thenReturn(ImmutableSet.of(c));
+
+    // Act
+    DependencyGraph graph = DependencyGraph.freeze(ImmutableList.of(a));
+
+    // Assert
+    assertEquals(3, graph.size());
+    assertEquals(ImmutableList.of(b), graph.children(a));
+    assertEquals(ImmutableList.of(c), graph.children(b));
+    assertTrue(graph.children(c).isEmpty());
+  }
+
+  @Test
+  public void children_withChildrenChangedAfterFreeze_returnsFrozenChildren() {
+    // Arrange
+    OExternalDependency a = dependency();
+    OExternalDependency b = dependency();
+    OExternalDependency c = dependency();
+    when(a.getDeps()).thenReturn(ImmutableSet.of(b));
+    DependencyGraph graph = DependencyGraph.freeze(ImmutableList.of(a, c));
+    when(a.getDeps()).thenReturn(ImmutableSet.of(b, c));
+
+    // Act
+    List<OExternalDependency> children = graph.children(a);
+
+    // Assert
+    assertEquals(ImmutableList.of(b), children);
+  }
+
+  @Test
+  public void transitiveChildren_withDiamond_returnsEachDependencyOnceBreadthFirst() {
+    // Arrange
+    OExternalDependency a = dependency();
+    OExternalDependency b = dependency();
+    OExternalDependency c = dependency();
+    OExternalDependency d = dependency();
+    when(a.getDeps()).thenReturn(ImmutableSet.of(b, c));
+    when(b.getDeps()).thenReturn(ImmutableSet.of(d));
+    when(c.getDeps()).thenReturn(ImmutableSet.of(d));
+    DependencyGraph graph = DependencyGraph.freeze(ImmutableList.of(a));
+
+    // Act
+    List<OExternalDependency> transitive = graph.transitiveChildren(a);
+
+    // Assert
+    assertEquals(ImmutableList.of(b, c, d), transitive);
+  }
+
+  @Test
+  public void transitiveChildren_withCycle_includesDependency() {
+    // Arrange
+    OExternalDependency a = dependency();
+    OExternalDependency b = dependency();
+    when(a.getDeps()).thenReturn(ImmutableSet.of(b));
+    when(b.getDeps()).thenReturn(ImmutableSet.of(a));
+    DependencyGraph graph = DependencyGraph.freeze(ImmutableList.of(a));
+
+    // Act
+    List<OExternalDependency> transitive = graph.transitiveChildren(a);
+
+    // Assert
+    assertEquals(2, graph.size());
+    assertEquals(ImmutableList.of(b, a), transitive);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void children_withDependencyNotInGraph_throwsException() {
+    // Arrange
+    OExternalDependency a = dependency();
+    DependencyGraph graph = DependencyGraph.freeze(ImmutableList.of(a));
+
+    // Act
+    graph.children(dependency());
+  }
+
+  private static OExternalDependency dependency() {
+    OExternalDependency dependency = mock(OExternalDependency.class);
+    when(dependency.getDeps()).thenReturn(ImmutableSet.of());
+    return dependency;
+  }
+}
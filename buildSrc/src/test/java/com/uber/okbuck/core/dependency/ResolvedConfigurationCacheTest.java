@@ -0,0 +1,202 @@
+package com.uber.okbuck.core.dependency;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.uber.okbuck.core.dependency.ResolvedConfigurationCache.Entry;
+import com.uber.okbuck.core.dependency.ResolvedConfigurationCache.TargetRecord;
+import com.uber.okbuck.extension.OkBuckExtension;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ResolvedConfigurationCacheTest {
+
+  private static final String STATE_FILE = ".okbuck/state/resolved-configurations.json";
+  private static final String PROCESSOR_KEY = "processor|com.example:processor:1.0";
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private Project root;
+  private Project app;
+  private Project lib;
+  private Configuration implementation;
+  private OkBuckExtension okBuckExtension;
+
+  @Before
+  public void setUp() throws IOException {
+    File rootDir = folder.getRoot();
+    write(new File(rootDir, "settings.gradle"), "include ':app', ':lib'");
+    write(new File(rootDir, "build.gradle"), "apply from: 'gradle/dependencies.gradle'");
+    write(new File(rootDir, "gradle/dependencies.gradle"), "ext.deps = [a: 'com.example:a:1.0']");
+
+    root = ProjectBuilder.builder().withProjectDir(rootDir).build();
+    app = subproject("app");
+    lib = subproject("lib");
+
+    implementation = app.getConfigurations().create("implementation");
+    app.getDependencies().add("implementation", "com.example:a:1.0");
+    app.getDependencies().add("implementation", lib);
+
+    okBuckExtension = new OkBuckExtension(root);
+    okBuckExtension.getExperimentalExtension().resolutionCache = true;
+  }
+
+  @Test
+  public void get_withoutPreviousRun_returnsNull() {
+    // Arrange
+    ResolvedConfigurationCache cache = cache();
+
+    // Act
+    Entry entry = cache.get(app, implementation, key());
+
+    // Assert
+    assertNull(entry);
+  }
+
+  @Test
+  public void get_withUnchangedConfiguration_returnsRecordedEntry() {
+    // Arrange
+    record(app, implementation, key());
+    ResolvedConfigurationCache cache = cache();
+
+    // Act
+    Entry entry = cache.get(app, implementation, key());
+
+    // Assert
+    assertNotNull(entry);
+    assertEquals(1, entry.getTargets().size());
+    assertEquals(":lib", entry.getTargets().get(0).getProjectPath());
+  }
+
+  @Test
+  public void get_withChangedDependency_returnsNull() {
+    // Arrange
+    record(app, implementation, key());
+    app.getDependencies().add("implementation", "com.example:b:1.0");
+    ResolvedConfigurationCache cache = cache();
+
+    // Act
+    Entry entry = cache.get(app, implementation, key());
+
+    // Assert
+    assertNull(entry);
+  }
+
+  @Test
+  public void get_withChangedUpstreamProject_returnsNull() {
+    // Arrange
+    record(app, implementation, key());
+    lib.getConfigurations().create("api");
+    lib.getDependencies().add("api", "com.example:c:1.0");
+    ResolvedConfigurationCache cache = cache();
+
+    // Act
+    Entry entry = cache.get(app, implementation, key());
+
+    // Assert
+    assertNull(entry);
+  }
+
+  @Test
+  public void get_withChangedAppliedScript_returnsNull() throws IOException {
+    // Arrange
+    record(app, implementation, key());
+    write(
+        new File(root.getProjectDir(), "gradle/dependencies.gradle"),
+        "ext.deps = [a: 'com.example:a:2.0']");
+    ResolvedConfigurationCache cache = cache();
+
+    // Act
+    Entry entry = cache.get(app, implementation, key());
+
+    // Assert
+    assertNull(entry);
+  }
+
+  @Test
+  public void get_withResolutionRules_returnsNull() {
+    // Arrange
+    implementation
+        .getResolutionStrategy()
+        .eachDependency(details -> details.because("substituted by the build"));
+    record(app, implementation, key());
+    ResolvedConfigurationCache cache = cache();
+
+    // Act
+    Entry entry = cache.get(app, implementation, key());
+
+    // Assert
+    assertNull(entry);
+  }
+
+  @Test
+  public void get_withProcessorKeyRecordedByOtherProject_returnsRecordedEntry() {
+    // Arrange
+    lib.getConfigurations().create("implementation");
+    lib.getDependencies().add("implementation", "com.example:b:1.0");
+    record(app, processor(app), PROCESSOR_KEY);
+    ResolvedConfigurationCache cache = cache();
+
+    // Act
+    Entry entry = cache.get(lib, processor(lib), PROCESSOR_KEY);
+
+    // Assert
+    assertNotNull(entry);
+  }
+
+  private void record(Project project, Configuration configuration, String key) {
+    ResolvedConfigurationCache cache = cache();
+    cache.put(
+        project,
+        configuration,
+        key,
+        ImmutableList.of(new TargetRecord(":lib", null, true)),
+        ImmutableList.of(),
+        ImmutableSet.of(),
+        ImmutableMap.of());
+    cache.finalizeState();
+  }
+
+  private ResolvedConfigurationCache cache() {
+    ResolvedConfigurationCache cache =
+        new ResolvedConfigurationCache(root, okBuckExtension, STATE_FILE);
+    cache.setup(ImmutableList.of(app, lib));
+    return cache;
+  }
+
+  private String key() {
+    return ResolvedConfigurationCache.key(app, implementation);
+  }
+
+  private static Configuration processor(Project project) {
+    return project
+        .getConfigurations()
+        .detachedConfiguration(project.getDependencies().create("com.example:processor:1.0"));
+  }
+
+  private Project subproject(String name) {
+    return ProjectBuilder.builder()
+        .withName(name)
+        .withParent(root)
+        .withProjectDir(new File(root.getProjectDir(), name))
+        .build();
+  }
+
+  private static void write(File file, String content) throws IOException {
+    Files.createDirectories(file.getParentFile().toPath());
+    Files.write(file.toPath(), content.getBytes(UTF_8));
+  }
+}
@@ -0,0 +1,204 @@
+package com.uber.okbuck.core.dependency;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.hash.Hashing;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class Sha256CacheTest {
+
+  private static final int MAGIC = 0x4f4b5348;
+  private static final int HEADER_SIZE = 8;
+  private static final long MODIFIED_TIME = 1_000_000_000L;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void get_withUnchangedFile_returnsPersistedDigest() throws IOException {
+    // Arrange
+    File cacheFile = new File(folder.getRoot(), "state/sha256.bin");
+    File jar = file("a.jar", "aaaa");
+    Sha256Cache cache = new Sha256Cache(cacheFile);
+    cache.get(jar);
+    cache.persist();
+    // Same size and modification time, so only the persisted record knows the old digest
+    file("a.jar", "bbbb");
+
+    // Act
+    String digest = new Sha256Cache(cacheFile).get(jar);
+
+    // Assert
+    assertEquals(sha256("aaaa"), digest);
+  }
+
+  @Test
+  public void get_withModifiedFile_computesDigest() throws IOException {
+    // Arrange
+    File cacheFile = new File(folder.getRoot(), "sha256.bin");
+    File jar = file("a.jar", "aaaa");
+    Sha256Cache cache = new Sha256Cache(cacheFile);
+    cache.get(jar);
+    cache.persist();
+    file("a.jar", "bbbb").setLastModified(MODIFIED_TIME + 1000);
+
+    // Act
+    String digest = new Sha256Cache(cacheFile).get(jar);
+
+    // Assert
+    assertEquals(sha256("bbbb"), digest);
+  }
+
+  @Test
+  public void persist_withNewDigests_appendsRecords() throws IOException {
+    // Arrange
+    File cacheFile = new File(folder.getRoot(), "sha256.bin");
+    File first = file("a.jar", "aaaa");
+    File second = file("b.jar", "bbbb");
+    Sha256Cache cache = new Sha256Cache(cacheFile);
+    cache.get(first);
+    cache.persist();
+    long length = cacheFile.length();
+
+    // Act
+    Sha256Cache reloaded = new Sha256Cache(cacheFile);
+    reloaded.get(second);
+    reloaded.persist();
+
+    // Assert
+    assertEquals(length + recordSize(second), cacheFile.length());
+  }
+
+  @Test
+  public void read_withTruncatedRecord_keepsPreviousRecordsAndRewrites() throws IOException {
+    // Arrange
+    File cacheFile = new File(folder.getRoot(), "sha256.bin");
+    File first = file("a.jar", "aaaa");
+    File second = file("b.jar", "bbbb");
+    Sha256Cache cache = new Sha256Cache(cacheFile);
+    cache.get(first);
+    cache.persist();
+    cache.get(second);
+    cache.persist();
+    try (RandomAccessFile raf = new RandomAccessFile(cacheFile, "rw")) {
+      raf.setLength(cacheFile.length() - 10);
+    }
+    file("a.jar", "cccc");
+    file("b.jar", "dddd");
+
+    // Act
+    Sha256Cache reloaded = new Sha256Cache(cacheFile);
+    String firstDigest = reloaded.get(first);
+    String secondDigest = reloaded.get(second);
+    reloaded.persist();
+
+    // Assert
+    assertEquals(sha256("aaaa"), firstDigest);
+    assertEquals(sha256("dddd"), secondDigest);
+    assertEquals(HEADER_SIZE + recordSize(first) + recordSize(second), cacheFile.length());
+  }
+
+  @Test
+  public void read_withCorruptRecordLength_rewritesIndex() throws IOException {
+    // Arrange
+    File cacheFile = new File(folder.getRoot(), "sha256.bin");
+    File jar = file("a.jar", "aaaa");
+    try (DataOutputStream os = new DataOutputStream(new FileOutputStream(cacheFile))) {
+      os.writeInt(MAGIC);
+      os.writeInt(1);
+      os.writeInt(-1);
+      os.writeLong(0);
+    }
+
+    // Act
+    Sha256Cache cache = new Sha256Cache(cacheFile);
+    String digest = cache.get(jar);
+    cache.persist();
+
+    // Assert
+    assertEquals(sha256("aaaa"), digest);
+    assertEquals(HEADER_SIZE + recordSize(jar), cacheFile.length());
+  }
+
+  @Test
+  public void read_withJsonIndex_rewritesIndex() throws IOException {
+    // Arrange
+    File cacheFile = new File(folder.getRoot(), "sha256.bin");
+    File jar = file("a.jar", "aaaa");
+    Files.write(cacheFile.toPath(), "{\"a.jar\":\"digest\"}".getBytes(UTF_8));
+
+    // Act
+    Sha256Cache cache = new Sha256Cache(cacheFile);
+    String digest = cache.get(jar);
+    cache.persist();
+
+    // Assert
+    assertEquals(sha256("aaaa"), digest);
+    assertEquals(HEADER_SIZE + recordSize(jar), cacheFile.length());
+  }
+
+  @Test
+  public void persist_withStaleRecordsUpToHalf_keepsIndex() throws IOException {
+    // Arrange
+    File cacheFile = new File(folder.getRoot(), "sha256.bin");
+    File first = file("a.jar", "aaaa");
+    File second = file("b.jar", "bbbb");
+    Sha256Cache cache = new Sha256Cache(cacheFile);
+    cache.get(first);
+    cache.get(second);
+    cache.persist();
+    long length = cacheFile.length();
+    first.setLastModified(MODIFIED_TIME + 1000);
+
+    // Act
+    new Sha256Cache(cacheFile).persist();
+
+    // Assert
+    assertEquals(length, cacheFile.length());
+  }
+
+  @Test
+  public void persist_withStaleRecordsOverHalf_rewritesIndex() throws IOException {
+    // Arrange
+    File cacheFile = new File(folder.getRoot(), "sha256.bin");
+    File first = file("a.jar", "aaaa");
+    File second = file("b.jar", "bbbb");
+    File third = file("c.jar", "cccc");
+    Sha256Cache cache = new Sha256Cache(cacheFile);
+    cache.get(first);
+    cache.get(second);
+    cache.get(third);
+    cache.persist();
+    first.setLastModified(MODIFIED_TIME + 1000);
+    Files.delete(second.toPath());
+
+    // Act
+    new Sha256Cache(cacheFile).persist();
+
+    // Assert
+    assertEquals(HEADER_SIZE + recordSize(third), cacheFile.length());
+  }
+
+  private File file(String name, String content) throws IOException {
+    File file = new File(folder.getRoot(), name);
+    Files.write(file.toPath(), content.getBytes(UTF_8));
+    file.setLastModified(MODIFIED_TIME);
+    return file;
+  }
+
+  private static int recordSize(File file) {
+    return 4 + file.getAbsolutePath().getBytes(UTF_8).length + 8 + 8 + 32;
+  }
+
+  private static String sha256(String content) {
+    return Hashing.sha256().hashString(content, UTF_8).toString();
+  }
+}
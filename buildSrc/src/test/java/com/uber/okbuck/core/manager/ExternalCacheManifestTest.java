@@ -0,0 +1,191 @@
+package com.uber.okbuck.core.manager;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.function.Consumer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ExternalCacheManifestTest {
+
+  private static final String BUCK = "BUCK";
+  private static final long MODIFIED_TIME = 1_000_000_000L;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private File stateFile;
+  private Path cacheDir;
+
+  @Before
+  public void setUp() throws IOException {
+    stateFile = new File(folder.getRoot(), ".okbuck/state/external-cache.json");
+    cacheDir = folder.newFolder(".okbuck", "ext").toPath();
+  }
+
+  @Test
+  public void deleteOrphans_withRemovedDependency_deletesFilesAndEmptyDirs() throws IOException {
+    // Arrange
+    Path kept = cacheDir.resolve("com/example/kept");
+    Path removed = cacheDir.resolve("org/removed/lib");
+    generate(kept, "kept");
+    generate(removed, "removed");
+    persist(
+        manifest -> {
+          manifest.record(kept, "kept", ImmutableList.of(BUCK));
+          manifest.record(removed, "removed", ImmutableList.of(BUCK));
+        });
+    ExternalCacheManifest manifest = new ExternalCacheManifest(stateFile, cacheDir);
+    manifest.retain(kept);
+
+    // Act
+    int deleted = manifest.deleteOrphans();
+
+    // Assert
+    assertEquals(1, deleted);
+    assertTrue(Files.exists(kept.resolve(BUCK)));
+    assertFalse(Files.exists(cacheDir.resolve("org")));
+    assertTrue(Files.isDirectory(cacheDir));
+  }
+
+  @Test
+  public void deleteOrphans_withFileNoLongerGenerated_deletesOnlyThatFile() throws IOException {
+    // Arrange
+    Path dir = cacheDir.resolve("com/example/lib");
+    generate(dir, "lib");
+    Files.write(dir.resolve("lib.jar"), "jar".getBytes(UTF_8));
+    persist(manifest -> manifest.record(dir, "old", ImmutableList.of(BUCK, "lib.jar")));
+    ExternalCacheManifest manifest = new ExternalCacheManifest(stateFile, cacheDir);
+    manifest.record(dir, "new", ImmutableList.of(BUCK));
+
+    // Act
+    int deleted = manifest.deleteOrphans();
+
+    // Assert
+    assertEquals(1, deleted);
+    assertTrue(Files.exists(dir.resolve(BUCK)));
+    assertFalse(Files.exists(dir.resolve("lib.jar")));
+  }
+
+  @Test
+  public void isUpToDate_withUnchangedDirectory_leavesFilesIdentical() throws IOException {
+    // Arrange
+    Path dir = cacheDir.resolve("com/example/lib");
+    generate(dir, "lib");
+    Files.setLastModifiedTime(dir.resolve(BUCK), FileTime.fromMillis(MODIFIED_TIME));
+    byte[] content = Files.readAllBytes(dir.resolve(BUCK));
+    persist(manifest -> manifest.record(dir, "lib", ImmutableList.of(BUCK)));
+    ExternalCacheManifest manifest = new ExternalCacheManifest(stateFile, cacheDir);
+
+    // Act
+    boolean upToDate = manifest.isUpToDate(dir, "lib");
+    manifest.retain(dir);
+    int deleted = manifest.deleteOrphans();
+    manifest.persist();
+
+    // Assert
+    assertTrue(upToDate);
+    assertEquals(0, deleted);
+    assertArrayEquals(content, Files.readAllBytes(dir.resolve(BUCK)));
+    assertEquals(MODIFIED_TIME, Files.getLastModifiedTime(dir.resolve(BUCK)).toMillis());
+    assertTrue(new ExternalCacheManifest(stateFile, cacheDir).isUpToDate(dir, "lib"));
+  }
+
+  @Test
+  public void isUpToDate_withChangedFingerprint_returnsFalse() throws IOException {
+    // Arrange
+    Path dir = cacheDir.resolve("com/example/lib");
+    generate(dir, "lib");
+    persist(manifest -> manifest.record(dir, "lib", ImmutableList.of(BUCK)));
+
+    // Act
+    boolean upToDate = new ExternalCacheManifest(stateFile, cacheDir).isUpToDate(dir, "other");
+
+    // Assert
+    assertFalse(upToDate);
+  }
+
+  @Test
+  public void isUpToDate_withMissingFile_returnsFalse() throws IOException {
+    // Arrange
+    Path dir = cacheDir.resolve("com/example/lib");
+    generate(dir, "lib");
+    persist(manifest -> manifest.record(dir, "lib", ImmutableList.of(BUCK)));
+    Files.delete(dir.resolve(BUCK));
+
+    // Act
+    boolean upToDate = new ExternalCacheManifest(stateFile, cacheDir).isUpToDate(dir, "lib");
+
+    // Assert
+    assertFalse(upToDate);
+  }
+
+  @Test
+  public void hasPrevious_withMissingManifest_returnsFalse() throws IOException {
+    // Arrange
+    Path dir = cacheDir.resolve("com/example/lib");
+    generate(dir, "lib");
+
+    // Act
+    ExternalCacheManifest manifest = new ExternalCacheManifest(stateFile, cacheDir);
+
+    // Assert
+    assertFalse(manifest.hasPrevious());
+    assertFalse(manifest.isUpToDate(dir, "lib"));
+    assertEquals(0, manifest.deleteOrphans());
+  }
+
+  @Test
+  public void hasPrevious_withCorruptManifest_returnsFalse() throws IOException {
+    // Arrange
+    Path dir = cacheDir.resolve("com/example/lib");
+    generate(dir, "lib");
+    persist(manifest -> manifest.record(dir, "lib", ImmutableList.of(BUCK)));
+    Files.write(stateFile.toPath(), "{\"version\": 1, \"entries\": [".getBytes(UTF_8));
+
+    // Act
+    ExternalCacheManifest manifest = new ExternalCacheManifest(stateFile, cacheDir);
+
+    // Assert
+    assertFalse(manifest.hasPrevious());
+    assertFalse(manifest.isUpToDate(dir, "lib"));
+    assertEquals(0, manifest.deleteOrphans());
+  }
+
+  @Test
+  public void hasPrevious_afterLoading_deletesManifestUntilPersisted() throws IOException {
+    // Arrange
+    Path dir = cacheDir.resolve("com/example/lib");
+    generate(dir, "lib");
+    persist(manifest -> manifest.record(dir, "lib", ImmutableList.of(BUCK)));
+    new ExternalCacheManifest(stateFile, cacheDir);
+
+    // Act
+    ExternalCacheManifest manifest = new ExternalCacheManifest(stateFile, cacheDir);
+
+    // Assert
+    assertFalse(manifest.hasPrevious());
+  }
+
+  private void persist(Consumer<ExternalCacheManifest> recorder) {
+    ExternalCacheManifest manifest = new ExternalCacheManifest(stateFile, cacheDir);
+    recorder.accept(manifest);
+    manifest.persist();
+  }
+
+  private static void generate(Path dir, String name) throws IOException {
+    Files.createDirectories(dir);
+    Files.write(dir.resolve(BUCK), ("prebuilt(name = '" + name + "')").getBytes(UTF_8));
+  }
+}
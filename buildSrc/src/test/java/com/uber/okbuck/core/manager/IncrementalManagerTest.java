@@ -0,0 +1,177 @@
+package com.uber.okbuck.core.manager;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.uber.okbuck.extension.OkBuckExtension;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class IncrementalManagerTest {
+
+  private static final String STATE_FILE = ".okbuck/state/incremental.json";
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private Project root;
+  private Project lib;
+  private OkBuckExtension okBuckExtension;
+
+  @Before
+  public void setUp() throws IOException {
+    File rootDir = folder.getRoot();
+    write(new File(rootDir, "settings.gradle"), "include ':lib'");
+    write(new File(rootDir, "build.gradle"), "apply from: 'gradle/dependencies.gradle'");
+    write(new File(rootDir, "gradle/dependencies.gradle"), "ext.deps = [a: 'com.example:a:1.0']");
+    write(new File(rootDir, "lib/build.gradle"), "apply plugin: 'java'");
+
+    root = ProjectBuilder.builder().withProjectDir(rootDir).build();
+    lib =
+        ProjectBuilder.builder()
+            .withName("lib")
+            .withParent(root)
+            .withProjectDir(new File(rootDir, "lib"))
+            .build();
+    lib.getConfigurations().create("implementation");
+    lib.getDependencies().add("implementation", "com.example:a:1.0");
+
+    okBuckExtension = new OkBuckExtension(root);
+    okBuckExtension.getExperimentalExtension().incremental = true;
+  }
+
+  @Test
+  public void isUpToDate_withoutPreviousRun_returnsFalse() {
+    // Arrange
+    IncrementalManager manager = manager();
+
+    // Act
+    manager.setup(ImmutableList.of(lib));
+
+    // Assert
+    assertFalse(manager.isUpToDate(lib));
+  }
+
+  @Test
+  public void isUpToDate_withUnchangedProject_returnsTrue() throws IOException {
+    // Arrange
+    generate(false);
+    IncrementalManager manager = manager();
+
+    // Act
+    manager.setup(ImmutableList.of(lib));
+
+    // Assert
+    assertTrue(manager.isUpToDate(lib));
+  }
+
+  @Test
+  public void isUpToDate_withChangedAppliedScript_returnsFalse() throws IOException {
+    // Arrange
+    generate(false);
+    write(
+        new File(root.getProjectDir(), "gradle/dependencies.gradle"),
+        "ext.deps = [a: 'com.example:a:2.0']");
+    IncrementalManager manager = manager();
+
+    // Act
+    manager.setup(ImmutableList.of(lib));
+
+    // Assert
+    assertFalse(manager.isUpToDate(lib));
+  }
+
+  @Test
+  public void isUpToDate_withChangedSettingsScript_returnsFalse() throws IOException {
+    // Arrange
+    generate(false);
+    write(new File(root.getProjectDir(), "settings.gradle"), "include ':lib', ':other'");
+    IncrementalManager manager = manager();
+
+    // Act
+    manager.setup(ImmutableList.of(lib));
+
+    // Assert
+    assertFalse(manager.isUpToDate(lib));
+  }
+
+  @Test
+  public void isUpToDate_withChangedDependency_returnsFalse() throws IOException {
+    // Arrange
+    generate(false);
+    lib.getDependencies().add("implementation", "com.example:b:1.0");
+    IncrementalManager manager = manager();
+
+    // Act
+    manager.setup(ImmutableList.of(lib));
+
+    // Assert
+    assertFalse(manager.isUpToDate(lib));
+  }
+
+  @Test
+  public void isUpToDate_withDeletedBuildFile_returnsFalse() throws IOException {
+    // Arrange
+    generate(false);
+    Files.delete(lib.file(okBuckExtension.buildFileName).toPath());
+    IncrementalManager manager = manager();
+
+    // Act
+    manager.setup(ImmutableList.of(lib));
+
+    // Assert
+    assertFalse(manager.isUpToDate(lib));
+  }
+
+  @Test
+  public void isUpToDate_withChangingVersions_returnsFalse() throws IOException {
+    // Arrange
+    generate(true);
+    IncrementalManager manager = manager();
+
+    // Act
+    manager.setup(ImmutableList.of(lib));
+
+    // Assert
+    assertFalse(manager.isUpToDate(lib));
+  }
+
+  private void generate(boolean changingVersions) throws IOException {
+    IncrementalManager manager = manager();
+    manager.setup(ImmutableList.of(lib));
+    manager.record(
+        lib,
+        () -> {
+          try {
+            write(lib.file(okBuckExtension.buildFileName), "java_library(name = 'lib')");
+          } catch (IOException e) {
+            throw new IllegalStateException(e);
+          }
+          if (changingVersions) {
+            manager.recordChangingVersions();
+          }
+        });
+    manager.finalizeState();
+  }
+
+  private IncrementalManager manager() {
+    return new IncrementalManager(
+        root,
+        okBuckExtension,
+        new BuckFileManager(okBuckExtension.getRuleOverridesExtension()),
+        STATE_FILE);
+  }
+
+  private static void write(File file, String content) throws IOException {
+    Files.createDirectories(file.getParentFile().toPath());
+    Files.write(file.toPath(), content.getBytes(UTF_8));
+  }
+}
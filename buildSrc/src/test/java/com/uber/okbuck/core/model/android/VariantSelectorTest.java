@@ -0,0 +1,213 @@
+package com.uber.okbuck.core.model.android;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.android.build.gradle.AppExtension;
+import com.android.build.gradle.AppPlugin;
+import com.android.build.gradle.api.ApplicationVariant;
+import com.android.build.gradle.api.BaseVariant;
+import com.android.builder.model.BuildType;
+import com.android.builder.model.ProductFlavor;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.uber.okbuck.extension.OkBuckExtension;
+import com.uber.okbuck.extension.VariantExtension;
+import java.util.ArrayList;
+import java.util.List;
+import org.gradle.api.DomainObjectSet;
+import org.gradle.api.Project;
+import org.gradle.api.plugins.ExtensionContainer;
+import org.gradle.api.plugins.PluginContainer;
+import org.junit.Before;
+import org.junit.Test;
+
+public class VariantSelectorTest {
+
+  private final VariantExtension variantExtension = new VariantExtension();
+  private final List<ApplicationVariant> appVariants = new ArrayList<>();
+
+  private Project lib;
+  private VariantSelector selector;
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setUp() {
+    AppExtension appExtension = mock(AppExtension.class, RETURNS_DEEP_STUBS);
+    DomainObjectSet<ApplicationVariant> variants = mock(DomainObjectSet.class);
+    when(variants.iterator()).thenAnswer(invocation -> appVariants.iterator());
+    when(appExtension.getApplicationVariants()).thenReturn(variants);
+
+    Project app = project(":app");
+    PluginContainer plugins = mock(PluginContainer.class);
+    when(plugins.hasPlugin(AppPlugin.class)).thenReturn(true);
+    when(app.getPlugins()).thenReturn(plugins);
+    ExtensionContainer extensions = mock(ExtensionContainer.class);
+    when(extensions.getByType(AppExtension.class)).thenReturn(appExtension);
+    when(app.getExtensions()).thenReturn(extensions);
+
+    lib = project(":lib");
+    when(lib.getPlugins()).thenReturn(mock(PluginContainer.class));
+
+    OkBuckExtension okBuckExtension = mock(OkBuckExtension.class);
+    when(okBuckExtension.getVariantExtension()).thenReturn(variantExtension);
+    okBuckExtension.buckProjects = ImmutableSet.of(app, lib);
+
+    selector = new VariantSelector(okBuckExtension);
+  }
+
+  @Test
+  public void isLibraryVariantSelected_withIncludedVariant_returnsTrue() {
+    // Arrange
+    variantExtension.include = ImmutableList.of("release");
+    BaseVariant variant = variant(BaseVariant.class, "release");
+
+    // Act
+    boolean selected = selector.isLibraryVariantSelected(lib, variant);
+
+    // Assert
+    assertTrue(selected);
+  }
+
+  @Test
+  public void isLibraryVariantSelected_withVariantUsedBySelectedApp_returnsTrue() {
+    // Arrange
+    variantExtension.include = ImmutableList.of("none");
+    variantExtension.projectInclude.put("app", ImmutableList.of("debug"));
+    appVariants.add(variant(ApplicationVariant.class, "debug"));
+    appVariants.add(variant(ApplicationVariant.class, "release"));
+
+    // Act
+    boolean debugSelected =
+        selector.isLibraryVariantSelected(lib, variant(BaseVariant.class, "debug"));
+    boolean releaseSelected =
+        selector.isLibraryVariantSelected(lib, variant(BaseVariant.class, "release"));
+
+    // Assert
+    assertTrue(debugSelected);
+    assertFalse(releaseSelected);
+  }
+
+  @Test
+  public void isLibraryVariantSelected_withFlavorlessApp_returnsFlavoredVariants() {
+    // Arrange
+    variantExtension.include = ImmutableList.of("none");
+    variantExtension.projectInclude.put("app", ImmutableList.of("debug"));
+    appVariants.add(variant(ApplicationVariant.class, "debug"));
+
+    // Act
+    boolean selected =
+        selector.isLibraryVariantSelected(
+            lib, variant(BaseVariant.class, "debug", flavor("paid", "tier")));
+
+    // Assert
+    assertTrue(selected);
+  }
+
+  @Test
+  public void isLibraryVariantSelected_withAppFlavorOfSameDimension_returnsMatchingFlavor() {
+    // Arrange
+    variantExtension.include = ImmutableList.of("none");
+    variantExtension.projectInclude.put("app", ImmutableList.of("debug"));
+    appVariants.add(variant(ApplicationVariant.class, "debug", flavor("free", "tier")));
+
+    // Act
+    boolean freeSelected =
+        selector.isLibraryVariantSelected(
+            lib, variant(BaseVariant.class, "debug", flavor("free", "tier")));
+    boolean paidSelected =
+        selector.isLibraryVariantSelected(
+            lib, variant(BaseVariant.class, "debug", flavor("paid", "tier")));
+    boolean otherDimensionSelected =
+        selector.isLibraryVariantSelected(
+            lib,
+            variant(
+                BaseVariant.class, "debug", flavor("free", "tier"), flavor("arm", "abi")));
+
+    // Assert
+    assertTrue(freeSelected);
+    assertFalse(paidSelected);
+    assertTrue(otherDimensionSelected);
+  }
+
+  @Test
+  public void isLibraryVariantSelected_withExcludedVariantUsedByApp_returnsFalse() {
+    // Arrange
+    variantExtension.exclude = ImmutableList.of("paid");
+    appVariants.add(variant(ApplicationVariant.class, "debug"));
+
+    // Act
+    boolean selected =
+        selector.isLibraryVariantSelected(
+            lib, variant(BaseVariant.class, "debug", flavor("paid", "tier")));
+
+    // Assert
+    assertFalse(selected);
+  }
+
+  @Test
+  public void isLibraryVariantSelected_withProjectExcludedVariantUsedByApp_returnsFalse() {
+    // Arrange
+    variantExtension.projectExclude.put("lib", ImmutableList.of("release"));
+    appVariants.add(variant(ApplicationVariant.class, "release"));
+
+    // Act
+    boolean selected =
+        selector.isLibraryVariantSelected(lib, variant(BaseVariant.class, "release"));
+
+    // Assert
+    assertFalse(selected);
+  }
+
+  @Test
+  public void isLibraryVariantSelected_withProjectIncludeAndVariantUsedByApp_returnsFalse() {
+    // Arrange
+    variantExtension.projectInclude.put("lib", ImmutableList.of("release"));
+    appVariants.add(variant(ApplicationVariant.class, "debug"));
+
+    // Act
+    boolean selected =
+        selector.isLibraryVariantSelected(lib, variant(BaseVariant.class, "debug"));
+
+    // Assert
+    assertFalse(selected);
+  }
+
+  private static Project project(String path) {
+    Project project = mock(Project.class);
+    when(project.getPath()).thenReturn(path);
+    return project;
+  }
+
+  private static <T extends BaseVariant> T variant(
+      Class<T> type, String buildTypeName, ProductFlavor... flavors) {
+    BuildType buildType = mock(BuildType.class);
+    when(buildType.getName()).thenReturn(buildTypeName);
+
+    StringBuilder name = new StringBuilder();
+    for (ProductFlavor flavor : flavors) {
+      name.append(name.length() == 0 ? flavor.getName() : capitalize(flavor.getName()));
+    }
+    name.append(name.length() == 0 ? buildTypeName : capitalize(buildTypeName));
+
+    T variant = mock(type);
+    when(variant.getName()).thenReturn(name.toString());
+    when(variant.getBuildType()).thenReturn(buildType);
+    when(variant.getProductFlavors()).thenReturn(ImmutableList.copyOf(flavors));
+    return variant;
+  }
+
+  private static ProductFlavor flavor(String name, String dimension) {
+    ProductFlavor flavor = mock(ProductFlavor.class);
+    when(flavor.getName()).thenReturn(name);
+    when(flavor.getDimension()).thenReturn(dimension);
+    return flavor;
+  }
+
+  private static String capitalize(String name) {
+    return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+  }
+}
@@ -0,0 +1,150 @@
+package com.uber.okbuck.core.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileIndexTest {
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Before
+  public void setUp() {
+    FileIndex.reset();
+  }
+
+  @Test
+  public void listing_withNestedFiles_returnsRelativePaths() throws IOException {
+    // Arrange
+    File root = folder.newFolder("src");
+    file(root, "com/example/A.java");
+    file(root, "com/example/B.kt");
+    file(root, "C.java");
+
+    // Act
+    FileIndex.Listing listing = FileIndex.listing(root);
+
+    // Assert
+    assertTrue(listing.hasFiles());
+    assertEquals(
+        ImmutableList.of("C.java", "com/example/A.java", "com/example/B.kt"),
+        sorted(listing.getFiles()));
+    assertEquals(ImmutableMap.of("java", 2, "kt", 1), listing.getExtensionCounts());
+  }
+
+  @Test
+  public void listing_withDsStore_ignoresIt() throws IOException {
+    // Arrange
+    File root = folder.newFolder("res");
+    file(root, ".DS_Store");
+    file(root, "values/.DS_Store");
+
+    // Act
+    FileIndex.Listing listing = FileIndex.listing(root);
+
+    // Assert
+    assertFalse(listing.hasFiles());
+    assertTrue(listing.getExtensionCounts().isEmpty());
+  }
+
+  @Test
+  public void listing_withMissingDirectory_returnsEmptyListing() {
+    // Arrange
+    File root = new File(folder.getRoot(), "missing");
+
+    // Act
+    FileIndex.Listing listing = FileIndex.listing(root);
+
+    // Assert
+    assertFalse(listing.hasFiles());
+  }
+
+  @Test
+  public void listing_withFileAddedAfterListing_returnsListingUntilReset() throws IOException {
+    // Arrange
+    File root = folder.newFolder("src");
+    file(root, "A.java");
+    FileIndex.listing(root);
+    file(root, "B.java");
+
+    // Act
+    FileIndex.Listing cached = FileIndex.listing(root);
+    FileIndex.reset();
+    FileIndex.Listing relisted = FileIndex.listing(root);
+
+    // Assert
+    assertEquals(ImmutableList.of("A.java"), cached.getFiles());
+    assertEquals(ImmutableList.of("A.java", "B.java"), sorted(relisted.getFiles()));
+  }
+
+  @Test
+  public void isAvailable_withDirectoryOfEmptyDirectories_returnsFalse() throws IOException {
+    // Arrange
+    File root = folder.newFolder("assets");
+    assertTrue(new File(root, "a/b").mkdirs());
+    file(root, "c/.DS_Store");
+
+    // Act
+    boolean available = FileIndex.isAvailable(root);
+
+    // Assert
+    assertFalse(available);
+  }
+
+  @Test
+  public void isAvailable_withSubdirectoriesOfScannedDirectory_returnsWhetherTheyHoldFiles()
+      throws IOException {
+    // Arrange
+    File root = folder.newFolder("src");
+    file(root, "full/A.java");
+    assertTrue(new File(root, "empty/nested").mkdirs());
+    FileIndex.scan(ImmutableList.of(root));
+
+    // Act
+    boolean full = FileIndex.isAvailable(new File(root, "full"));
+    boolean empty = FileIndex.isAvailable(new File(root, "empty"));
+
+    // Assert
+    assertTrue(full);
+    assertFalse(empty);
+  }
+
+  @Test
+  public void isAvailable_withFiles_returnsWhetherTheyExist() throws IOException {
+    // Arrange
+    File existing = folder.newFile("AndroidManifest.xml");
+    File missing = new File(folder.getRoot(), "missing.xml");
+
+    // Act
+    boolean existingAvailable = FileIndex.isAvailable(existing);
+    boolean missingAvailable = FileIndex.isAvailable(missing);
+
+    // Assert
+    assertTrue(existingAvailable);
+    assertFalse(missingAvailable);
+  }
+
+  private static void file(File root, String path) throws IOException {
+    File file = new File(root, path);
+    file.getParentFile().mkdirs();
+    assertTrue(file.createNewFile());
+  }
+
+  private static List<String> sorted(List<String> files) {
+    List<String> sorted = new ArrayList<>(files);
+    Collections.sort(sorted);
+    return sorted;
+  }
+}
@@ -0,0 +1,148 @@
+package com.uber.okbuck.template.core;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileEmitterTest {
+
+  private static final long OLD_MODIFIED_TIME = 1_000_000_000L;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Before
+  public void setUp() {
+    FileEmitter.reset();
+  }
+
+  @Test
+  public void emit_withMissingFile_writesFile() throws IOException {
+    // Arrange
+    File file = new File(folder.getRoot(), "dir/BUCK");
+
+    // Act
+    FileEmitter.emit(file, content("rule()"));
+
+    // Assert
+    assertEquals("rule()", read(file));
+    assertEquals("1 files written, 0 unchanged, 0 deleted", FileEmitter.summary());
+  }
+
+  @Test
+  public void emit_withSameContent_keepsFile() throws IOException {
+    // Arrange
+    File file = existing("rule()");
+
+    // Act
+    FileEmitter.emit(file, content("rule()"));
+
+    // Assert
+    assertEquals("rule()", read(file));
+    assertEquals(OLD_MODIFIED_TIME, file.lastModified());
+    assertEquals("0 files written, 1 unchanged, 0 deleted", FileEmitter.summary());
+  }
+
+  @Test
+  public void emit_withChangedContent_rewritesFile() throws IOException {
+    // Arrange
+    File file = existing("rule_a()");
+
+    // Act
+    FileEmitter.emit(file, content("rule_b()"));
+
+    // Assert
+    assertEquals("rule_b()", read(file));
+    assertEquals("1 files written, 0 unchanged, 0 deleted", FileEmitter.summary());
+  }
+
+  @Test
+  public void emit_withExistingContentAsPrefix_rewritesFile() throws IOException {
+    // Arrange
+    File file = existing("rule()\nother()");
+
+    // Act
+    FileEmitter.emit(file, content("rule()"));
+
+    // Assert
+    assertEquals("rule()", read(file));
+  }
+
+  @Test
+  public void emitPrefix_withFileStartingWithContent_keepsTrailingContent() throws IOException {
+    // Arrange
+    File file = existing("rule()\nother()");
+
+    // Act
+    long length = FileEmitter.emitPrefix(file, content("rule()"));
+
+    // Assert
+    assertEquals(6, length);
+    assertEquals("rule()\nother()", read(file));
+    assertEquals(OLD_MODIFIED_TIME, file.lastModified());
+    assertEquals("0 files written, 1 unchanged, 0 deleted", FileEmitter.summary());
+  }
+
+  @Test
+  public void emitPrefix_withDifferentPrefix_replacesFile() throws IOException {
+    // Arrange
+    File file = existing("other()\nrule()");
+
+    // Act
+    FileEmitter.emitPrefix(file, content("rule()"));
+
+    // Assert
+    assertEquals("rule()", read(file));
+    assertEquals("1 files written, 0 unchanged, 0 deleted", FileEmitter.summary());
+  }
+
+  @Test
+  public void emitPrefix_followedByEmit_appendsContent() throws IOException {
+    // Arrange
+    File file = new File(folder.getRoot(), "BUCK");
+
+    // Act
+    FileEmitter.emitPrefix(file, content("rule()"));
+    FileEmitter.emit(file, content("rule()\nother()"));
+
+    // Assert
+    assertEquals("rule()\nother()", read(file));
+    assertEquals("1 files written, 0 unchanged, 0 deleted", FileEmitter.summary());
+  }
+
+  @Test
+  public void delete_withExistingFile_countsDeletedFile() throws IOException {
+    // Arrange
+    File file = existing("rule()");
+
+    // Act
+    FileEmitter.delete(file.toPath());
+    FileEmitter.delete(file.toPath());
+
+    // Assert
+    assertFalse(file.exists());
+    assertEquals("0 files written, 0 unchanged, 1 deleted", FileEmitter.summary());
+  }
+
+  private File existing(String content) throws IOException {
+    File file = folder.newFile("BUCK");
+    Files.write(file.toPath(), content.getBytes(UTF_8));
+    file.setLastModified(OLD_MODIFIED_TIME);
+    return file;
+  }
+
+  private static FileEmitter.Content content(String content) {
+    return os -> os.write(content.getBytes(UTF_8));
+  }
+
+  private static String read(File file) throws IOException {
+    return new String(Files.readAllBytes(file.toPath()), UTF_8);
+  }
+}
@@ -0,0 +1,341 @@
+#!/usr/bin/env python3
+"""Generates a synthetic gradle build and measures okbuck against it.
+
+  synthetic.py generate OUT [--modules N] [--android-ratio R] [--fan-out F]
+                            [--variants V] [--external-libs L] [--seed S]
+  synthetic.py run OUT [--runs N] [--report FILE] [--online]
+
+The generated build applies this checkout's okbuck plugin through a symlinked
+buildSrc. External libraries are served from a file based maven repository
+inside OUT, so runs do not depend on the network for them.
+"""
+
+import argparse
+import json
+import os
+import random
+import re
+import shutil
+import statistics
+import subprocess
+import sys
+import time
+import zipfile
+
+OKBUCK_ROOT = os.path.abspath(os.path.join(os.path.dirname(__file__), "..", ".."))
+
+# Paths of the okbuck checkout the generated build needs to build the plugin.
+LINKED_PATHS = ["buildSrc", "dependencies.gradle", "tooling", "gradle", "gradlew"]
+
+EXTERNAL_GROUP = "com.synthetic.ext"
+EXTERNAL_DEPS_PER_LIB = 3
+EXTERNAL_DEPS_PER_MODULE = 5
+
+GC_LOG = "gc.log"
+SKIPPED_DIRS = {".gradle", "build", "buildSrc", "repo", "tooling", "gradle"}
+
+
+def write(path, content):
+    os.makedirs(os.path.dirname(path), exist_ok=True)
+    with open(path, "w") as f:
+        f.write(content)
+
+
+def module_name(index):
+    return "m%04d" % index
+
+
+def lib_name(index):
+    return "lib%04d" % index
+
+
+def generate_repo(out, count, rng):
+    """Writes a maven repository of count libraries forming a random DAG."""
+    for i in range(count):
+        name = lib_name(i)
+        base = os.path.join(out, "repo", *EXTERNAL_GROUP.split("."), name, "1.0.0")
+        os.makedirs(base, exist_ok=True)
+
+        deps = rng.sample(range(i), min(i, rng.randint(0, EXTERNAL_DEPS_PER_LIB)))
+        dependencies = "".join(
+            """
+    <dependency>
+      <groupId>%s</groupId>
+      <artifactId>%s</artifactId>
+      <version>1.0.0</version>
+    </dependency>"""
+            % (EXTERNAL_GROUP, lib_name(d))
+            for d in sorted(deps)
+        )
+        write(
+            os.path.join(base, "%s-1.0.0.pom" % name),
+            """<?xml version="1.0" encoding="UTF-8"?>
+<project xmlns="http://maven.apache.org/POM/4.0.0">
+  <modelVersion>4.0.0</modelVersion>
+  <groupId>%s</groupId>
+  <artifactId>%s</artifactId>
+  <version>1.0.0</version>
+  <dependencies>%s
+  </dependencies>
+</project>
+"""
+            % (EXTERNAL_GROUP, name, dependencies),
+        )
+
+        for suffix in ("", "-sources"):
+            with zipfile.ZipFile(os.path.join(base, "%s-1.0.0%s.jar" % (name, suffix)), "w") as jar:
+                jar.writestr("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\n")
+                jar.writestr("com/synthetic/ext/%s/README" % name, name)
+
+
+def generate_module(out, index, android, project_deps, external_deps, variants):
+    name = module_name(index)
+    package = "com.synthetic." + name
+    module_dir = os.path.join(out, "modules", name)
+
+    dependencies = "".join(
+        '\n    implementation project(":modules:%s")' % module_name(d) for d in project_deps
+    ) + "".join(
+        '\n    implementation "%s:%s:1.0.0"' % (EXTERNAL_GROUP, lib_name(d)) for d in external_deps
+    )
+
+    if android:
+        flavors = ""
+        if variants > 1:
+            flavors = """
+    flavorDimensions "synthetic"
+    productFlavors {%s
+    }""" % "".join(
+                '\n        flavor%d { dimension "synthetic" }' % v for v in range(variants)
+            )
+        build_file = """apply plugin: "com.android.library"
+
+android {
+    compileSdkVersion 30
+    defaultConfig {
+        minSdkVersion 21
+        targetSdkVersion 30
+    }%s
+}
+
+dependencies {%s
+}
+""" % (
+            flavors,
+            dependencies,
+        )
+        write(
+            os.path.join(module_dir, "src", "main", "AndroidManifest.xml"),
+            '<manifest package="%s" />\n' % package,
+        )
+        write(
+            os.path.join(module_dir, "src", "main", "res", "values", "strings.xml"),
+            '<resources>\n    <string name="%s">%s</string>\n</resources>\n' % (name, name),
+        )
+    else:
+        build_file = """apply plugin: "java-library"
+
+dependencies {%s
+}
+""" % dependencies
+
+    write(os.path.join(module_dir, "build.gradle"), build_file)
+
+    class_name = name.upper()
+    imports = "".join(
+        "\nimport com.synthetic.%s.%s;" % (module_name(d), module_name(d).upper())
+        for d in project_deps
+    )
+    uses = "".join("\n    new %s();" % module_name(d).upper() for d in project_deps)
+    write(
+        os.path.join(module_dir, "src", "main", "java", *package.split("."), class_name + ".java"),
+        "package %s;\n%s\n\npublic class %s {\n  public %s() {%s\n  }\n}\n"
+        % (package, imports, class_name, class_name, uses),
+    )
+
+
+def generate(args):
+    out = os.path.abspath(args.out)
+    if os.path.exists(out):
+        shutil.rmtree(out)
+    os.makedirs(out)
+    rng = random.Random(args.seed)
+
+    for path in LINKED_PATHS:
+        os.symlink(os.path.join(OKBUCK_ROOT, path), os.path.join(out, path))
+
+    generate_repo(out, args.external_libs, rng)
+
+    android_modules = set()
+    for i in range(args.modules):
+        android = rng.random() < args.android_ratio
+        if android:
+            android_modules.add(i)
+
+        # Java libraries can only depend on java libraries
+        candidates = [d for d in range(i) if android or d not in android_modules]
+        project_deps = sorted(rng.sample(candidates, min(len(candidates), args.fan_out)))
+        external_deps = sorted(
+            rng.sample(
+                range(args.external_libs), min(args.external_libs, EXTERNAL_DEPS_PER_MODULE)
+            )
+        )
+        generate_module(out, i, android, project_deps, external_deps, args.variants)
+
+    write(
+        os.path.join(out, "settings.gradle"),
+        "".join('include ":modules:%s"\n' % module_name(i) for i in range(args.modules)),
+    )
+    write(
+        os.path.join(out, "build.gradle"),
+        """allprojects {
+    repositories {
+        maven { url rootProject.file("repo") }
+        google()
+        mavenCentral()
+    }
+}
+
+apply plugin: "com.uber.okbuck"
+
+okbuck {
+    buildToolVersion = "30.0.2"
+    target = "android-30"
+    buckBinary = null
+}
+""",
+    )
+    write(
+        os.path.join(out, "gradle.properties"),
+        "android.useAndroidX=true\n"
+        "org.gradle.jvmargs=-Xmx%s -Xlog:gc:file=%s -Dfile.encoding=UTF-8\n"
+        % (args.heap, os.path.join(out, GC_LOG)),
+    )
+    if "ANDROID_HOME" in os.environ:
+        write(os.path.join(out, "local.properties"), "sdk.dir=%s\n" % os.environ["ANDROID_HOME"])
+
+    write(
+        os.path.join(out, "synthetic.json"),
+        json.dumps(
+            {
+                "modules": args.modules,
+                "androidModules": len(android_modules),
+                "androidRatio": args.android_ratio,
+                "fanOut": args.fan_out,
+                "variants": args.variants,
+                "externalLibs": args.external_libs,
+                "seed": args.seed,
+            },
+            indent=2,
+        )
+        + "\n",
+    )
+    print("Generated %d modules (%d android) in %s" % (args.modules, len(android_modules), out))
+
+
+def peak_heap_mb(gc_log):
+    """Returns the largest heap occupancy before a collection in the gc log, in megabytes."""
+    peak = 0
+    if os.path.exists(gc_log):
+        with open(gc_log) as f:
+            for line in f:
+                match = re.search(r"(\d+)([KMG])->\d+[KMG]\(", line)
+                if match:
+                    size = int(match.group(1)) * {"K": 1 / 1024, "M": 1, "G": 1024}[match.group(2)]
+                    peak = max(peak, size)
+    return peak
+
+
+def files_written(out, since):
+    written = 0
+    for root, dirs, files in os.walk(out):
+        if root == out:
+            dirs[:] = [d for d in dirs if d not in SKIPPED_DIRS]
+        for name in files:
+            if name != GC_LOG and os.lstat(os.path.join(root, name)).st_mtime >= since:
+                written += 1
+    return written
+
+
+def run(args):
+    out = os.path.abspath(args.out)
+    command = [
+        os.path.join(out, "gradlew"),
+        "-p",
+        out,
+        "okbuck",
+        "-Dokbuck.wrapper=true",
+        "--no-daemon",
+        "--quiet",
+    ]
+    if not args.online:
+        command.append("--offline")
+
+    runs = []
+    for i in range(args.runs):
+        gc_log = os.path.join(out, GC_LOG)
+        if os.path.exists(gc_log):
+            os.remove(gc_log)
+        # File system timestamps may be coarser than the clock
+        start = int(time.time()) - 1
+        begin = time.monotonic()
+        result = subprocess.run(command, cwd=out)
+        wall = time.monotonic() - begin
+        if result.returncode != 0:
+            sys.exit("okbuck failed on run %d" % (i + 1))
+        runs.append(
+            {
+                "wallTimeSeconds": round(wall, 2),
+                "peakHeapMb": round(peak_heap_mb(gc_log)),
+                "filesWritten": files_written(out, start),
+            }
+        )
+        print("Run %d: %s" % (i + 1, json.dumps(runs[-1])))
+
+    with open(os.path.join(out, "synthetic.json")) as f:
+        report = {"build": json.load(f), "runs": runs}
+    report["median"] = {key: statistics.median(r[key] for r in runs) for key in runs[0]}
+    report_json = json.dumps(report, indent=2) + "\n"
+    if args.report:
+        write(os.path.abspath(args.report), report_json)
+    print(report_json, end="")
+
+
+def main():
+    parser = argparse.ArgumentParser(description=__doc__.splitlines()[0])
+    commands = parser.add_subparsers(dest="command", required=True)
+
+    gen = commands.add_parser("generate", help="generate a synthetic build")
+    gen.add_argument("out", help="directory to generate the build in, replaced if present")
+    gen.add_argument("--modules", type=int, default=100, help="number of modules")
+    gen.add_argument(
+        "--android-ratio", type=float, default=0.5, help="share of android library modules"
+    )
+    gen.add_argument(
+        "--fan-out", type=int, default=5, help="project dependencies of each module"
+    )
+    gen.add_argument(
+        "--variants", type=int, default=1, help="product flavors of each android module"
+    )
+    gen.add_argument(
+        "--external-libs", type=int, default=200, help="libraries in the local maven repo"
+    )
+    gen.add_argument("--heap", default="4g", help="max heap of the gradle daemon")
+    gen.add_argument("--seed", type=int, default=0, help="seed of the generated graph")
+    gen.set_defaults(func=generate)
+
+    bench = commands.add_parser("run", help="run okbuck on a generated build")
+    bench.add_argument("out", help="directory of the generated build")
+    bench.add_argument("--runs", type=int, default=3, help="number of runs")
+    bench.add_argument("--report", help="file to write the json report to")
+    bench.add_argument(
+        "--online", action="store_true", help="allow gradle to download missing artifacts"
+    )
+    bench.set_defaults(func=run)
+
+    args = parser.parse_args()
+    args.func(args)
+
+
+if __name__ == "__main__":
+    main()